@@ -990,7 +990,9 @@ const Gallery = ({ currentUser, onLogout }) => {
             >
               <div style={{ position: 'relative', overflow: 'hidden', borderRadius: '15px' }}>
                 <Image
-                  src={`http://localhost:8080/api/images/${image}`}
+                  src={`http://localhost:8080/api/images/${image}?w=800`}
+                  srcSet={`http://localhost:8080/api/images/${image}?w=200 200w, http://localhost:8080/api/images/${image}?w=800 800w`}
+                  sizes="(max-width: 600px) 100vw, 400px"
                   alt={`Memory ${index + 1}`}
                   loading="lazy"
                   onClick={() => openLightbox(image, index)}
@@ -0,0 +1,95 @@
+package com.memorylane.controller;
+
+import com.memorylane.Configguration.S3ClientConfig;
+import com.memorylane.Configguration.S3ClientProperties;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the bucket read behind {@code GET /api/images/{fileName}}, against a local
+ * HTTP stand-in for the bucket that answers every GET with a 64 KB image. {@code per-request}
+ * builds and closes a client per call as the controller used to; {@code shared} reuses the
+ * pooled client from {@link S3ClientConfig}; {@code async} reads through the shared
+ * {@code S3AsyncClient} the controller now uses. Sample mode reports p50 and p99. The stand-in
+ * speaks plain HTTP, so the TLS handshakes a real bucket adds per new client are not included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class ImageFetchBenchmark {
+
+    private static final byte[] IMAGE = new byte[64 * 1024];
+
+    @Param({"per-request", "shared", "async"})
+    public String client;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private String endpoint;
+    private S3Client shared;
+    private S3AsyncClient sharedAsync;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "image/jpeg");
+            exchange.sendResponseHeaders(200, IMAGE.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(IMAGE);
+            }
+        });
+        serverThreads = Executors.newFixedThreadPool(16);
+        server.setExecutor(serverThreads);
+        server.start();
+        endpoint = "http://127.0.0.1:" + server.getAddress().getPort();
+        shared = newClient();
+        sharedAsync = S3ClientConfig.createAsyncClient(endpoint, "benchmark", "benchmark", new S3ClientProperties());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        shared.close();
+        sharedAsync.close();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private S3Client newClient() {
+        return S3ClientConfig.createClient(endpoint, "benchmark", "benchmark", new S3ClientProperties());
+    }
+
+    @Benchmark
+    public byte[] getImage() throws IOException {
+        if (client.equals("shared")) {
+            return fetch(shared);
+        }
+        if (client.equals("async")) {
+            try (InputStream object = sharedAsync.getObject(builder -> builder.bucket("memory-lane").key("photo.jpg"),
+                    AsyncResponseTransformer.<GetObjectResponse>toBlockingInputStream()).join()) {
+                return object.readAllBytes();
+            }
+        }
+        try (S3Client perRequest = newClient()) {
+            return fetch(perRequest);
+        }
+    }
+
+    private static byte[] fetch(S3Client s3) throws IOException {
+        return s3.getObject(builder -> builder.bucket("memory-lane").key("photo.jpg")).readAllBytes();
+    }
+}
@@ -0,0 +1,122 @@
+package com.memorylane.service;
+
+import com.memorylane.model.Comment;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation of the storage serialization paths, before and after the switch to shared
+ * {@link StorageJson} readers and writers that stream: whole data files and a group-commit
+ * batch of journal entries. The {@code legacy*} methods reproduce the earlier code. Run with
+ * {@code -prof gc} and compare {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonSerializationBenchmark {
+
+    private static final int BATCH_SIZE = 16;
+
+    private static final ObjectMapper LEGACY_MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private static final ObjectWriter FILE_WRITER = StorageJson.streamingWriter(StorageJson.MAPPER, Object.class);
+    private static final ObjectReader COMMENT_READER = StorageJson.reader(Comment.class);
+    private static final ObjectWriter ENTRY_WRITER = StorageJson.writer(JournalEntry.class).withRootValueSeparator((String) null);
+
+    @Param({"1000", "10000"})
+    public int records;
+
+    private List<Comment> comments;
+    private byte[] file;
+    private List<JournalEntry> batch;
+    // Stands in for the channel; the buffer lives as long as the journal's active segment
+    private OutputStream segment;
+
+    @Setup
+    public void setUp() throws IOException {
+        comments = new ArrayList<>();
+        for (int i = 0; i < records; i++) {
+            Comment comment = new Comment("photo-" + (i / 10) + ".jpg", "comment " + i, "user" + (i % 100));
+            comment.setId(i + 1L);
+            comment.setCreatedAt(LocalDateTime.of(2025, 7, 6, 14, 34, 19));
+            comments.add(comment);
+        }
+        file = LEGACY_MAPPER.writeValueAsBytes(comments);
+        batch = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(JournalEntry.add(StorageJson.MAPPER.valueToTree(comments.get(i))));
+        }
+        segment = new BufferedOutputStream(OutputStream.nullOutputStream(), 64 * 1024);
+    }
+
+    @Benchmark
+    public void legacyWriteFile() throws IOException {
+        OutputStream.nullOutputStream().write(LEGACY_MAPPER.writeValueAsBytes(comments));
+    }
+
+    @Benchmark
+    public void writeFile() throws IOException {
+        try (SequenceWriter sequence = FILE_WRITER.writeValuesAsArray(segment)) {
+            for (Comment comment : comments) {
+                sequence.write(comment);
+            }
+        }
+        segment.flush();
+    }
+
+    @Benchmark
+    public List<Comment> legacyReadFile() throws IOException {
+        return LEGACY_MAPPER.readValue(file, new TypeReference<List<Comment>>() {});
+    }
+
+    @Benchmark
+    public void readFile(Blackhole blackhole) throws IOException {
+        try (MappingIterator<Comment> iterator = COMMENT_READER.readValues(file)) {
+            while (iterator.hasNextValue()) {
+                blackhole.consume(iterator.nextValue());
+            }
+        }
+    }
+
+    @Benchmark
+    public void legacyAppendBatch() throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        for (JournalEntry entry : batch) {
+            LEGACY_MAPPER.writeValue(lines, entry);
+            lines.write('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+        OutputStream.nullOutputStream().write(buffer.array());
+    }
+
+    @Benchmark
+    public void appendBatch() throws IOException {
+        try (JsonGenerator generator = ENTRY_WRITER.createGenerator(segment)) {
+            for (JournalEntry entry : batch) {
+                ENTRY_WRITER.writeValue(generator, entry);
+                generator.writeRaw('\n');
+            }
+        }
+        segment.flush();
+    }
+}
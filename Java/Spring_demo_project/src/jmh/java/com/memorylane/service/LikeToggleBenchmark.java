@@ -0,0 +1,68 @@
+package com.memorylane.service;
+
+import com.memorylane.model.Like;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Like toggles on one popular photo from many threads: the lock-free {@link LikeEngine}
+ * against the previous path, a read-check-write under one lock that rewrites the likes file
+ * on every click.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(32)
+public class LikeToggleBenchmark {
+
+    private static final int USERS = 500;
+    private static final String PHOTO = "popular.png";
+
+    @Param({"engine", "locked-rewrite"})
+    public String path;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final Map<String, Like> likes = new HashMap<>();
+    private LikeEngine engine;
+    private Path dir;
+    private Path likesFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        engine = new LikeEngine();
+        dir = Files.createTempDirectory("like-benchmark");
+        likesFile = dir.resolve("likes.json");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public boolean toggle() throws IOException {
+        String userName = "user" + ThreadLocalRandom.current().nextInt(USERS);
+        if (path.equals("engine")) {
+            return engine.toggle(PHOTO, userName, () -> new Like(PHOTO, userName));
+        }
+        synchronized (likes) {
+            boolean liked = likes.remove(userName) == null;
+            if (liked) {
+                likes.put(userName, new Like(PHOTO, userName));
+            }
+            AtomicFiles.write(likesFile, objectMapper.writeValueAsBytes(new ArrayList<>(likes.values())));
+            return liked;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.StorageProperties;
+import com.memorylane.model.Comment;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the json-file and kv backends with 10k, 100k and 1M comments already stored,
+ * ten comments and one like per photo.
+ *
+ * The kv store is seeded from the same JSON files, so setup at 1M takes a while.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StorageBackendBenchmark {
+
+    private static final int COMMENTS_PER_PHOTO = 10;
+
+    @Param({"10000", "100000", "1000000"})
+    public int records;
+
+    @Param({"json-file", "kv"})
+    public String backend;
+
+    private Path dataDir;
+    private StorageService storage;
+    private int photos;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("storage-benchmark");
+        photos = Math.max(1, records / COMMENTS_PER_PHOTO);
+        writeDataFiles();
+
+        StorageProperties properties = new StorageProperties();
+        properties.setDataDir(dataDir.toString());
+        storage = backend.equals("kv") ? new KeyValueStorageService(properties) : new FileStorageService(properties);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (storage instanceof FileStorageService file) {
+            file.close();
+        } else if (storage instanceof KeyValueStorageService kv) {
+            kv.close();
+        }
+        FileSystemUtils.deleteRecursively(dataDir);
+    }
+
+    // Streams the files so generating 1M records does not need them all in memory
+    private void writeDataFiles() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        try (JsonGenerator json = objectMapper.createGenerator(dataDir.resolve("comments.json").toFile(), JsonEncoding.UTF8)) {
+            json.writeStartArray();
+            for (int i = 0; i < records; i++) {
+                json.writeStartObject();
+                json.writeNumberField("id", i + 1);
+                json.writeStringField("photoName", photo(i % photos));
+                json.writeStringField("commentText", "comment " + i);
+                json.writeStringField("authorName", "user" + (i % 100));
+                json.writeStringField("createdAt", "2025-07-06T14:34:19");
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+        try (JsonGenerator json = objectMapper.createGenerator(dataDir.resolve("likes.json").toFile(), JsonEncoding.UTF8)) {
+            json.writeStartArray();
+            for (int i = 0; i < photos; i++) {
+                json.writeStartObject();
+                json.writeNumberField("id", i + 1);
+                json.writeStringField("photoName", photo(i));
+                json.writeStringField("userName", "user0");
+                json.writeStringField("createdAt", "2025-07-06T14:34:19");
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private static String photo(int index) {
+        return "photo-" + index + ".jpg";
+    }
+
+    private String randomPhoto() {
+        return photo(ThreadLocalRandom.current().nextInt(photos));
+    }
+
+    @Benchmark
+    public Object commentsForPhoto() {
+        return storage.getCommentsByPhotoName(randomPhoto());
+    }
+
+    @Benchmark
+    public long likeCount() {
+        return storage.getLikeCount(randomPhoto());
+    }
+
+    @Benchmark
+    public Object saveComment() {
+        return storage.saveComment(new Comment(randomPhoto(), "benchmark", "bench"));
+    }
+
+    @Benchmark
+    public boolean toggleLike() {
+        return storage.toggleLike(randomPhoto(), "bench");
+    }
+}
@@ -0,0 +1,80 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.StorageProperties;
+import com.memorylane.model.Comment;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost of the json-file backend per storage format: each invocation opens the
+ * service on a data directory holding {@code records} comments and closes it again. The
+ * file size of each format is printed during setup; add {@code -prof gc} for allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class StorageFormatBenchmark {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2025, 7, 6, 14, 34, 19);
+
+    @Param({"100000", "1000000"})
+    public int records;
+
+    @Param({"json", "json-gzip", "smile", "smile-gzip"})
+    public String format;
+
+    private Path dataDir;
+    private StorageProperties properties;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("format-benchmark");
+        properties = new StorageProperties();
+        properties.setDataDir(dataDir.toString());
+        properties.setFormat(format.startsWith("smile") ? StorageProperties.Format.SMILE : StorageProperties.Format.JSON);
+        properties.setCompress(format.endsWith("gzip"));
+
+        RecordFiles files = new RecordFiles(properties.getFormat(), properties.isCompress());
+        Path comments = files.path(dataDir, "comments");
+        // Generated on the fly so 1M comments are never all in memory at once
+        files.write(comments, new AbstractList<Comment>() {
+            @Override
+            public Comment get(int i) {
+                Comment comment = new Comment("photo-" + (i / 10) + ".jpg", "comment " + i, "user" + (i % 100));
+                comment.setId(i + 1L);
+                comment.setCreatedAt(CREATED_AT);
+                return comment;
+            }
+
+            @Override
+            public int size() {
+                return records;
+            }
+        });
+        System.out.printf("%n%s with %,d comments: %,d bytes%n", comments.getFileName(), records, Files.size(comments));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public int startup() {
+        FileStorageService storage = new FileStorageService(properties);
+        try {
+            return storage.getAllComments().size();
+        } finally {
+            storage.close();
+        }
+    }
+}
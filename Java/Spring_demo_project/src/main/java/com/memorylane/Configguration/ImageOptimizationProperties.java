@@ -0,0 +1,47 @@
+package com.memorylane.Configguration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Re-encoding of photos on upload, before they are stored.
+ */
+@Component
+@ConfigurationProperties(prefix = "memorylane.images.optimize")
+public class ImageOptimizationProperties {
+
+    // Off by default: re-encoding is lossy and drops EXIF data such as capture time and location
+    private boolean enabled = false;
+
+    // 0 to 1; used for re-encoded JPEGs and for converted PNGs
+    private float jpegQuality = 0.85f;
+
+    // Store PNGs without transparency at or above this size as JPEG, e.g. phone screenshots
+    private boolean convertOpaquePng = true;
+    private DataSize pngConversionThreshold = DataSize.ofMegabytes(1);
+
+    // Uploads re-encoded at once; each holds a decoded image of width * height * 4 bytes
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    // Uploads waiting for a worker; beyond this they are stored as uploaded
+    private int queueCapacity = 16;
+
+    // Larger uploads are not decoded; each pixel takes 4 bytes of heap, and a small file can claim billions
+    private long maxPixels = 50_000_000;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public float getJpegQuality() { return jpegQuality; }
+    public void setJpegQuality(float jpegQuality) { this.jpegQuality = jpegQuality; }
+    public boolean isConvertOpaquePng() { return convertOpaquePng; }
+    public void setConvertOpaquePng(boolean convertOpaquePng) { this.convertOpaquePng = convertOpaquePng; }
+    public DataSize getPngConversionThreshold() { return pngConversionThreshold; }
+    public void setPngConversionThreshold(DataSize pngConversionThreshold) { this.pngConversionThreshold = pngConversionThreshold; }
+    public int getWorkers() { return workers; }
+    public void setWorkers(int workers) { this.workers = workers; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+    public long getMaxPixels() { return maxPixels; }
+    public void setMaxPixels(long maxPixels) { this.maxPixels = maxPixels; }
+}
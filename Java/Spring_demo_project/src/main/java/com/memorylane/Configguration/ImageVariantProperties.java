@@ -0,0 +1,41 @@
+package com.memorylane.Configguration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Downscaled copies of uploaded photos, served by {@code GET /api/images/{fileName}?w=}.
+ */
+@Component
+@ConfigurationProperties(prefix = "memorylane.images")
+public class ImageVariantProperties {
+
+    // Widths generated for every photo; a request is served the smallest at least as wide as asked
+    private List<Integer> variantWidths = new ArrayList<>(List.of(200, 800));
+
+    // Threads resizing photos; resizing is CPU bound, so more than the core count only adds queueing
+    private int workers = Math.min(2, Runtime.getRuntime().availableProcessors());
+
+    // Photos waiting to be resized; uploads beyond this get their variants on first request instead
+    private int queueCapacity = 100;
+
+    // 0 to 1; variants without transparency are stored as JPEG
+    private float jpegQuality = 0.85f;
+
+    // Larger photos are not decoded; each pixel takes 4 bytes of heap, and a small file can claim billions
+    private long maxPixels = 50_000_000;
+
+    public List<Integer> getVariantWidths() { return variantWidths; }
+    public void setVariantWidths(List<Integer> variantWidths) { this.variantWidths = variantWidths; }
+    public int getWorkers() { return workers; }
+    public void setWorkers(int workers) { this.workers = workers; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+    public float getJpegQuality() { return jpegQuality; }
+    public void setJpegQuality(float jpegQuality) { this.jpegQuality = jpegQuality; }
+    public long getMaxPixels() { return maxPixels; }
+    public void setMaxPixels(long maxPixels) { this.maxPixels = maxPixels; }
+}
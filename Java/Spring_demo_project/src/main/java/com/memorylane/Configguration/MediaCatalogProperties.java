@@ -0,0 +1,37 @@
+package com.memorylane.Configguration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Local catalog of the photos and songs in the bucket, behind {@code GET /api/images} and
+ * {@code GET /api/music} and every lookup of where a file is stored.
+ */
+@Component
+@ConfigurationProperties(prefix = "memorylane.catalog")
+public class MediaCatalogProperties {
+
+    // Catalog file, in the storage data directory
+    private String file = "media-catalog.json";
+
+    // Full re-listing of the bucket; only picks up changes made outside this application
+    private Duration refreshInterval = Duration.ofMinutes(5);
+
+    // Largest page a client may ask for with ?limit=
+    private int maxPageSize = 1000;
+
+    // Move objects stored under flat keys to images/ and music/, and read the hash and size
+    // of objects the catalog has no metadata for; each is downloaded once
+    private boolean migrate = true;
+
+    public String getFile() { return file; }
+    public void setFile(String file) { this.file = file; }
+    public Duration getRefreshInterval() { return refreshInterval; }
+    public void setRefreshInterval(Duration refreshInterval) { this.refreshInterval = refreshInterval; }
+    public int getMaxPageSize() { return maxPageSize; }
+    public void setMaxPageSize(int maxPageSize) { this.maxPageSize = maxPageSize; }
+    public boolean isMigrate() { return migrate; }
+    public void setMigrate(boolean migrate) { this.migrate = migrate; }
+}
@@ -0,0 +1,52 @@
+package com.memorylane.Configguration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Local disk cache of bucket objects in front of {@code GET /api/images/{fileName}}.
+ */
+@Component
+@ConfigurationProperties(prefix = "memorylane.cache")
+public class ObjectCacheProperties {
+
+    private boolean enabled = true;
+
+    // Cached objects and their metadata; safe to delete while the application is stopped
+    private String dir = "cache";
+
+    // Least recently used objects are evicted beyond this; objects over a quarter of it are not cached
+    private DataSize maxSize = DataSize.ofGigabytes(5);
+
+    private final Memory memory = new Memory();
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public String getDir() { return dir; }
+    public void setDir(String dir) { this.dir = dir; }
+    public DataSize getMaxSize() { return maxSize; }
+    public void setMaxSize(DataSize maxSize) { this.maxSize = maxSize; }
+    public Memory getMemory() { return memory; }
+
+    /**
+     * Off-heap copies of the most requested cached objects, in front of the disk cache.
+     */
+    public static class Memory {
+
+        private boolean enabled = true;
+
+        // Total size of the direct buffers; counts against -XX:MaxDirectMemorySize, not the heap
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+
+        // Larger objects are only ever served from disk
+        private DataSize maxObjectSize = DataSize.ofMegabytes(8);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public DataSize getMaxSize() { return maxSize; }
+        public void setMaxSize(DataSize maxSize) { this.maxSize = maxSize; }
+        public DataSize getMaxObjectSize() { return maxObjectSize; }
+        public void setMaxObjectSize(DataSize maxObjectSize) { this.maxObjectSize = maxObjectSize; }
+    }
+}
@@ -0,0 +1,90 @@
+package com.memorylane.Configguration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.net.URI;
+
+/**
+ * One {@link S3Client} for the whole application. Clients are thread-safe and expensive to
+ * build: each owns a connection pool, so sharing one keeps TLS connections to the bucket
+ * alive between requests. Spring closes it, and with it the pool, on shutdown.
+ *
+ * Photos and songs are read with an {@link S3AsyncClient} on Netty instead: a request in
+ * flight holds a connection but no thread, so how many run at once is set by
+ * {@code memorylane.s3.max-concurrency} rather than by the size of any thread pool.
+ */
+@Configuration
+public class S3ClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public S3Client s3Client(@Value("${cloud.aws.endpoint}") String endpoint,
+                             @Value("${cloud.aws.credentials.access-key}") String accessKey,
+                             @Value("${cloud.aws.credentials.secret-key}") String secretKey,
+                             S3ClientProperties properties) {
+        return createClient(endpoint, accessKey, secretKey, properties);
+    }
+
+    @Bean(destroyMethod = "close")
+    public S3AsyncClient s3AsyncClient(@Value("${cloud.aws.endpoint}") String endpoint,
+                                       @Value("${cloud.aws.credentials.access-key}") String accessKey,
+                                       @Value("${cloud.aws.credentials.secret-key}") String secretKey,
+                                       S3ClientProperties properties) {
+        return createAsyncClient(endpoint, accessKey, secretKey, properties);
+    }
+
+    public static S3Client createClient(String endpoint, String accessKey, String secretKey,
+                                        S3ClientProperties properties) {
+        ApacheHttpClient.Builder httpClient = ApacheHttpClient.builder()
+                .maxConnections(properties.getMaxConnections())
+                .connectionTimeout(properties.getConnectionTimeout())
+                .socketTimeout(properties.getSocketTimeout())
+                .connectionAcquisitionTimeout(properties.getConnectionAcquisitionTimeout())
+                .connectionMaxIdleTime(properties.getConnectionMaxIdleTime())
+                .tcpKeepAlive(properties.isTcpKeepAlive());
+        if (!properties.getConnectionTimeToLive().isZero()) {
+            httpClient.connectionTimeToLive(properties.getConnectionTimeToLive());
+        }
+
+        AwsBasicCredentials credentials = AwsBasicCredentials.create(accessKey, secretKey);
+        return S3Client.builder()
+                .httpClientBuilder(httpClient)
+                .credentialsProvider(StaticCredentialsProvider.create(credentials))
+                .endpointOverride(URI.create(endpoint))
+                .region(Region.US_EAST_1)
+                .forcePathStyle(true)
+                .build();
+    }
+
+    public static S3AsyncClient createAsyncClient(String endpoint, String accessKey, String secretKey,
+                                                  S3ClientProperties properties) {
+        NettyNioAsyncHttpClient.Builder httpClient = NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(properties.getMaxConcurrency())
+                .maxPendingConnectionAcquires(properties.getMaxPendingConnectionAcquires())
+                .connectionTimeout(properties.getConnectionTimeout())
+                .readTimeout(properties.getSocketTimeout())
+                .connectionAcquisitionTimeout(properties.getConnectionAcquisitionTimeout())
+                .connectionMaxIdleTime(properties.getConnectionMaxIdleTime())
+                .tcpKeepAlive(properties.isTcpKeepAlive());
+        if (!properties.getConnectionTimeToLive().isZero()) {
+            httpClient.connectionTimeToLive(properties.getConnectionTimeToLive());
+        }
+
+        AwsBasicCredentials credentials = AwsBasicCredentials.create(accessKey, secretKey);
+        return S3AsyncClient.builder()
+                .httpClientBuilder(httpClient)
+                .credentialsProvider(StaticCredentialsProvider.create(credentials))
+                .endpointOverride(URI.create(endpoint))
+                .region(Region.US_EAST_1)
+                .forcePathStyle(true)
+                .build();
+    }
+}
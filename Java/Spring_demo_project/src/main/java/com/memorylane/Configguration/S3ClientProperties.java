@@ -0,0 +1,59 @@
+package com.memorylane.Configguration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Connection pools of the shared {@code S3Client} and {@code S3AsyncClient} used for the R2
+ * bucket. The timeouts and keep-alive settings apply to both.
+ */
+@Component
+@ConfigurationProperties(prefix = "memorylane.s3")
+public class S3ClientProperties {
+
+    // Upper bound on concurrent requests to the bucket; further requests wait for a connection
+    private int maxConnections = 64;
+
+    // Requests the async client has open at once; they wait on its event loop, not on threads
+    private int maxConcurrency = 256;
+
+    // Async requests that may wait for a connection; beyond that they fail at once
+    private int maxPendingConnectionAcquires = 1000;
+
+    private Duration connectionTimeout = Duration.ofSeconds(2);
+
+    // Longest pause between bytes of a response before the request fails
+    private Duration socketTimeout = Duration.ofSeconds(30);
+
+    // How long a request waits for a free pooled connection
+    private Duration connectionAcquisitionTimeout = Duration.ofSeconds(5);
+
+    // Idle connections are closed after this; kept below typical load balancer idle timeouts
+    private Duration connectionMaxIdleTime = Duration.ofSeconds(50);
+
+    // Maximum age of a pooled connection; zero keeps it as long as it is healthy
+    private Duration connectionTimeToLive = Duration.ZERO;
+
+    private boolean tcpKeepAlive = true;
+
+    public int getMaxConnections() { return maxConnections; }
+    public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
+    public int getMaxConcurrency() { return maxConcurrency; }
+    public void setMaxConcurrency(int maxConcurrency) { this.maxConcurrency = maxConcurrency; }
+    public int getMaxPendingConnectionAcquires() { return maxPendingConnectionAcquires; }
+    public void setMaxPendingConnectionAcquires(int maxPendingConnectionAcquires) { this.maxPendingConnectionAcquires = maxPendingConnectionAcquires; }
+    public Duration getConnectionTimeout() { return connectionTimeout; }
+    public void setConnectionTimeout(Duration connectionTimeout) { this.connectionTimeout = connectionTimeout; }
+    public Duration getSocketTimeout() { return socketTimeout; }
+    public void setSocketTimeout(Duration socketTimeout) { this.socketTimeout = socketTimeout; }
+    public Duration getConnectionAcquisitionTimeout() { return connectionAcquisitionTimeout; }
+    public void setConnectionAcquisitionTimeout(Duration connectionAcquisitionTimeout) { this.connectionAcquisitionTimeout = connectionAcquisitionTimeout; }
+    public Duration getConnectionMaxIdleTime() { return connectionMaxIdleTime; }
+    public void setConnectionMaxIdleTime(Duration connectionMaxIdleTime) { this.connectionMaxIdleTime = connectionMaxIdleTime; }
+    public Duration getConnectionTimeToLive() { return connectionTimeToLive; }
+    public void setConnectionTimeToLive(Duration connectionTimeToLive) { this.connectionTimeToLive = connectionTimeToLive; }
+    public boolean isTcpKeepAlive() { return tcpKeepAlive; }
+    public void setTcpKeepAlive(boolean tcpKeepAlive) { this.tcpKeepAlive = tcpKeepAlive; }
+}
@@ -0,0 +1,31 @@
+package com.memorylane.Configguration;
+
+import com.memorylane.service.StorageService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+/**
+ * Keeps the DataSource and Hibernate auto-configuration off unless the {@code jpa} storage
+ * backend is selected, so the default JSON file backend starts without a database.
+ *
+ * This has to happen through {@code spring.autoconfigure.exclude}: an exclusion declared
+ * on the application class would apply to every backend.
+ */
+public class StorageBackendEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if ("jpa".equals(environment.getProperty(StorageService.BACKEND_PROPERTY))) {
+            return;
+        }
+        String exclusions = DataSourceAutoConfiguration.class.getName() + "," + HibernateJpaAutoConfiguration.class.getName();
+        environment.getPropertySources().addLast(
+                new MapPropertySource("storageBackendExclusions", Map.of("spring.autoconfigure.exclude", exclusions)));
+    }
+}
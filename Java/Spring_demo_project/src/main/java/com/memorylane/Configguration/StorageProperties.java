@@ -0,0 +1,162 @@
+package com.memorylane.Configguration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "memorylane.storage")
+public class StorageProperties {
+
+    public enum Format {
+        JSON,
+        // Jackson's binary JSON; smaller and faster to parse, not human readable
+        SMILE
+    }
+
+    // Directory holding comments.json, likes.json and users.json
+    private String dataDir = "data";
+
+    // Ids reserved on disk at a time; sequences.json is rewritten once per block
+    private long idBlockSize = 100;
+
+    // Encoding of the data files and journal snapshots; files in another encoding are
+    // converted on startup
+    private Format format = Format.JSON;
+
+    // Gzip the data files and journal snapshots
+    private boolean compress = false;
+
+    private final Journal journal = new Journal();
+
+    private final Write write = new Write();
+
+    private final Kv kv = new Kv();
+
+    public String getDataDir() {
+        return dataDir;
+    }
+
+    public void setDataDir(String dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    public long getIdBlockSize() {
+        return idBlockSize;
+    }
+
+    public void setIdBlockSize(long idBlockSize) {
+        this.idBlockSize = idBlockSize;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public Write getWrite() {
+        return write;
+    }
+
+    public Kv getKv() {
+        return kv;
+    }
+
+    /**
+     * Write-ahead log mode. When enabled, mutations are appended to {@code <data-dir>/journal}
+     * and the JSON files are only read once to seed the first snapshot.
+     */
+    public static class Journal {
+
+        private boolean enabled = false;
+
+        // Active segment is sealed once it grows past this many bytes
+        private long segmentSize = 4 * 1024 * 1024;
+
+        // How often sealed segments are folded into a snapshot
+        private Duration compactionInterval = Duration.ofMinutes(5);
+
+        // Force every append to disk before the mutation returns
+        private boolean fsync = true;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public long getSegmentSize() { return segmentSize; }
+        public void setSegmentSize(long segmentSize) { this.segmentSize = segmentSize; }
+        public Duration getCompactionInterval() { return compactionInterval; }
+        public void setCompactionInterval(Duration compactionInterval) { this.compactionInterval = compactionInterval; }
+        public boolean isFsync() { return fsync; }
+        public void setFsync(boolean fsync) { this.fsync = fsync; }
+    }
+
+    /**
+     * Group commit settings for the single writer thread that persists every mutation.
+     */
+    public static class Write {
+
+        public enum Durability {
+            // Acknowledge a mutation once its batch has been written and forced to disk
+            FSYNC,
+            // Acknowledge as soon as the mutation is queued; a crash may lose the last batch
+            ENQUEUE
+        }
+
+        private int maxBatchSize = 256;
+
+        // Extra time the writer waits for a batch to fill; mutations queued while the previous
+        // batch was being written are grouped regardless
+        private Duration maxWait = Duration.ZERO;
+
+        private Durability durability = Durability.FSYNC;
+
+        // Longest a request waits for its batch to be written before it reports an error
+        private Duration ackTimeout = Duration.ofSeconds(30);
+
+        public int getMaxBatchSize() { return maxBatchSize; }
+        public void setMaxBatchSize(int maxBatchSize) { this.maxBatchSize = maxBatchSize; }
+        public Duration getMaxWait() { return maxWait; }
+        public void setMaxWait(Duration maxWait) { this.maxWait = maxWait; }
+        public Durability getDurability() { return durability; }
+        public void setDurability(Durability durability) { this.durability = durability; }
+        public Duration getAckTimeout() { return ackTimeout; }
+        public void setAckTimeout(Duration ackTimeout) { this.ackTimeout = ackTimeout; }
+    }
+
+    /**
+     * Embedded key-value backend ({@code memorylane.storage.backend=kv}).
+     */
+    public static class Kv {
+
+        // Store file, relative to the data directory
+        private String file = "memorylane.mv.db";
+
+        // Page cache; the rest of the data stays on disk
+        private int cacheSizeMb = 16;
+
+        // How often unsynced changes are written when durability is enqueue
+        private Duration autoCommitDelay = Duration.ofSeconds(1);
+
+        public String getFile() { return file; }
+        public void setFile(String file) { this.file = file; }
+        public int getCacheSizeMb() { return cacheSizeMb; }
+        public void setCacheSizeMb(int cacheSizeMb) { this.cacheSizeMb = cacheSizeMb; }
+        public Duration getAutoCommitDelay() { return autoCommitDelay; }
+        public void setAutoCommitDelay(Duration autoCommitDelay) { this.autoCommitDelay = autoCommitDelay; }
+    }
+}
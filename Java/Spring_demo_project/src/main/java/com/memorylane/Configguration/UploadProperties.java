@@ -0,0 +1,77 @@
+package com.memorylane.Configguration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * How uploaded photos and songs are sent to the bucket.
+ */
+@Component
+@ConfigurationProperties(prefix = "memorylane.upload")
+public class UploadProperties {
+
+    // Files at least this large are sent as a multipart upload; smaller ones in a single request
+    private DataSize multipartThreshold = DataSize.ofMegabytes(16);
+
+    // At least 5MB, the smallest part S3 accepts; raised for files that would need more than 10000 parts
+    private DataSize partSize = DataSize.ofMegabytes(8);
+
+    // Parts of one upload buffered or in flight at a time; bounds its memory to this many part sizes
+    private int partsInFlight = 4;
+
+    // Threads sending parts, shared by all uploads
+    private int workers = 8;
+
+    // Attempts per part, on top of the client's own retries of the request
+    private int partAttempts = 3;
+
+    // Multipart uploads started this long ago and never completed are aborted on startup
+    private Duration abandonedAfter = Duration.ofDays(1);
+
+    // Photos of batch uploads stored at the same time, across all batches
+    private int batchConcurrency = 16;
+
+    private final Sessions sessions = new Sessions();
+
+    public DataSize getMultipartThreshold() { return multipartThreshold; }
+    public void setMultipartThreshold(DataSize multipartThreshold) { this.multipartThreshold = multipartThreshold; }
+    public DataSize getPartSize() { return partSize; }
+    public void setPartSize(DataSize partSize) { this.partSize = partSize; }
+    public int getPartsInFlight() { return partsInFlight; }
+    public void setPartsInFlight(int partsInFlight) { this.partsInFlight = partsInFlight; }
+    public int getWorkers() { return workers; }
+    public void setWorkers(int workers) { this.workers = workers; }
+    public int getPartAttempts() { return partAttempts; }
+    public void setPartAttempts(int partAttempts) { this.partAttempts = partAttempts; }
+    public Duration getAbandonedAfter() { return abandonedAfter; }
+    public void setAbandonedAfter(Duration abandonedAfter) { this.abandonedAfter = abandonedAfter; }
+    public int getBatchConcurrency() { return batchConcurrency; }
+    public void setBatchConcurrency(int batchConcurrency) { this.batchConcurrency = batchConcurrency; }
+    public Sessions getSessions() { return sessions; }
+
+    /**
+     * Resumable song uploads under {@code /api/upload/music/sessions}, staged on local disk
+     * until they are complete.
+     */
+    public static class Sessions {
+
+        // Staged chunks and session metadata; sessions survive a restart
+        private String dir = "upload-sessions";
+
+        // Sessions without a chunk for this long are deleted
+        private Duration expireAfter = Duration.ofDays(1);
+
+        // Largest song a session may be created for
+        private DataSize maxSize = DataSize.ofMegabytes(200);
+
+        public String getDir() { return dir; }
+        public void setDir(String dir) { this.dir = dir; }
+        public Duration getExpireAfter() { return expireAfter; }
+        public void setExpireAfter(Duration expireAfter) { this.expireAfter = expireAfter; }
+        public DataSize getMaxSize() { return maxSize; }
+        public void setMaxSize(DataSize maxSize) { this.maxSize = maxSize; }
+    }
+}
@@ -1,12 +1,32 @@
 package com.memorylane.Configguration;
 
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.memorylane.controller.LocalCopies;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
 @Configuration
 public class WebConfig {
+
+    /** Set on a request whose response body may be streamed for as long as a song plays. */
+    public static final String LONG_STREAM = WebConfig.class.getName() + ".LONG_STREAM";
+
+    private static final Duration LONG_STREAM_TIMEOUT = Duration.ofMinutes(30);
+
     @Bean
     public WebMvcConfigurer corsConfigurer() {
         return new WebMvcConfigurer() {
@@ -15,9 +35,53 @@ public class WebConfig {
                 registry.addMapping("/**") // Allow all endpoints
                         .allowedOrigins("http://localhost:3000", "http://127.0.0.1:3000", "https://memory-lane-gallery.netlify.app") // Frontend ports
                         .allowedMethods("*") // GET, POST, etc.
-                        .allowedHeaders("*");
+                        .allowedHeaders("*")
+                        .exposedHeaders("X-Next-Cursor", "Upload-Offset", "Location"); // Paging, resumable uploads
+            }
+        };
+    }
+
+    // Photos and songs are streamed from async threads. Each stream blocks on the bucket and the
+    // listener, so they run on virtual threads. A long song to a slow listener must not hit the
+    // container's 30 second async timeout, but only the body of a request marked LONG_STREAM
+    // gets longer: the timeout is raised just before that body starts streaming
+    @Bean
+    public WebMvcConfigurer streamingConfigurer() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("media-stream-");
+                executor.setVirtualThreads(true);
+                configurer.setTaskExecutor(executor);
+                configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                        if (request instanceof AsyncWebRequest async
+                                && request.getAttribute(LONG_STREAM, RequestAttributes.SCOPE_REQUEST) != null) {
+                            async.setTimeout(LONG_STREAM_TIMEOUT.toMillis());
+                        }
+                    }
+                });
             }
         };
     }
-}
 
+    // Photos and songs with a copy on this machine are sent from the request thread, by
+    // sendfile, before the controller goes async to the bucket
+    @Bean
+    public WebMvcConfigurer localCopiesConfigurer(LocalCopies localCopies) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(localCopies).addPathPatterns("/api/images/*");
+            }
+        };
+    }
+
+    // Spring Boot adds every Module bean to the mapper that writes API responses
+    @Bean
+    @ConditionalOnProperty(name = "memorylane.json.blackbird", havingValue = "true")
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+}
@@ -2,10 +2,10 @@ package com.memorylane;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
-import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
 
-@SpringBootApplication(exclude = {DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class})
+// DataSource and Hibernate auto-configuration only run for the jpa storage backend,
+// see StorageBackendEnvironmentPostProcessor
+@SpringBootApplication
 public class MemoryLaneApplication {
 
 	public static void main(String[] args) {
@@ -14,4 +14,4 @@ public class MemoryLaneApplication {
 
 
 
-} 
\ No newline at end of file
+}
@@ -2,8 +2,12 @@ package com.memorylane.Repo;
 
 import com.memorylane.model.Comment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -11,5 +15,12 @@ public interface CommentRepository extends JpaRepository<Comment, Long> {
     
     List<Comment> findByPhotoNameOrderByCreatedAtDesc(String photoName);
     
+    List<Comment> findByPhotoNameOrderByCreatedAtAscIdAsc(String photoName);
+    
     void deleteByPhotoName(String photoName);
+    
+    // One statement instead of loading every comment first
+    @Modifying
+    @Query("delete from Comment c where c.photoName in :photoNames")
+    int deleteByPhotoNameIn(@Param("photoNames") Collection<String> photoNames);
 } 
\ No newline at end of file
@@ -2,8 +2,12 @@ package com.memorylane.Repo;
 
 import com.memorylane.model.Like;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,7 +18,18 @@ public interface LikeRepository extends JpaRepository<Like, Long> {
     
     Optional<Like> findByPhotoNameAndUserName(String photoName, String userName);
     
+    boolean existsByPhotoNameAndUserName(String photoName, String userName);
+    
+    // Bulk delete so concurrent toggles see the real row count instead of a stale entity
+    @Modifying
+    @Query("delete from Like l where l.photoName = :photoName and l.userName = :userName")
+    int deleteByPhotoNameAndUserName(@Param("photoName") String photoName, @Param("userName") String userName);
+    
     void deleteByPhotoName(String photoName);
     
+    @Modifying
+    @Query("delete from Like l where l.photoName in :photoNames")
+    int deleteByPhotoNameIn(@Param("photoNames") Collection<String> photoNames);
+    
     long countByPhotoName(String photoName);
 } 
\ No newline at end of file
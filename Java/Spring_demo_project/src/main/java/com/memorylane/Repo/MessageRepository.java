@@ -0,0 +1,16 @@
+package com.memorylane.Repo;
+
+import com.memorylane.model.Message;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface MessageRepository extends JpaRepository<Message, Long> {
+    
+    List<Message> findAllByOrderByIdAsc();
+    
+    Optional<Message> findTopByOrderByIdDesc();
+}
@@ -0,0 +1,36 @@
+package com.memorylane.controller;
+
+import org.springframework.http.CacheControl;
+
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+/**
+ * Browser caching of gallery files.
+ *
+ * Uploads are stored under {@code <name>_<epoch millis>.<ext>}, and a key is never written
+ * twice, so those responses may be cached for a year without revalidation. Anything else,
+ * such as older keys or profile pictures that are replaced in place, is cached but checked
+ * against its ETag on every use. So is the original when it stands in for a resized copy
+ * that could not be made, since the same URL should get the resized copy once it exists.
+ */
+final class CachePolicy {
+
+    private static final Pattern TIMESTAMPED_KEY = Pattern.compile(".*_\\d{13}(\\.[^.]*)?$");
+
+    private CachePolicy() {}
+
+    static boolean isImmutable(String fileName) {
+        return TIMESTAMPED_KEY.matcher(fileName).matches();
+    }
+
+    static CacheControl forFile(String fileName) {
+        return isImmutable(fileName)
+                ? CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable()
+                : revalidate();
+    }
+
+    static CacheControl revalidate() {
+        return CacheControl.noCache().cachePublic();
+    }
+}
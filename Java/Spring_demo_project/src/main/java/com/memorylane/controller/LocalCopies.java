@@ -0,0 +1,128 @@
+package com.memorylane.controller;
+
+import com.memorylane.service.HotObjectCache;
+import com.memorylane.service.ImageVariants;
+import com.memorylane.service.MediaCatalog;
+import com.memorylane.service.ObjectCache;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Answers photo and song requests that have a copy on this machine before they reach
+ * {@link R2UploadController#getFile}: the uploads fallback for files the bucket never got,
+ * then the in-memory and disk caches of bucket objects.
+ *
+ * These are served on the request thread, so files go out by sendfile and the container's
+ * conditional checks apply; returning {@code false} tells Spring the response is complete.
+ * Everything else is left to the controller, which waits on the bucket asynchronously.
+ */
+@Component
+public class LocalCopies implements HandlerInterceptor {
+
+    private static final Path UPLOADS = Paths.get("uploads").toAbsolutePath().normalize();
+
+    private final MediaCatalog mediaCatalog;
+    private final ImageVariants imageVariants;
+    private final ObjectCache objectCache;
+    private final HotObjectCache hotObjectCache;
+
+    public LocalCopies(MediaCatalog mediaCatalog, ImageVariants imageVariants, ObjectCache objectCache,
+                       HotObjectCache hotObjectCache) {
+        this.mediaCatalog = mediaCatalog;
+        this.imageVariants = imageVariants;
+        this.objectCache = objectCache;
+        this.hotObjectCache = hotObjectCache;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        // An async dispatch is the controller's answer coming back and must reach it
+        if (request.getDispatcherType() != DispatcherType.REQUEST
+                || !(HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod()))) {
+            return true;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String fileName = variables != null ? variables.get("fileName") : null;
+        if (fileName == null) {
+            return true;
+        }
+        int width;
+        try {
+            String w = request.getParameter("w");
+            width = w != null ? Integer.parseInt(w) : 0;
+        } catch (NumberFormatException e) {
+            return true; // rejected by the controller
+        }
+        return !(serveUpload(fileName, width, request, response) || serveCached(fileName, width, request, response));
+    }
+
+    /** The stored content type, else the one recorded in the catalog, else guessed from the name. */
+    MediaType mediaType(String contentType, String fileName) {
+        if (contentType == null) {
+            MediaCatalog.Entry entry = mediaCatalog.get(fileName);
+            contentType = entry != null ? entry.contentType() : null;
+        }
+        return contentType != null ? MediaType.parseMediaType(contentType) : LocalFiles.contentType(fileName);
+    }
+
+    // A file stored here because the bucket failed when it was uploaded
+    private boolean serveUpload(String fileName, int width, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Path file = UPLOADS.resolve(fileName).normalize();
+        if (!file.getParent().equals(UPLOADS) || !Files.isRegularFile(file)) {
+            return false;
+        }
+        // Local copies are never resized, so a resized request gets the original for now
+        LocalFiles.serve(file, width > 0 ? CachePolicy.revalidate() : CachePolicy.forFile(fileName), request, response);
+        return true;
+    }
+
+    private boolean serveCached(String fileName, int width, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (!objectCache.isEnabled()) {
+            return false;
+        }
+        String key = mediaCatalog.keyOf(fileName);
+        if (width > 0 && mediaCatalog.category(fileName) == MediaCatalog.Category.IMAGE) {
+            // A variant not seen since startup is found by the controller
+            key = imageVariants.known(fileName, key, width);
+            if (key == null) {
+                return false;
+            }
+        }
+        CacheControl cacheControl = CachePolicy.forFile(fileName);
+        HotObjectCache.HotObject hot = hotObjectCache.get(key);
+        if (hot != null) {
+            LocalFiles.serve(hot.content(), fileName, mediaType(hot.contentType(), fileName),
+                    hot.eTag(), epochMillis(hot.lastModified()), cacheControl, request, response);
+            return true;
+        }
+        ObjectCache.CachedObject cached = objectCache.getIfPresent(key);
+        if (cached != null) {
+            hotObjectCache.offer(key, cached);
+            LocalFiles.serve(cached.file(), fileName, mediaType(cached.contentType(), fileName),
+                    cached.eTag(), epochMillis(cached.lastModified()), cacheControl, request, response);
+            return true;
+        }
+        return false;
+    }
+
+    private static long epochMillis(Instant instant) {
+        return instant != null ? instant.toEpochMilli() : -1;
+    }
+}
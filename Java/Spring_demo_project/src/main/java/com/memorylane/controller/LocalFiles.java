@@ -0,0 +1,173 @@
+package com.memorylane.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Serves files from local disk (the uploads fallback, profile pictures and cached bucket
+ * objects), and off-heap copies of hot objects, without reading them onto the heap.
+ *
+ * Under Tomcat the body is handed to the connector's sendfile support, which copies the file
+ * to the socket in the kernel once the request has returned. Elsewhere it is copied with
+ * {@link FileChannel#transferTo}. A single byte range is answered with 206; multiple or
+ * malformed ranges get the whole file. Responses carry an ETag and Last-Modified, and
+ * conditional requests for an unchanged file get a bodiless 304.
+ */
+final class LocalFiles {
+
+    // Tomcat's sendfile request attributes; the end offset is exclusive
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private LocalFiles() {}
+
+    /** Content type from the file extension; what a browser needs to display it inline. */
+    static MediaType contentType(String fileName) {
+        return MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    static String inlineDisposition(String fileName) {
+        // URL encode the filename to handle special characters
+        return "inline; filename=\"" + URLEncoder.encode(fileName, StandardCharsets.UTF_8) + "\"";
+    }
+
+    /**
+     * Writes {@code file}, or the requested range of it, as the complete response; or just a
+     * 304 when the client's copy is still current.
+     */
+    static void serve(Path file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(file, CachePolicy.forFile(file.getFileName().toString()), request, response);
+    }
+
+    /** Same, with the given caching instead of the one for the file's name. */
+    static void serve(Path file, CacheControl cacheControl, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        long length = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        String fileName = file.getFileName().toString();
+        // Size and modification time change whenever the file is replaced; hashing the content
+        // on every request would cost the read this path exists to avoid
+        String eTag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+        serve(file, fileName, contentType(fileName), eTag, lastModified, cacheControl, request, response);
+    }
+
+    /**
+     * Same, for a file stored under another name with known validators and caching, such as
+     * a cached bucket object; {@code lastModified} is -1 when unknown.
+     */
+    static void serve(Path file, String fileName, MediaType contentType, String eTag, long lastModified,
+                      CacheControl cacheControl, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Span span = begin(Files.size(file), fileName, contentType, eTag, lastModified, cacheControl, request, response);
+        if (span == null) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, span.start());
+            request.setAttribute(SENDFILE_END, span.end() + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = span.start();
+            while (position <= span.end()) {
+                long sent = channel.transferTo(position, span.end() - position + 1, out);
+                if (sent <= 0) {
+                    break; // the file was truncated while being sent
+                }
+                position += sent;
+            }
+        }
+    }
+
+    /**
+     * Same, for content already in memory, written through a channel so a direct buffer is
+     * copied out in chunks without a heap array the size of the body.
+     */
+    static void serve(ByteBuffer content, String fileName, MediaType contentType, String eTag, long lastModified,
+                      CacheControl cacheControl, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Span span = begin(content.remaining(), fileName, contentType, eTag, lastModified, cacheControl, request, response);
+        if (span == null) {
+            return;
+        }
+
+        ByteBuffer body = content.slice(content.position() + (int) span.start(), (int) (span.end() - span.start() + 1));
+        Channels.newChannel(response.getOutputStream()).write(body);
+    }
+
+    // Bytes start to end, inclusive
+    private record Span(long start, long end) {}
+
+    /**
+     * Writes the headers, and settles validators and ranges.
+     *
+     * @return the bytes to send, or {@code null} if the response is already complete
+     */
+    private static Span begin(long length, String fileName, MediaType contentType, String eTag, long lastModified,
+                              CacheControl cacheControl, HttpServletRequest request, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            return null;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        HttpRange range = singleRange(request.getHeader(HttpHeaders.RANGE));
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (range != null) {
+            try {
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+            } catch (IllegalArgumentException e) {
+                start = length; // e.g. a suffix range of an empty file
+            }
+            // A range starting past the end cannot be satisfied; one ending past it is cut short
+            if (start >= length) {
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return null;
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        response.setContentType(contentType.toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, inlineDisposition(fileName));
+        response.setContentLengthLong(end - start + 1);
+        return new Span(start, end);
+    }
+
+    static HttpRange singleRange(String rangeHeader) {
+        if (rangeHeader == null) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -2,66 +2,112 @@ package com.memorylane.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.bind.annotation.RequestMethod;
 
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.regions.Region;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
-import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
-import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
-import software.amazon.awssdk.services.s3.model.S3Object;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import io.swagger.v3.oas.annotations.Parameter;
 
+import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import com.memorylane.Configguration.WebConfig;
 import com.memorylane.model.Comment;
-import com.memorylane.model.Like;
-import com.memorylane.service.FileStorageService;
+import com.memorylane.service.BatchExecutor;
+import com.memorylane.service.HotObjectCache;
+import com.memorylane.service.ImageOptimizer;
+import com.memorylane.service.ImageVariants;
+import com.memorylane.service.MediaCatalog;
+import com.memorylane.service.ObjectCache;
+import com.memorylane.service.ObjectDeleter;
+import com.memorylane.service.ObjectUploader;
+import com.memorylane.service.StorageService;
+import com.memorylane.service.UploadSessions;
 import org.springframework.beans.factory.annotation.Autowired;
 
 @RestController
 @RequestMapping("/api")
 @Tag(name = "Memory Lane Gallery", description = "Romantic photo gallery API")
-@CrossOrigin(origins = {"http://localhost:3000", "https://memory-lane-gallery.netlify.app"}, methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.DELETE, RequestMethod.OPTIONS}, allowedHeaders = "*")
+@CrossOrigin(origins = {"http://localhost:3000", "https://memory-lane-gallery.netlify.app"}, methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PATCH, RequestMethod.DELETE, RequestMethod.OPTIONS}, allowedHeaders = "*", exposedHeaders = {"X-Next-Cursor", "Upload-Offset", "Location"})
 public class R2UploadController {
 
-    @Value("${cloud.aws.credentials.access-key}")
-    private String accessKey;
-
-    @Value("${cloud.aws.credentials.secret-key}")
-    private String secretKey;
+    private static final String NEXT_CURSOR = "X-Next-Cursor";
+    // Bytes of a resumable upload received so far, as in the tus protocol
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final AtomicLong LAST_TIMESTAMP = new AtomicLong();
 
     @Value("${cloud.aws.bucket}")
     private String bucketName;
 
-    @Value("${cloud.aws.endpoint}")
-    private String endpoint;
+    // Shared, pooled client from S3ClientConfig
+    @Autowired
+    private S3Client s3;
 
+    // Reads photos and songs without holding a thread per request
     @Autowired
-    private FileStorageService fileStorageService;
+    private S3AsyncClient s3Async;
 
-    private S3Client getS3Client() throws URISyntaxException {
-        AwsBasicCredentials credentials = AwsBasicCredentials.create(accessKey, secretKey);
-        return S3Client.builder()
-                .credentialsProvider(StaticCredentialsProvider.create(credentials))
-                .endpointOverride(new URI(endpoint))
-                .region(Region.US_EAST_1)
-                .forcePathStyle(true)
-                .build();
-    }
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private ObjectCache objectCache;
+
+    @Autowired
+    private HotObjectCache hotObjectCache;
+
+    @Autowired
+    private ImageVariants imageVariants;
+
+    @Autowired
+    private LocalCopies localCopies;
+
+    @Autowired
+    private ImageOptimizer imageOptimizer;
+
+    @Autowired
+    private MediaCatalog mediaCatalog;
+
+    @Autowired
+    private ObjectUploader objectUploader;
+
+    @Autowired
+    private UploadSessions uploadSessions;
+
+    @Autowired
+    private BatchExecutor batchExecutor;
+
+    @Autowired
+    private ObjectDeleter objectDeleter;
 
     @PostMapping("/upload")
     @Operation(summary = "Upload Photo to Gallery", description = "Uploads a photo to the romantic gallery")
@@ -74,49 +120,30 @@ public class R2UploadController {
             return ResponseEntity.badRequest().body(new UploadResponse(null, "Only image files are allowed for photo upload"));
         }
         
-        String originalName = file.getOriginalFilename();
-        String baseName = originalName
-                .replaceAll("[\\s]+", "_")             // replace all whitespace with "_"
-                .replaceAll("[^a-zA-Z0-9._-]", "")     // remove special characters
-                .replaceAll("[^\\x00-\\x7F]", "");     // remove all non-ASCII characters
-        
-        // Add timestamp to prevent filename conflicts
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String extension = "";
-        if (baseName.contains(".")) {
-            extension = baseName.substring(baseName.lastIndexOf("."));
-            baseName = baseName.substring(0, baseName.lastIndexOf("."));
-        }
-        String normalizedFileName = baseName + "_" + timestamp + extension;
-
-        try {
-            S3Client s3 = getS3Client();
-
-            s3.putObject(PutObjectRequest.builder()
-                            .bucket(bucketName)
-                            .key(normalizedFileName)
-                            .contentType(file.getContentType())
-                            .build(),
-                    RequestBody.fromBytes(file.getBytes())
-            );
+        return ResponseEntity.ok(storePhoto(file));
+    }
 
-            return ResponseEntity.ok(new UploadResponse(normalizedFileName, "Photo uploaded successfully!"));
-        } catch (Exception e) {
-            // Fallback to local storage if R2 fails
-            System.err.println("R2 upload failed, using local storage: " + e.getMessage());
-            
-            // Create uploads directory if it doesn't exist
-            java.io.File uploadsDir = new java.io.File("uploads");
-            if (!uploadsDir.exists()) {
-                uploadsDir.mkdirs();
-            }
-            
-            // Save file locally
-            java.io.File localFile = new java.io.File(uploadsDir, normalizedFileName);
-            file.transferTo(localFile);
-            
-            return ResponseEntity.ok(new UploadResponse(normalizedFileName, "Photo uploaded successfully (local storage)!"));
+    @PostMapping("/upload/batch")
+    @Operation(summary = "Upload Photos to Gallery", description = "Uploads many photos in one request, stored in parallel; returns a result per file, in the order sent")
+    public ResponseEntity<List<BatchUploadResult>> uploadFiles(
+            @Parameter(description = "Photos to upload", required = true)
+            @RequestParam("files") List<MultipartFile> files) throws Exception {
+        List<Callable<BatchUploadResult>> uploads = new ArrayList<>();
+        for (MultipartFile file : files) {
+            uploads.add(() -> {
+                if (file.getContentType() == null || !file.getContentType().startsWith("image/")) {
+                    return new BatchUploadResult(file.getOriginalFilename(), null, "Only image files are allowed for photo upload", 0);
+                }
+                UploadResponse stored = storePhoto(file);
+                return new BatchUploadResult(file.getOriginalFilename(), stored.getFileName(), stored.getMessage(),
+                        stored.getBytesSaved());
+            });
         }
+        List<BatchUploadResult> results = batchExecutor.runAll(uploads, (index, e) -> {
+            System.err.println("Batch upload of " + files.get(index).getOriginalFilename() + " failed: " + e.getMessage());
+            return new BatchUploadResult(files.get(index).getOriginalFilename(), null, "Upload failed: " + e.getMessage(), 0);
+        });
+        return ResponseEntity.ok(results);
     }
 
     @PostMapping("/upload/music")
@@ -131,46 +158,7 @@ public class R2UploadController {
         }
         
         try {
-            S3Client s3 = getS3Client();
-            
-            // Delete all existing music files before uploading new one
-            ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
-                    .bucket(bucketName)
-                    .build();
-            ListObjectsV2Response listResponse = s3.listObjectsV2(listRequest);
-            
-            for (S3Object obj : listResponse.contents()) {
-                String key = obj.key();
-                if (key.matches(".*\\.(mp3|wav|m4a)$")) {
-                    s3.deleteObject(builder -> builder
-                            .bucket(bucketName)
-                            .key(key)
-                    );
-                }
-            }
-            
-            String originalName = file.getOriginalFilename();
-            String baseName = originalName
-                    .replaceAll("[\\s]+", "_")             // replace all whitespace with "_"
-                    .replaceAll("[^a-zA-Z0-9._-]", "")     // remove special characters
-                    .replaceAll("[^\\x00-\\x7F]", "");     // remove all non-ASCII characters
-            
-            // Add timestamp to prevent filename conflicts
-            String timestamp = String.valueOf(System.currentTimeMillis());
-            String extension = "";
-            if (baseName.contains(".")) {
-                extension = baseName.substring(baseName.lastIndexOf("."));
-                baseName = baseName.substring(0, baseName.lastIndexOf("."));
-            }
-            String normalizedFileName = baseName + "_" + timestamp + extension;
-
-            s3.putObject(PutObjectRequest.builder()
-                            .bucket(bucketName)
-                            .key(normalizedFileName)
-                            .contentType(file.getContentType())
-                            .build(),
-                    RequestBody.fromBytes(file.getBytes())
-            );
+            String normalizedFileName = replaceMusic(file.getOriginalFilename(), file.getContentType(), file, file.getSize());
 
             return ResponseEntity.ok(new UploadResponse(normalizedFileName, "Music uploaded successfully! Previous song deleted."));
         } catch (Exception e) {
@@ -184,26 +172,14 @@ public class R2UploadController {
             }
             
             // Delete existing music files locally
-            java.io.File[] existingFiles = uploadsDir.listFiles((dir, name) -> name.matches(".*\\.(mp3|wav|m4a)$"));
+            java.io.File[] existingFiles = uploadsDir.listFiles((dir, name) -> MediaCatalog.categoryOf(name) == MediaCatalog.Category.MUSIC);
             if (existingFiles != null) {
                 for (java.io.File existingFile : existingFiles) {
                     existingFile.delete();
                 }
             }
             
-            String originalName = file.getOriginalFilename();
-            String baseName = originalName
-                    .replaceAll("[\\s]+", "_")
-                    .replaceAll("[^a-zA-Z0-9._-]", "")
-                    .replaceAll("[^\\x00-\\x7F]", "");
-            
-            String timestamp = String.valueOf(System.currentTimeMillis());
-            String extension = "";
-            if (baseName.contains(".")) {
-                extension = baseName.substring(baseName.lastIndexOf("."));
-                baseName = baseName.substring(0, baseName.lastIndexOf("."));
-            }
-            String normalizedFileName = baseName + "_" + timestamp + extension;
+            String normalizedFileName = normalizedFileName(file.getOriginalFilename());
             
             // Save file locally
             java.io.File localFile = new java.io.File(uploadsDir, normalizedFileName);
@@ -213,24 +189,92 @@ public class R2UploadController {
         }
     }
 
-    @GetMapping("/images")
-    @Operation(summary = "Get All Photos", description = "Returns list of all photos in the gallery")
-    public ResponseEntity<List<String>> getAllImages() throws Exception {
+    @PostMapping("/upload/music/sessions")
+    @Operation(summary = "Start Resumable Music Upload", description = "Creates an upload session for a song of the given size; send it with PATCH, then complete it")
+    public ResponseEntity<UploadSessions.Session> createMusicUploadSession(
+            @org.springframework.web.bind.annotation.RequestBody UploadSessionRequest request) throws Exception {
+        if (request.getFileName() == null || request.getContentType() == null || !request.getContentType().startsWith("audio/")) {
+            return ResponseEntity.badRequest().build();
+        }
         try {
-            S3Client s3 = getS3Client();
-            
-            ListObjectsV2Request request = ListObjectsV2Request.builder()
-                    .bucket(bucketName)
+            UploadSessions.Session session = uploadSessions.create(request.getFileName(), request.getContentType(), request.getSize());
+            return ResponseEntity.created(URI.create("/api/upload/music/sessions/" + session.id()))
+                    .header(UPLOAD_OFFSET, "0")
+                    .body(session);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/upload/music/sessions/{id}")
+    @Operation(summary = "Get Resumable Music Upload", description = "Returns the session; its offset, also in the Upload-Offset header, is where the next chunk starts")
+    public ResponseEntity<UploadSessions.Session> getMusicUploadSession(@PathVariable String id) throws Exception {
+        UploadSessions.Session session = uploadSessions.get(id);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .header(UPLOAD_OFFSET, String.valueOf(session.offset()))
+                .cacheControl(CacheControl.noStore())
+                .body(session);
+    }
+
+    @PatchMapping("/upload/music/sessions/{id}")
+    @Operation(summary = "Send Music Upload Chunk", description = "Appends the request body at the offset in the Upload-Offset header; answers 409 with the expected offset if it does not match")
+    public ResponseEntity<Void> appendMusicUploadChunk(@PathVariable String id,
+                                                       @RequestHeader(UPLOAD_OFFSET) long offset,
+                                                       HttpServletRequest request) throws Exception {
+        try {
+            UploadSessions.Session session = uploadSessions.append(id, offset, request.getInputStream());
+            if (session == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.noContent().header(UPLOAD_OFFSET, String.valueOf(session.offset())).build();
+        } catch (IllegalStateException e) {
+            UploadSessions.Session session = uploadSessions.get(id);
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET, session != null ? String.valueOf(session.offset()) : "0")
                     .build();
-            
-            ListObjectsV2Response response = s3.listObjectsV2(request);
-            
-            List<String> imageNames = response.contents().stream()
-                    .map(S3Object::key)
-                    .filter(key -> key.matches(".*\\.(jpg|jpeg|png|gif|webp)$"))
-                    .collect(Collectors.toList());
-            
-            return ResponseEntity.ok(imageNames);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @PostMapping("/upload/music/sessions/{id}/complete")
+    @Operation(summary = "Complete Resumable Music Upload", description = "Stores the uploaded song in place of the current one; may be retried if it fails")
+    public ResponseEntity<UploadResponse> completeMusicUploadSession(@PathVariable String id) throws Exception {
+        String normalizedFileName;
+        try {
+            normalizedFileName = uploadSessions.complete(id, (session, content) -> replaceMusic(
+                    session.fileName(), session.contentType(), new FileSystemResource(content), session.size()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new UploadResponse(null, e.getMessage()));
+        } catch (SdkException | IOException e) {
+            // The session stays, so completing it can be retried without sending the song again
+            System.err.println("R2 music upload failed: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(new UploadResponse(null, "Storing the song failed, try again"));
+        }
+        if (normalizedFileName == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new UploadResponse(normalizedFileName, "Music uploaded successfully! Previous song deleted."));
+    }
+
+    @DeleteMapping("/upload/music/sessions/{id}")
+    @Operation(summary = "Cancel Resumable Music Upload", description = "Deletes the session and the chunks received")
+    public ResponseEntity<Void> cancelMusicUploadSession(@PathVariable String id) throws Exception {
+        return uploadSessions.cancel(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/images")
+    @Operation(summary = "Get All Photos", description = "Returns the photos in the gallery, newest first. With limit, one page; the X-Next-Cursor header holds the cursor of the next")
+    public ResponseEntity<List<String>> getAllImages(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) throws Exception {
+        try {
+            return listingPage(MediaCatalog.Category.IMAGE, limit, cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             // Fallback to local storage
             System.err.println("R2 list images failed, using local storage: " + e.getMessage());
@@ -240,7 +284,7 @@ public class R2UploadController {
                 return ResponseEntity.ok(new ArrayList<>());
             }
             
-            java.io.File[] files = uploadsDir.listFiles((dir, name) -> name.matches(".*\\.(jpg|jpeg|png|gif|webp)$"));
+            java.io.File[] files = uploadsDir.listFiles((dir, name) -> MediaCatalog.categoryOf(name) == MediaCatalog.Category.IMAGE);
             List<String> imageNames = new ArrayList<>();
             if (files != null) {
                 for (java.io.File file : files) {
@@ -253,24 +297,14 @@ public class R2UploadController {
     }
 
     @GetMapping("/music")
-    @Operation(summary = "Get Music Files", description = "Returns list of all music files")
-    public ResponseEntity<List<String>> getMusicFiles() throws Exception {
+    @Operation(summary = "Get Music Files", description = "Returns the music files, newest first. With limit, one page; the X-Next-Cursor header holds the cursor of the next")
+    public ResponseEntity<List<String>> getMusicFiles(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor) throws Exception {
         try {
-            S3Client s3 = getS3Client();
-            
-            ListObjectsV2Request request = ListObjectsV2Request.builder()
-                    .bucket(bucketName)
-                    .build();
-            
-            ListObjectsV2Response response = s3.listObjectsV2(request);
-            
-            List<String> musicFiles = response.contents().stream()
-                    .map(S3Object::key)
-                    .filter(key -> key.matches(".*\\.(mp3|wav|m4a)$"))
-                    .sorted() // Sort by filename
-                    .collect(Collectors.toList());
-            
-            return ResponseEntity.ok(musicFiles);
+            return listingPage(MediaCatalog.Category.MUSIC, limit, cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             // Fallback to local storage
             System.err.println("R2 list music failed, using local storage: " + e.getMessage());
@@ -280,7 +314,7 @@ public class R2UploadController {
                 return ResponseEntity.ok(new ArrayList<>());
             }
             
-            java.io.File[] files = uploadsDir.listFiles((dir, name) -> name.matches(".*\\.(mp3|wav|m4a)$"));
+            java.io.File[] files = uploadsDir.listFiles((dir, name) -> MediaCatalog.categoryOf(name) == MediaCatalog.Category.MUSIC);
             List<String> musicFiles = new ArrayList<>();
             if (files != null) {
                 for (java.io.File file : files) {
@@ -295,17 +329,18 @@ public class R2UploadController {
     @DeleteMapping("/music/{fileName}")
     @Operation(summary = "Delete Music File", description = "Deletes a specific music file")
     public ResponseEntity<String> deleteMusicFile(@PathVariable String fileName) throws Exception {
-        S3Client s3 = getS3Client();
-        
         // Only allow deletion of music files
-        if (!fileName.matches(".*\\.(mp3|wav|m4a)$")) {
+        if (mediaCatalog.category(fileName) != MediaCatalog.Category.MUSIC) {
             return ResponseEntity.badRequest().body("Only music files can be deleted");
         }
         
+        String key = mediaCatalog.keyOf(fileName);
         s3.deleteObject(builder -> builder
                 .bucket(bucketName)
-                .key(fileName)
+                .key(key)
         );
+        mediaCatalog.removed(fileName);
+        invalidateCached(key);
         
         return ResponseEntity.ok("Music file deleted successfully");
     }
@@ -313,132 +348,372 @@ public class R2UploadController {
     @DeleteMapping("/images/{fileName}")
     @Operation(summary = "Delete Photo", description = "Deletes a specific photo from the gallery")
     public ResponseEntity<String> deleteImage(@PathVariable String fileName) throws Exception {
-        S3Client s3 = getS3Client();
-        
         // Only allow deletion of image files
-        if (!fileName.matches(".*\\.(jpg|jpeg|png|gif|webp)$")) {
+        if (mediaCatalog.category(fileName) != MediaCatalog.Category.IMAGE) {
             return ResponseEntity.badRequest().body("Only image files can be deleted");
         }
         
         // Delete the image from S3
+        String key = mediaCatalog.keyOf(fileName);
         s3.deleteObject(DeleteObjectRequest.builder()
                 .bucket(bucketName)
-                .key(fileName)
+                .key(key)
                 .build());
+        mediaCatalog.removed(fileName);
+        invalidateCached(key);
+        imageVariants.deleteVariants(fileName).forEach(this::invalidateCached);
         
         // Delete associated comments
-        fileStorageService.deleteCommentsByPhotoName(fileName);
+        storageService.deleteCommentsByPhotoName(fileName);
         
         // Delete associated likes
-        fileStorageService.deleteLikesByPhotoName(fileName);
+        storageService.deleteLikesByPhotoName(fileName);
         
         return ResponseEntity.ok("Photo deleted successfully");
     }
 
-    @GetMapping("/images/{fileName}")
-    @Operation(summary = "Get Photo", description = "Streams a photo from the gallery")
-    public ResponseEntity<byte[]> getFile(@PathVariable String fileName) throws Exception {
-        try {
-            S3Client s3 = getS3Client();
+    @PostMapping("/images/delete")
+    @Operation(summary = "Delete Photos", description = "Deletes many photos from the gallery, with their comments and likes; returns a result per photo")
+    public ResponseEntity<List<DeleteResult>> deleteImages(
+            @org.springframework.web.bind.annotation.RequestBody DeleteRequest request) {
+        List<String> fileNames = request.getFileNames() != null ? request.getFileNames() : List.of();
+        Map<String, String> keys = new LinkedHashMap<>();
+        List<String> variantKeys = new ArrayList<>();
+        for (String fileName : fileNames) {
+            if (mediaCatalog.category(fileName) == MediaCatalog.Category.IMAGE) {
+                keys.put(fileName, mediaCatalog.keyOf(fileName));
+                variantKeys.addAll(imageVariants.forgetVariants(fileName));
+            }
+        }
 
-            var object = s3.getObject(builder -> builder
-                    .bucket(bucketName)
-                    .key(fileName)
-            );
+        // Originals and variants go out together, 1000 keys per request
+        List<String> allKeys = new ArrayList<>(keys.values());
+        allKeys.addAll(variantKeys);
+        Map<String, ObjectDeleter.Result> deleted = new HashMap<>();
+        for (ObjectDeleter.Result result : objectDeleter.delete(allKeys)) {
+            deleted.put(result.key(), result);
+            if (result.isDeleted()) {
+                invalidateCached(result.key());
+            } else if (ImageVariants.isVariant(result.key())) {
+                System.err.println("Error deleting variant " + result.key() + ": " + result.error());
+            }
+        }
 
-            byte[] content = object.readAllBytes();
-            
-            // Determine content type based on file extension
-            String contentType = "image/jpeg"; // default
-            if (fileName.toLowerCase().endsWith(".png")) {
-                contentType = "image/png";
-            } else if (fileName.toLowerCase().endsWith(".gif")) {
-                contentType = "image/gif";
-            } else if (fileName.toLowerCase().endsWith(".webp")) {
-                contentType = "image/webp";
-            } else if (fileName.toLowerCase().endsWith(".mp3")) {
-                contentType = "audio/mpeg";
-            } else if (fileName.toLowerCase().endsWith(".wav")) {
-                contentType = "audio/wav";
-            } else if (fileName.toLowerCase().endsWith(".m4a")) {
-                contentType = "audio/mp4";
+        List<DeleteResult> results = new ArrayList<>();
+        List<String> deletedPhotos = new ArrayList<>();
+        for (String fileName : fileNames) {
+            String key = keys.get(fileName);
+            if (key == null) {
+                results.add(new DeleteResult(fileName, null, false, "Only image files can be deleted"));
+                continue;
+            }
+            ObjectDeleter.Result result = deleted.get(key);
+            if (result.isDeleted()) {
+                mediaCatalog.removed(fileName);
+                deletedPhotos.add(fileName);
+                results.add(new DeleteResult(fileName, key, true, "Photo deleted successfully"));
+            } else {
+                results.add(new DeleteResult(fileName, key, false, "Delete failed: " + result.error()));
+            }
+        }
+
+        // Comments and likes of every deleted photo in one pass
+        if (!deletedPhotos.isEmpty()) {
+            storageService.deleteByPhotoNames(deletedPhotos);
+        }
+        return ResponseEntity.ok(results);
+    }
+
+    @GetMapping("/images/{fileName}")
+    @Operation(summary = "Get Photo", description = "Streams a photo or song from the gallery; supports byte ranges for seeking. With w, a photo is scaled down to about that width")
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getFile(@PathVariable String fileName,
+                                                                            @Parameter(description = "Width the photo is displayed at, in pixels")
+                                                                            @RequestParam(value = "w", required = false) Integer width,
+                                                                            HttpServletRequest request) {
+        // Read here: the source may only be known on another thread, after this one has returned.
+        // Only a single range is passed through to the bucket; anything else gets the whole file
+        HttpRange range = LocalFiles.singleRange(request.getHeader(HttpHeaders.RANGE));
+        // The bucket evaluates the validators, so a 304 never transfers the object body.
+        // If-Modified-Since only counts when there is no If-None-Match (RFC 9110)
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        Instant ifModifiedSince = ifNoneMatch == null ? ifModifiedSince(request) : null;
+        // A whole object is cached from the body streamed to this request. A range only has
+        // part of it, so unless the request is conditional (the bucket answers that without
+        // sending the body, which is cheaper than filling the cache) the object is downloaded
+        // a second time in the background for the next requests
+        boolean prefetch = range != null && ifNoneMatch == null && request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) == null;
+        // A song to a slow listener streams for minutes; waiting for the bucket may not
+        request.setAttribute(WebConfig.LONG_STREAM, Boolean.TRUE);
+
+        // Copies on this machine were served by LocalCopies before this was called. Usually
+        // complete already; only a variant not seen since startup is looked up or made
+        return objectSource(fileName, width).thenCompose(source -> {
+            if (prefetch) {
+                objectCache.prefetch(source.key());
             }
+            return fetch(fileName, source, range, ifNoneMatch, ifModifiedSince);
+        });
+    }
 
-            // URL encode the filename to handle special characters
-            String encodedFileName = java.net.URLEncoder.encode(fileName, java.nio.charset.StandardCharsets.UTF_8);
-            
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + encodedFileName + "\"")
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .body(content);
+    // Streams the object from the bucket once its headers arrive
+    private CompletableFuture<ResponseEntity<StreamingResponseBody>> fetch(String fileName, Source source, HttpRange range,
+                                                                           String ifNoneMatch, Instant ifModifiedSince) {
+        // No thread waits for the bucket: the servlet thread returns and the response is
+        // rendered once the object's headers arrive. The body is then pulled from the
+        // connection only as fast as the listener takes it
+        return s3Async.getObject(builder -> builder
+                        .bucket(bucketName)
+                        .key(source.key())
+                        .range(range != null ? HttpRange.toString(List.of(range)) : null)
+                        .ifNoneMatch(ifNoneMatch)
+                        .ifModifiedSince(ifModifiedSince),
+                AsyncResponseTransformer.<GetObjectResponse>toBlockingInputStream()
+        ).handle((object, error) -> error == null
+                ? objectResponse(fileName, source, object)
+                : errorResponse(fileName, source, error instanceof CompletionException ? error.getCause() : error));
+    }
+
+    @GetMapping("/upload/stats")
+    @Operation(summary = "Get Upload Optimization Statistics", description = "Photos re-encoded on upload and the bytes saved")
+    public ResponseEntity<ImageOptimizer.Stats> getUploadStats() {
+        return ResponseEntity.ok(imageOptimizer.stats());
+    }
+
+    @GetMapping("/cache/stats")
+    @Operation(summary = "Get Cache Statistics", description = "Hits, misses and evictions of the local photo and song caches")
+    public ResponseEntity<CacheStats> getCacheStats() {
+        return ResponseEntity.ok(new CacheStats(objectCache.stats(), hotObjectCache.stats()));
+    }
+
+    // Stores one photo that has passed validation, in the bucket or else locally
+    private UploadResponse storePhoto(MultipartFile file) throws IOException {
+        // Re-encoded without metadata, or null to store the upload as it is
+        ImageOptimizer.Optimized optimized = imageOptimizer.optimize(file.getOriginalFilename(), file,
+                file.getContentType(), file.getSize());
+        String contentType = optimized != null ? optimized.contentType() : file.getContentType();
+
+        String normalizedFileName = normalizedFileName(file.getOriginalFilename());
+        // A PNG screenshot stored as JPEG
+        if ("image/png".equals(file.getContentType()) && "image/jpeg".equals(contentType)) {
+            int extension = normalizedFileName.lastIndexOf('.');
+            normalizedFileName = (extension >= 0 ? normalizedFileName.substring(0, extension) : normalizedFileName) + ".jpg";
+        }
+
+        try {
+            // Streamed from the multipart temp file, or the re-encoded one
+            InputStreamSource content = optimized != null ? new FileSystemResource(optimized.file()) : file;
+            long size = optimized != null ? optimized.size() : file.getSize();
+            MediaCatalog.Entry entry = MediaCatalog.describe(MediaCatalog.Category.IMAGE, normalizedFileName, contentType, content, size);
+            objectUploader.upload(entry.key(), contentType, content, size);
+            mediaCatalog.added(entry);
+            imageVariants.createVariants(normalizedFileName, entry.key());
+
+            return new UploadResponse(normalizedFileName, "Photo uploaded successfully!",
+                    optimized != null ? optimized.originalSize() - optimized.size() : 0);
         } catch (Exception e) {
-            // Fallback to local storage
-            System.err.println("R2 get file failed, using local storage: " + e.getMessage());
+            // Fallback to local storage if R2 fails
+            System.err.println("R2 upload failed, using local storage: " + e.getMessage());
             
+            // Create uploads directory if it doesn't exist
             java.io.File uploadsDir = new java.io.File("uploads");
-            java.io.File localFile = new java.io.File(uploadsDir, fileName);
-            
-            if (!localFile.exists()) {
-                return ResponseEntity.notFound().build();
+            if (!uploadsDir.exists()) {
+                uploadsDir.mkdirs();
             }
             
-            byte[] content = java.nio.file.Files.readAllBytes(localFile.toPath());
+            // Save file locally
+            java.io.File localFile = new java.io.File(uploadsDir, normalizedFileName);
+            if (optimized != null) {
+                Files.copy(optimized.file(), localFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                file.transferTo(localFile);
+            }
             
-            // Determine content type based on file extension
-            String contentType = "image/jpeg"; // default
-            if (fileName.toLowerCase().endsWith(".png")) {
-                contentType = "image/png";
-            } else if (fileName.toLowerCase().endsWith(".gif")) {
-                contentType = "image/gif";
-            } else if (fileName.toLowerCase().endsWith(".webp")) {
-                contentType = "image/webp";
-            } else if (fileName.toLowerCase().endsWith(".mp3")) {
-                contentType = "audio/mpeg";
-            } else if (fileName.toLowerCase().endsWith(".wav")) {
-                contentType = "audio/wav";
-            } else if (fileName.toLowerCase().endsWith(".m4a")) {
-                contentType = "audio/mp4";
+            return new UploadResponse(normalizedFileName, "Photo uploaded successfully (local storage)!");
+        } finally {
+            if (optimized != null) {
+                optimized.delete();
             }
+        }
+    }
 
-            // URL encode the filename to handle special characters
-            String encodedFileName = java.net.URLEncoder.encode(fileName, java.nio.charset.StandardCharsets.UTF_8);
-            
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + encodedFileName + "\"")
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .body(content);
+    // Deletes the current songs, then stores the new one; returns its file name
+    private String replaceMusic(String originalName, String contentType, InputStreamSource content, long size) throws IOException {
+        mediaCatalog.ensureLoaded();
+        for (MediaCatalog.Entry song : mediaCatalog.entries(MediaCatalog.Category.MUSIC)) {
+            s3.deleteObject(builder -> builder
+                    .bucket(bucketName)
+                    .key(song.key())
+            );
+            mediaCatalog.removed(song.fileName());
+            invalidateCached(song.key());
+        }
+
+        String normalizedFileName = normalizedFileName(originalName);
+        MediaCatalog.Entry entry = MediaCatalog.describe(MediaCatalog.Category.MUSIC, normalizedFileName, contentType, content, size);
+        objectUploader.upload(entry.key(), contentType, content, size);
+        mediaCatalog.added(entry);
+        return normalizedFileName;
+    }
+
+    // The current time in millis, moved past the last one handed out. Batches store photos in
+    // parallel, and same-named photos (iOS sends every one as image.jpg) would otherwise get
+    // the same key within a millisecond and overwrite each other
+    private static long uniqueTimestamp() {
+        return LAST_TIMESTAMP.accumulateAndGet(System.currentTimeMillis(), (last, now) -> Math.max(last + 1, now));
+    }
+
+    private static String normalizedFileName(String originalName) {
+        String baseName = originalName
+                .replaceAll("[\\s]+", "_")             // replace all whitespace with "_"
+                .replaceAll("[^a-zA-Z0-9._-]", "")     // remove special characters
+                .replaceAll("[^\\x00-\\x7F]", "");     // remove all non-ASCII characters
+
+        // Add timestamp to prevent filename conflicts
+        String timestamp = String.valueOf(uniqueTimestamp());
+        String extension = "";
+        if (baseName.contains(".")) {
+            extension = baseName.substring(baseName.lastIndexOf("."));
+            baseName = baseName.substring(0, baseName.lastIndexOf("."));
+        }
+        return baseName + "_" + timestamp + extension;
+    }
+
+    private ResponseEntity<List<String>> listingPage(MediaCatalog.Category category, Integer limit, String cursor) {
+        mediaCatalog.ensureLoaded();
+        MediaCatalog.Page page = mediaCatalog.page(category, limit, cursor);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR, page.nextCursor());
         }
+        return response.body(page.fileNames());
+    }
+
+    // A bucket key to serve and how long browsers may keep what it returns
+    private record Source(String key, CacheControl cacheControl) {}
+
+    // The original, or a downscaled variant of a photo
+    private CompletableFuture<Source> objectSource(String fileName, Integer width) {
+        String key = mediaCatalog.keyOf(fileName);
+        if (width == null || width <= 0 || mediaCatalog.category(fileName) != MediaCatalog.Category.IMAGE) {
+            return CompletableFuture.completedFuture(new Source(key, CachePolicy.forFile(fileName)));
+        }
+        return imageVariants.resolve(fileName, key, width)
+                .thenApply(resolved -> new Source(resolved, CachePolicy.forFile(fileName)))
+                .exceptionally(error -> {
+                    // Only until resizing works again; the same URL should then get the variant
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    System.err.println("Resizing " + fileName + " failed, serving the original: " + cause.getMessage());
+                    return new Source(key, CachePolicy.revalidate());
+                });
+    }
+
+    private void invalidateCached(String key) {
+        hotObjectCache.invalidate(key);
+        objectCache.invalidate(key);
+    }
+
+    private static Instant ifModifiedSince(HttpServletRequest request) {
+        try {
+            long millis = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+            return millis >= 0 ? Instant.ofEpochMilli(millis) : null;
+        } catch (IllegalArgumentException e) {
+            return null; // an unparseable date is ignored, as if it were absent
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> objectResponse(String fileName, Source source,
+                                                                 ResponseInputStream<GetObjectResponse> object) {
+        GetObjectResponse metadata = object.response();
+        ResponseEntity.BodyBuilder response = metadata.contentRange() != null
+                ? ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).header(HttpHeaders.CONTENT_RANGE, metadata.contentRange())
+                : ResponseEntity.ok();
+        if (metadata.contentLength() != null) {
+            response.contentLength(metadata.contentLength());
+        }
+        // The bucket's ETag is an MD5 of the content (or of its parts), so it is a strong validator
+        if (metadata.eTag() != null) {
+            response.eTag(metadata.eTag());
+        }
+        if (metadata.lastModified() != null) {
+            response.lastModified(metadata.lastModified());
+        }
+
+        // Copied with a small fixed buffer on a virtual thread, so a song is never held in memory,
+        // and kept in the disk cache on the way. Closing the stream cancels the transfer, e.g.
+        // when the listener went away
+        StreamingResponseBody body = out -> {
+            try (object) {
+                objectCache.transfer(source.key(), object, out);
+            }
+        };
+        return response
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .cacheControl(source.cacheControl())
+                .header(HttpHeaders.CONTENT_DISPOSITION, LocalFiles.inlineDisposition(fileName))
+                .contentType(localCopies.mediaType(metadata.contentType(), fileName))
+                .body(body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> errorResponse(String fileName, Source source, Throwable error) {
+        if (error instanceof S3Exception e && e.statusCode() == HttpStatus.NOT_MODIFIED.value()) {
+            ResponseEntity.BodyBuilder notModified = ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .cacheControl(source.cacheControl());
+            e.awsErrorDetails().sdkHttpResponse().firstMatchingHeader(HttpHeaders.ETAG).ifPresent(notModified::eTag);
+            return notModified.build();
+        }
+        if (error instanceof S3Exception e && e.statusCode() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).build();
+        }
+        // A local copy, if there were one, was served before the bucket was asked
+        System.err.println("R2 get file failed for " + fileName + ": " + error.getMessage());
+        return ResponseEntity.notFound().build();
     }
 
     // Response class for upload endpoint
     public static class UploadResponse {
         private String fileName;
         private String message;
+        // Bytes the stored photo is smaller than the upload, by re-encoding or dropping its metadata
+        private long bytesSaved;
 
         public UploadResponse(String fileName, String message) {
+            this(fileName, message, 0);
+        }
+
+        public UploadResponse(String fileName, String message, long bytesSaved) {
             this.fileName = fileName;
             this.message = message;
+            this.bytesSaved = bytesSaved;
         }
 
         public String getFileName() { return fileName; }
         public void setFileName(String fileName) { this.fileName = fileName; }
         public String getMessage() { return message; }
         public void setMessage(String message) { this.message = message; }
+        public long getBytesSaved() { return bytesSaved; }
+        public void setBytesSaved(long bytesSaved) { this.bytesSaved = bytesSaved; }
     }
 
+    public record CacheStats(ObjectCache.Stats disk, HotObjectCache.Stats memory) {}
+
+    public record DeleteResult(String fileName, String key, boolean deleted, String message) {}
+
+    // fileName is null if the photo was not stored, and message says why
+    public record BatchUploadResult(String originalFileName, String fileName, String message, long bytesSaved) {}
+
     // Comment and Like endpoints
     @PostMapping("/comments")
     @Operation(summary = "Add Comment", description = "Adds a comment to a photo")
     public ResponseEntity<Comment> addComment(@org.springframework.web.bind.annotation.RequestBody CommentRequest request) {
         Comment comment = new Comment(request.getPhotoName(), request.getCommentText(), request.getAuthorName());
-        Comment savedComment = fileStorageService.saveComment(comment);
+        Comment savedComment = storageService.saveComment(comment);
         return ResponseEntity.ok(savedComment);
     }
 
     @GetMapping("/comments/{photoName}")
     @Operation(summary = "Get Comments", description = "Gets all comments for a photo")
     public ResponseEntity<List<Comment>> getComments(@PathVariable String photoName) {
-        List<Comment> comments = fileStorageService.getCommentsByPhotoName(photoName);
+        List<Comment> comments = storageService.getCommentsByPhotoName(photoName);
         return ResponseEntity.ok(comments);
     }
 
@@ -446,7 +721,7 @@ public class R2UploadController {
     @Operation(summary = "Delete Comment", description = "Deletes a specific comment")
     public ResponseEntity<String> deleteComment(@PathVariable Long commentId) {
         try {
-            fileStorageService.deleteComment(commentId);
+            storageService.deleteComment(commentId);
             return ResponseEntity.ok("Comment deleted successfully");
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Error deleting comment: " + e.getMessage());
@@ -456,37 +731,46 @@ public class R2UploadController {
     @PostMapping("/likes")
     @Operation(summary = "Toggle Like", description = "Toggles like for a photo")
     public ResponseEntity<LikeResponse> toggleLike(@org.springframework.web.bind.annotation.RequestBody LikeRequest request) {
-        boolean hasLiked = fileStorageService.hasUserLikedPhoto(request.getPhotoName(), request.getUserName());
-        
-        if (hasLiked) {
-            // Unlike
-            fileStorageService.deleteLike(request.getPhotoName(), request.getUserName());
-            long likeCount = fileStorageService.getLikesByPhotoName(request.getPhotoName()).size();
-            return ResponseEntity.ok(new LikeResponse(false, likeCount));
-        } else {
-            // Like
-            Like like = new Like(request.getPhotoName(), request.getUserName());
-            fileStorageService.saveLike(like);
-            long likeCount = fileStorageService.getLikesByPhotoName(request.getPhotoName()).size();
-            return ResponseEntity.ok(new LikeResponse(true, likeCount));
-        }
+        boolean liked = storageService.toggleLike(request.getPhotoName(), request.getUserName());
+        long likeCount = storageService.getLikeCount(request.getPhotoName());
+        return ResponseEntity.ok(new LikeResponse(liked, likeCount));
     }
 
     @GetMapping("/likes/{photoName}")
     @Operation(summary = "Get Like Count", description = "Gets like count for a photo")
     public ResponseEntity<Long> getLikeCount(@PathVariable String photoName) {
-        long likeCount = fileStorageService.getLikesByPhotoName(photoName).size();
+        long likeCount = storageService.getLikeCount(photoName);
         return ResponseEntity.ok(likeCount);
     }
 
     @GetMapping("/likes/{photoName}/user/{userName}")
     @Operation(summary = "Check User Like", description = "Checks if user has liked a photo")
     public ResponseEntity<Boolean> hasUserLiked(@PathVariable String photoName, @PathVariable String userName) {
-        boolean hasLiked = fileStorageService.hasUserLikedPhoto(photoName, userName);
+        boolean hasLiked = storageService.hasUserLikedPhoto(photoName, userName);
         return ResponseEntity.ok(hasLiked);
     }
 
     // Request/Response classes
+    public static class UploadSessionRequest {
+        private String fileName;
+        private String contentType;
+        private long size;
+
+        public String getFileName() { return fileName; }
+        public void setFileName(String fileName) { this.fileName = fileName; }
+        public String getContentType() { return contentType; }
+        public void setContentType(String contentType) { this.contentType = contentType; }
+        public long getSize() { return size; }
+        public void setSize(long size) { this.size = size; }
+    }
+
+    public static class DeleteRequest {
+        private List<String> fileNames;
+
+        public List<String> getFileNames() { return fileNames; }
+        public void setFileNames(List<String> fileNames) { this.fileNames = fileNames; }
+    }
+
     public static class CommentRequest {
         private String photoName;
         private String commentText;
@@ -1,19 +1,18 @@
 package com.memorylane.controller;
 
 import com.memorylane.model.User;
-import com.memorylane.service.FileStorageService;
+import com.memorylane.service.StorageService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -26,7 +25,7 @@ import java.util.Map;
 public class UserController {
 
     @Autowired
-    private FileStorageService fileStorageService;
+    private StorageService storageService;
 
     @PostMapping("/signup")
     @Operation(summary = "User Signup", description = "Register a new user")
@@ -55,7 +54,7 @@ public class UserController {
                 request.getProfilePicture()
             );
 
-            User savedUser = fileStorageService.saveUser(user);
+            User savedUser = storageService.saveUser(user);
             if (savedUser != null) {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
@@ -85,7 +84,7 @@ public class UserController {
             }
 
             // Authenticate user
-            User user = fileStorageService.authenticateUser(request.getUsername().trim(), request.getPassword());
+            User user = storageService.authenticateUser(request.getUsername().trim(), request.getPassword());
             if (user != null) {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
@@ -104,7 +103,7 @@ public class UserController {
     @Operation(summary = "Check Username Availability", description = "Check if username is available")
     public ResponseEntity<?> checkUsername(@PathVariable String username) {
         try {
-            User existingUser = fileStorageService.getUserByUsername(username);
+            User existingUser = storageService.getUserByUsername(username);
             Map<String, Object> response = new HashMap<>();
             response.put("available", existingUser == null);
             return ResponseEntity.ok(response);
@@ -117,7 +116,7 @@ public class UserController {
     @Operation(summary = "Check Email Availability", description = "Check if email is available")
     public ResponseEntity<?> checkEmail(@PathVariable String email) {
         try {
-            User existingUser = fileStorageService.getUserByEmail(email.toLowerCase());
+            User existingUser = storageService.getUserByEmail(email.toLowerCase());
             Map<String, Object> response = new HashMap<>();
             response.put("available", existingUser == null);
             return ResponseEntity.ok(response);
@@ -145,7 +144,7 @@ public class UserController {
                 return ResponseEntity.badRequest().body(createErrorResponse("File size must be less than 5MB"));
             }
 
-            String fileName = fileStorageService.storeProfilePicture(file, username);
+            String fileName = storageService.storeProfilePicture(file, username);
             if (fileName != null) {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
@@ -162,21 +161,15 @@ public class UserController {
 
     @GetMapping("/profile-pictures/{fileName}")
     @Operation(summary = "Get Profile Picture", description = "Retrieve a profile picture by filename")
-    public ResponseEntity<Resource> getProfilePicture(@PathVariable String fileName) {
-        try {
-            Path filePath = Paths.get("uploads/profile-pictures").resolve(fileName).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
-            
-            if (resource.exists() && resource.isReadable()) {
-                return ResponseEntity.ok()
-                        .contentType(MediaType.IMAGE_JPEG)
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                        .body(resource);
-            } else {
-                return ResponseEntity.notFound().build();
-            }
-        } catch (IOException e) {
-            return ResponseEntity.notFound().build();
+    public void getProfilePicture(@PathVariable String fileName, HttpServletRequest request,
+                                  HttpServletResponse response) throws IOException {
+        Path uploadDir = Paths.get("uploads/profile-pictures").toAbsolutePath().normalize();
+        Path filePath = uploadDir.resolve(fileName).normalize();
+
+        if (filePath.startsWith(uploadDir) && Files.isRegularFile(filePath) && Files.isReadable(filePath)) {
+            LocalFiles.serve(filePath, request, response);
+        } else {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
     }
 
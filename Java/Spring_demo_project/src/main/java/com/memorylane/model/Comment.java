@@ -4,11 +4,13 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "comments")
+@Table(name = "comments", indexes = @Index(name = "idx_comments_photo_name", columnList = "photo_name"))
 public class Comment {
     
+    // Table generated ids let Hibernate batch inserts, which IDENTITY columns prevent
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "comment_ids")
+    @TableGenerator(name = "comment_ids", table = "id_sequences", pkColumnValue = "comments", allocationSize = 50)
     private Long id;
     
     @Column(name = "photo_name", nullable = false)
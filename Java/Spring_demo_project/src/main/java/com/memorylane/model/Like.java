@@ -4,11 +4,15 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "likes")
+@Table(name = "likes", indexes = {
+        @Index(name = "idx_likes_photo_name", columnList = "photo_name"),
+        @Index(name = "uk_likes_photo_user", columnList = "photo_name, user_name", unique = true)
+})
 public class Like {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "like_ids")
+    @TableGenerator(name = "like_ids", table = "id_sequences", pkColumnValue = "likes", allocationSize = 50)
     private Long id;
     
     @Column(name = "photo_name", nullable = false)
@@ -1,9 +1,16 @@
 package com.memorylane.model;
 
+import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
+@Entity
+@Table(name = "messages")
 public class Message {
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "message_ids")
+    @TableGenerator(name = "message_ids", table = "id_sequences", pkColumnValue = "messages", allocationSize = 50)
     private Long id;
+    @Column(length = 4000)
     private String content;
     private LocalDateTime timestamp;
 
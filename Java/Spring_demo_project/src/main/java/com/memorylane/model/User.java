@@ -1,16 +1,39 @@
 package com.memorylane.model;
 
+import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
+@Entity
+@Table(name = "users", indexes = {
+        @Index(name = "uk_users_username", columnList = "username", unique = true),
+        @Index(name = "uk_users_email", columnList = "email", unique = true)
+})
 public class User {
     
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "user_ids")
+    @TableGenerator(name = "user_ids", table = "id_sequences", pkColumnValue = "users", allocationSize = 50)
     private Long id;
+    
+    @Column(nullable = false)
     private String username;
+    
+    @Column(nullable = false)
     private String email;
+    
+    @Column(nullable = false)
     private String password;
+    
+    @Column(name = "full_name")
     private String fullName;
+    
+    @Column(name = "profile_picture")
     private String profilePicture;
+    
+    @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
+    
+    @Column(name = "last_login_at")
     private LocalDateTime lastLoginAt;
     
     // Default constructor
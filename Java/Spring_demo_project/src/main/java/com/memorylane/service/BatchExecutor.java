@@ -0,0 +1,64 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.UploadProperties;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
+
+/**
+ * Runs the items of a batch upload concurrently, each on a virtual thread.
+ *
+ * Storing a photo mostly waits on the bucket, so a virtual thread per photo costs next to
+ * nothing while it blocks, and a batch takes about as long as its slowest few puts instead
+ * of their sum. One semaphore shared by all batches caps how many run at once, keeping
+ * them from taking every connection in the S3 client's pool.
+ */
+@Service
+public class BatchExecutor {
+
+    private final Semaphore permits;
+
+    public BatchExecutor(UploadProperties properties) {
+        this.permits = new Semaphore(Math.max(1, properties.getBatchConcurrency()), true);
+    }
+
+    /**
+     * Runs every task and waits for all of them.
+     *
+     * @param onFailure turns the index and exception of a failed task into its result
+     * @return the results in task order
+     */
+    public <T> List<T> runAll(List<Callable<T>> tasks, BiFunction<Integer, Exception, T> onFailure) throws InterruptedException {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return task.call();
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        } // waits for every task
+
+        List<T> results = new ArrayList<>(tasks.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                results.add(onFailure.apply(i, e.getCause() instanceof Exception cause ? cause : e));
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,133 @@
+package com.memorylane.service;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The EXIF orientation of a JPEG, which ImageIO ignores.
+ *
+ * Cameras store pixels as the sensor saw them and record how to turn them for display.
+ * Browsers honour the tag, so a photo that is decoded, resized and re-encoded without it
+ * would show up on its side.
+ */
+final class ExifOrientation {
+
+    static final int NORMAL = 1;
+
+    private static final int ORIENTATION_TAG = 0x0112;
+    private static final byte[] EXIF_HEADER = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+
+    private ExifOrientation() {}
+
+    /** The orientation (1 to 8) in the first IFD of the image's EXIF segment; 1 if there is none. */
+    static int read(byte[] image) {
+        if (image.length < 4 || (image[0] & 0xFF) != 0xFF || (image[1] & 0xFF) != 0xD8) {
+            return NORMAL; // not a JPEG
+        }
+        int position = 2;
+        while (position + 4 <= image.length && (image[position] & 0xFF) == 0xFF) {
+            int marker = image[position + 1] & 0xFF;
+            if (marker == 0xDA || marker == 0xD9) {
+                break; // start of scan; metadata only comes before it
+            }
+            int length = u16(image, position + 2, true);
+            int segment = position + 4;
+            int end = Math.min(image.length, position + 2 + length);
+            if (marker == 0xE1 && startsWith(image, segment, end, EXIF_HEADER)) {
+                return orientation(image, segment + EXIF_HEADER.length, end);
+            }
+            position += 2 + length;
+        }
+        return NORMAL;
+    }
+
+    /** A JPEG APP1 segment, marker included, whose EXIF holds nothing but {@code orientation}. */
+    static byte[] segment(int orientation) {
+        return new byte[]{
+                (byte) 0xFF, (byte) 0xE1, 0, 34, 'E', 'x', 'i', 'f', 0, 0,
+                'M', 'M', 0, 42, 0, 0, 0, 8,                        // big-endian TIFF header, first IFD at 8
+                0, 1,                                               // one entry
+                0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+                0, 0, 0, 0                                          // no next IFD
+        };
+    }
+
+    /** Turns the pixels so the image displays upright without the tag. */
+    static BufferedImage apply(BufferedImage image, int orientation) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, width, 0);        // mirrored
+            case 3 -> new AffineTransform(-1, 0, 0, -1, width, height);  // upside down
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, height);       // mirrored upside down
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);             // transposed
+            case 6 -> new AffineTransform(0, 1, -1, 0, height, 0);       // turned 90° clockwise
+            case 7 -> new AffineTransform(0, -1, -1, 0, height, width);  // transversed
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, width);        // turned 90° anticlockwise
+            default -> null;
+        };
+        if (transform == null) {
+            return image;
+        }
+        boolean swapped = orientation >= 5;
+        BufferedImage turned = new BufferedImage(swapped ? height : width, swapped ? width : height,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = turned.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return turned;
+    }
+
+    private static int orientation(byte[] image, int tiff, int end) {
+        if (tiff + 8 > end) {
+            return NORMAL;
+        }
+        boolean bigEndian = image[tiff] == 'M';
+        long offset = u32(image, tiff + 4, bigEndian);
+        if (offset > end - tiff - 2) {
+            return NORMAL;
+        }
+        int directory = tiff + (int) offset;
+        int entries = u16(image, directory, bigEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = directory + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (u16(image, entry, bigEndian) == ORIENTATION_TAG) {
+                int value = u16(image, entry + 8, bigEndian);
+                return value >= 1 && value <= 8 ? value : NORMAL;
+            }
+        }
+        return NORMAL;
+    }
+
+    private static boolean startsWith(byte[] image, int offset, int end, byte[] prefix) {
+        if (offset + prefix.length > end) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (image[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int u16(byte[] bytes, int offset, boolean bigEndian) {
+        int first = bytes[offset] & 0xFF;
+        int second = bytes[offset + 1] & 0xFF;
+        return bigEndian ? first << 8 | second : second << 8 | first;
+    }
+
+    private static long u32(byte[] bytes, int offset, boolean bigEndian) {
+        long high = u16(bytes, offset, bigEndian);
+        long low = u16(bytes, offset + 2, bigEndian);
+        return bigEndian ? high << 16 | low : low << 16 | high;
+    }
+}
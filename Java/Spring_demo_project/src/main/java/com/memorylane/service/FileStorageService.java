@@ -1,306 +1,983 @@
 package com.memorylane.service;
 
+import com.memorylane.Configguration.StorageProperties;
 import com.memorylane.model.Comment;
 import com.memorylane.model.Like;
+import com.memorylane.model.Message;
 import com.memorylane.model.User;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * JSON file backed {@link StorageService}, the {@code json-file} backend.
+ *
+ * Each dataset is loaded once at startup into in-memory collections and every read is
+ * served from memory. Mutations update memory first and then hand a {@link JournalEntry}
+ * to a single-writer {@link WritePipeline}, which persists each batch by rewriting the
+ * touched data files once, or, in journal mode, by appending the batch to each dataset's
+ * {@link StorageJournal} which a background compactor folds into snapshots. Data files and
+ * snapshots are JSON by default; {@code memorylane.storage.format=smile} and
+ * {@code memorylane.storage.compress} select a smaller encoding ({@link RecordFiles}).
+ *
+ * If a batch cannot be written the store turns read-only: memory already holds changes the
+ * files do not, so further mutations are refused and nothing more is written or compacted
+ * until a restart reloads the last state that reached disk.
+ */
 @Service
-public class FileStorageService {
-    
-    private static final String COMMENTS_FILE = "data/comments.json";
-    private static final String LIKES_FILE = "data/likes.json";
-    private static final String USERS_FILE = "data/users.json";
-    private final ObjectMapper objectMapper = new ObjectMapper()
-            .registerModule(new JavaTimeModule())
-            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-    private final AtomicLong commentIdCounter = new AtomicLong(1);
-    private final AtomicLong likeIdCounter = new AtomicLong(1);
-    private final AtomicLong userIdCounter = new AtomicLong(1);
-    
-    public FileStorageService() {
+@ConditionalOnProperty(name = StorageService.BACKEND_PROPERTY, havingValue = "json-file", matchIfMissing = true)
+public class FileStorageService implements StorageService {
+
+    private static final String COMMENTS_FILE = "comments";
+    private static final String LIKES_FILE = "likes";
+    private static final String USERS_FILE = "users";
+    private static final String MESSAGES_FILE = "messages";
+    private static final String JOURNAL_DIR = "journal";
+    private static final String SEQUENCES_FILE = "sequences.json";
+
+    private enum Dataset { COMMENTS, LIKES, USERS, MESSAGES }
+
+    private record PendingWrite(Dataset dataset, JournalEntry entry) {}
+
+    private final ObjectMapper objectMapper = StorageJson.MAPPER;
+    private final RecordFiles recordFiles;
+    private final IdSequences.Sequence commentIds;
+    private final IdSequences.Sequence likeIds;
+    private final IdSequences.Sequence userIds;
+    private final IdSequences.Sequence messageIds;
+
+    private final StorageProperties.Journal journalSettings;
+    private final StorageProperties.Write.Durability durability;
+    private final long ackTimeoutNanos;
+    private final Path commentsFile;
+    private final Path likesFile;
+    private final Path usersFile;
+    private final Path messagesFile;
+
+    // In-memory datasets. Comments are kept per photo in insertion order and indexed by id;
+    // likes live in a lock-free engine, the other datasets are each guarded by their own lock
+    private final Map<String, Map<Long, Comment>> commentsByPhoto = new LinkedHashMap<>();
+    private final Map<Long, Comment> commentsById = new HashMap<>();
+    private final LikeEngine likeEngine = new LikeEngine();
+    private final Map<Long, User> usersById = new LinkedHashMap<>();
+    private final Map<String, User> usersByUsername = new HashMap<>();
+    private final Map<String, User> usersByEmail = new HashMap<>();
+    private final List<Message> messages = new ArrayList<>();
+    private final ReadWriteLock commentsLock = new ReentrantReadWriteLock();
+    private final ReadWriteLock usersLock = new ReentrantReadWriteLock();
+    private final ReadWriteLock messagesLock = new ReentrantReadWriteLock();
+
+    // Loaded records whose id was already taken; they get a fresh id once loading is done
+    private final List<Comment> duplicateComments = new ArrayList<>();
+    private final List<User> duplicateUsers = new ArrayList<>();
+
+    // Journal mode only; null when every mutation rewrites the data file
+    private final StorageJournal commentsJournal;
+    private final StorageJournal likesJournal;
+    private final StorageJournal usersJournal;
+    private final StorageJournal messagesJournal;
+    private final ScheduledExecutorService compactor;
+
+    private final WritePipeline<PendingWrite> pipeline;
+
+    // First write failure; once set the store is read-only
+    private volatile IOException writeFailure;
+
+    // Like changes are submitted from inside the engine; this hands the write back to the caller
+    private final ThreadLocal<CompletableFuture<Void>> lastLikeWrite = new ThreadLocal<>();
+
+    public FileStorageService(StorageProperties properties) {
+        Path dataDir = Paths.get(properties.getDataDir());
+        this.journalSettings = properties.getJournal();
+        this.durability = properties.getWrite().getDurability();
+        this.ackTimeoutNanos = properties.getWrite().getAckTimeout().toNanos();
+        this.recordFiles = new RecordFiles(properties.getFormat(), properties.isCompress());
+
         // Create data directory if it doesn't exist
         try {
-            Files.createDirectories(Paths.get("data"));
+            Files.createDirectories(dataDir);
         } catch (IOException e) {
             System.err.println("Error creating data directory: " + e.getMessage());
         }
-        
+
+        // Files written under another format setting are converted once, before anything reads them
+        try {
+            this.commentsFile = recordFiles.migrate(dataDir, COMMENTS_FILE, Comment.class);
+            this.likesFile = recordFiles.migrate(dataDir, LIKES_FILE, Like.class);
+            this.usersFile = recordFiles.migrate(dataDir, USERS_FILE, User.class);
+            this.messagesFile = recordFiles.migrate(dataDir, MESSAGES_FILE, Message.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to convert data files to " + properties.getFormat(), e);
+        }
+
         // Initialize files if they don't exist
         initializeFiles();
+
+        IdSequences sequences = new IdSequences(dataDir.resolve(SEQUENCES_FILE), properties.getIdBlockSize());
+        this.commentIds = sequences.sequence("comments");
+        this.likeIds = sequences.sequence("likes");
+        this.userIds = sequences.sequence("users");
+        this.messageIds = sequences.sequence("messages");
+
+        // Load every dataset once; reads are served from memory afterwards
+        Path journalDir = dataDir.resolve(JOURNAL_DIR);
+        this.commentsJournal = load(journalDir.resolve("comments"), commentsFile, this::allComments,
+                Comment.class, this::loadComment, this::applyCommentEntry,
+                this::renumberDuplicateComments);
+        this.likesJournal = load(journalDir.resolve("likes"), likesFile, likeEngine::all,
+                Like.class, this::loadLike, this::applyLikeEntry, () -> false);
+        this.usersJournal = load(journalDir.resolve("users"), usersFile, this::allUsers,
+                User.class, this::loadUser, this::applyUserEntry,
+                this::renumberDuplicateUsers);
+        this.messagesJournal = load(journalDir.resolve("messages"), messagesFile, this::allMessages,
+                Message.class, this::loadMessage, this::applyMessageEntry, () -> false);
+
+        StorageProperties.Write writeSettings = properties.getWrite();
+        pipeline = new WritePipeline<>("storage-writer", this::writeBatch,
+                writeSettings.getMaxBatchSize(), writeSettings.getMaxWait().toNanos());
+
+        likeEngine.setListener(new LikeEngine.Listener() {
+            @Override
+            public void liked(Like like) {
+                submitLike(JournalEntry.add(objectMapper.valueToTree(like)));
+            }
+
+            @Override
+            public void unliked(String photoName, String userName) {
+                submitLike(JournalEntry.deleteLike(photoName, userName));
+            }
+
+            @Override
+            public void photoCleared(String photoName) {
+                submitLike(JournalEntry.deleteByPhoto(photoName));
+            }
+
+            @Override
+            public void photosCleared(List<String> photoNames) {
+                submitLike(JournalEntry.deleteByPhotos(photoNames));
+            }
+        });
+
+        if (journalSettings.isEnabled()) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "storage-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Not at once: a journal left by the last run was replayed on load, and folding it
+            // can wait like any other. Startup stays quick, and a new store is left alone
+            long interval = journalSettings.getCompactionInterval().toMillis();
+            compactor.scheduleWithFixedDelay(this::compact, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            compactor = null;
+            try {
+                FileSystemUtils.deleteRecursively(journalDir);
+            } catch (IOException e) {
+                System.err.println("Error removing folded journal: " + e.getMessage());
+            }
+        }
     }
-    
+
     private void initializeFiles() {
         try {
-            if (!Files.exists(Paths.get(COMMENTS_FILE))) {
-                Files.write(Paths.get(COMMENTS_FILE), "[]".getBytes());
+            for (Path file : List.of(commentsFile, likesFile, usersFile, messagesFile)) {
+                if (!Files.exists(file)) {
+                    recordFiles.write(file, List.of());
+                }
             }
-            if (!Files.exists(Paths.get(LIKES_FILE))) {
-                Files.write(Paths.get(LIKES_FILE), "[]".getBytes());
+        } catch (IOException e) {
+            System.err.println("Error initializing files: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads one dataset: the newest journal snapshot (or the data file when there is none)
+     * plus the journal tail. Records are streamed into memory one at a time. A journal left behind by an earlier run is recovered even when
+     * journal mode has since been switched off; it is then folded back into the data file.
+     * If {@code repair} changes any loaded record the dataset is rewritten before use.
+     */
+    private <T> StorageJournal load(Path journalDir, Path file, Supplier<List<?>> records, Class<T> type,
+                                    Consumer<T> insert, Consumer<JournalEntry> apply, BooleanSupplier repair) {
+        try {
+            if (!journalSettings.isEnabled() && !Files.isDirectory(journalDir)) {
+                readFile(file, type, insert);
+                if (repair.getAsBoolean()) {
+                    writeFile(file, records.get());
+                }
+                return null;
             }
-            if (!Files.exists(Paths.get(USERS_FILE))) {
-                Files.write(Paths.get(USERS_FILE), "[]".getBytes());
+
+            StorageJournal journal = new StorageJournal(journalDir, recordFiles,
+                    journalSettings.getSegmentSize(), journalSettings.isFsync());
+            long snapshot = journal.latestSnapshotIndex();
+            readFile(snapshot > 0 ? journal.snapshotPath(snapshot) : file, type, insert);
+            journal.replay(snapshot, apply);
+            boolean repaired = repair.getAsBoolean();
+
+            if (!journalSettings.isEnabled()) {
+                journal.close();
+                writeFile(file, records.get());
+                FileSystemUtils.deleteRecursively(journalDir);
+                return null;
             }
+            if (repaired) {
+                // Nothing is appended yet, so sealing every segment and snapshotting is safe
+                long sealed = journal.roll();
+                if (sealed > 0) {
+                    journal.writeSnapshot(sealed, records.get());
+                    journal.deleteThrough(sealed);
+                } else {
+                    writeFile(file, records.get());
+                }
+            }
+            return journal;
         } catch (IOException e) {
-            System.err.println("Error initializing files: " + e.getMessage());
+            throw new IllegalStateException("Unable to load " + file + " from its journal", e);
+        }
+    }
+
+    private <T> void readFile(Path file, Class<T> type, Consumer<T> insert) {
+        try {
+            recordFiles.read(file, type, insert);
+        } catch (IOException e) {
+            System.err.println("Error reading " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void writeFile(Path file, List<?> records) throws IOException {
+        recordFiles.write(file, records);
+    }
+
+    // Callers hold the dataset's lock so entries are queued in the order they were applied
+    private CompletableFuture<Void> submit(Dataset dataset, JournalEntry entry) {
+        return pipeline.submit(new PendingWrite(dataset, entry));
+    }
+
+    private void submitLike(JournalEntry entry) {
+        lastLikeWrite.set(submit(Dataset.LIKES, entry));
+    }
+
+    private CompletableFuture<Void> takeLikeWrite() {
+        CompletableFuture<Void> written = lastLikeWrite.get();
+        lastLikeWrite.remove();
+        return written != null ? written : CompletableFuture.completedFuture(null);
+    }
+
+    // Called after releasing the dataset's lock so other writers can join the same batch
+    private void awaitWrite(CompletableFuture<Void> written) throws IOException {
+        if (durability == StorageProperties.Write.Durability.ENQUEUE) {
+            return;
+        }
+        try {
+            written.get(ackTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for write", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out waiting for write", e);
+        }
+    }
+
+    // Called before a mutation touches memory
+    private void checkWritable() {
+        IOException failure = writeFailure;
+        if (failure != null) {
+            throw new IllegalStateException("Storage is read-only after a failed write: " + failure.getMessage(), failure);
+        }
+    }
+
+    // Runs on the pipeline's writer thread: one append or one file rewrite per dataset per batch
+    private void writeBatch(List<PendingWrite> batch) throws IOException {
+        // Writing past a lost batch would leave a journal with a gap in it
+        if (writeFailure != null) {
+            throw new IOException("Storage is read-only after a failed write", writeFailure);
+        }
+        Map<Dataset, List<JournalEntry>> entries = new EnumMap<>(Dataset.class);
+        for (PendingWrite write : batch) {
+            entries.computeIfAbsent(write.dataset(), dataset -> new ArrayList<>()).add(write.entry());
+        }
+        try {
+            for (Map.Entry<Dataset, List<JournalEntry>> dataset : entries.entrySet()) {
+                switch (dataset.getKey()) {
+                    case COMMENTS -> writeBatch(commentsJournal, dataset.getValue(), commentsFile, commentsLock, this::allComments);
+                    case LIKES -> writeBatch(likesJournal, dataset.getValue(), likesFile, null, likeEngine::all);
+                    case USERS -> writeBatch(usersJournal, dataset.getValue(), usersFile, usersLock, this::allUsers);
+                    case MESSAGES -> writeBatch(messagesJournal, dataset.getValue(), messagesFile, messagesLock, this::allMessages);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error persisting batch, storage is now read-only: " + e.getMessage());
+            writeFailure = e;
+            throw e;
+        }
+    }
+
+    private void writeBatch(StorageJournal journal, List<JournalEntry> entries, Path file, ReadWriteLock lock,
+                            Supplier<List<?>> records) throws IOException {
+        if (journal != null) {
+            journal.appendAll(entries);
+        } else {
+            writeFile(file, copy(lock, records));
+        }
+    }
+
+    // Likes have no lock; the engine's maps tolerate concurrent iteration
+    private List<?> copy(ReadWriteLock lock, Supplier<List<?>> records) {
+        if (lock == null) {
+            return new ArrayList<>(records.get());
+        }
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(records.get());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void compact() {
+        // A snapshot of memory would persist changes whose write failed
+        if (writeFailure != null) {
+            return;
+        }
+        compact(commentsJournal, commentsLock, this::allComments);
+        compact(likesJournal, null, likeEngine::all);
+        compact(usersJournal, usersLock, this::allUsers);
+        compact(messagesJournal, messagesLock, this::allMessages);
+    }
+
+    private void compact(StorageJournal journal, ReadWriteLock lock, Supplier<List<?>> records) {
+        try {
+            if (!journal.hasSegments()) {
+                return;
+            }
+
+            // Holding the read lock keeps new mutations out; waiting for the pipeline makes
+            // sure every entry already applied in memory is in a segment before the roll.
+            // Likes have no lock, but their replay is idempotent per (photo, user)
+            long sealed;
+            List<?> snapshot;
+            if (lock != null) {
+                lock.readLock().lock();
+            }
+            try {
+                pipeline.sync().get();
+                sealed = journal.roll();
+                snapshot = new ArrayList<>(records.get());
+            } finally {
+                if (lock != null) {
+                    lock.readLock().unlock();
+                }
+            }
+
+            journal.writeSnapshot(sealed, snapshot);
+            journal.deleteThrough(sealed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | ExecutionException e) {
+            System.err.println("Error compacting journal: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            if (compactor != null) {
+                compactor.shutdown();
+                compactor.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            pipeline.close();
+            if (journalSettings.isEnabled()) {
+                commentsJournal.close();
+                likesJournal.close();
+                usersJournal.close();
+                messagesJournal.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Error closing journal: " + e.getMessage());
         }
     }
-    
+
     // Comment operations
+    @Override
     public List<Comment> getAllComments() {
+        commentsLock.readLock().lock();
         try {
-            String content = Files.readString(Paths.get(COMMENTS_FILE));
-            return objectMapper.readValue(content, new TypeReference<List<Comment>>() {});
-        } catch (IOException e) {
-            System.err.println("Error reading comments: " + e.getMessage());
-            return new ArrayList<>();
+            return allComments();
+        } finally {
+            commentsLock.readLock().unlock();
         }
     }
-    
+
+    @Override
     public List<Comment> getCommentsByPhotoName(String photoName) {
-        List<Comment> allComments = getAllComments();
-        return allComments.stream()
-                .filter(comment -> comment.getPhotoName().equals(photoName))
-                .toList();
+        commentsLock.readLock().lock();
+        try {
+            Map<Long, Comment> photoComments = commentsByPhoto.get(photoName);
+            return photoComments == null ? List.of() : List.copyOf(photoComments.values());
+        } finally {
+            commentsLock.readLock().unlock();
+        }
     }
-    
+
+    @Override
     public Comment saveComment(Comment comment) {
+        checkWritable();
+        CompletableFuture<Void> written;
+        commentsLock.writeLock().lock();
         try {
-            List<Comment> comments = getAllComments();
-            comment.setId(commentIdCounter.getAndIncrement());
+            comment.setId(commentIds.next());
             comment.setCreatedAt(LocalDateTime.now());
-            comments.add(comment);
-            
-            String json = objectMapper.writeValueAsString(comments);
-            Files.write(Paths.get(COMMENTS_FILE), json.getBytes());
-            
+            insertComment(comment);
+
+            written = submit(Dataset.COMMENTS, JournalEntry.add(objectMapper.valueToTree(comment)));
+        } finally {
+            commentsLock.writeLock().unlock();
+        }
+
+        try {
+            awaitWrite(written);
             return comment;
         } catch (IOException e) {
             System.err.println("Error saving comment: " + e.getMessage());
             return null;
         }
     }
-    
+
+    @Override
     public void deleteComment(Long commentId) {
+        checkWritable();
+        CompletableFuture<Void> written;
+        commentsLock.writeLock().lock();
+        try {
+            removeComment(commentId);
+
+            written = submit(Dataset.COMMENTS, JournalEntry.delete(commentId));
+        } finally {
+            commentsLock.writeLock().unlock();
+        }
+
         try {
-            List<Comment> comments = getAllComments();
-            comments.removeIf(comment -> comment.getId().equals(commentId));
-            
-            String json = objectMapper.writeValueAsString(comments);
-            Files.write(Paths.get(COMMENTS_FILE), json.getBytes());
+            awaitWrite(written);
         } catch (IOException e) {
             System.err.println("Error deleting comment: " + e.getMessage());
         }
     }
-    
+
+    @Override
     public void deleteCommentsByPhotoName(String photoName) {
+        checkWritable();
+        CompletableFuture<Void> written;
+        commentsLock.writeLock().lock();
+        try {
+            removeCommentsByPhoto(photoName);
+
+            written = submit(Dataset.COMMENTS, JournalEntry.deleteByPhoto(photoName));
+        } finally {
+            commentsLock.writeLock().unlock();
+        }
+
         try {
-            List<Comment> comments = getAllComments();
-            comments.removeIf(comment -> comment.getPhotoName().equals(photoName));
-            
-            String json = objectMapper.writeValueAsString(comments);
-            Files.write(Paths.get(COMMENTS_FILE), json.getBytes());
+            awaitWrite(written);
         } catch (IOException e) {
             System.err.println("Error deleting comments for photo: " + e.getMessage());
         }
     }
-    
+
+    private void applyCommentEntry(JournalEntry entry) {
+        switch (entry.getOp()) {
+            case JournalEntry.ADD -> loadComment(objectMapper.convertValue(entry.getRecord(), Comment.class));
+            case JournalEntry.DELETE -> removeComment(entry.getId());
+            case JournalEntry.DELETE_BY_PHOTO -> removeCommentsByPhoto(entry.getPhotoName());
+            case JournalEntry.DELETE_BY_PHOTOS -> entry.getPhotoNames().forEach(this::removeCommentsByPhoto);
+            default -> System.err.println("Skipping unknown comment journal entry: " + entry.getOp());
+        }
+    }
+
+    private void loadComment(Comment comment) {
+        if (comment.getId() == null || commentsById.containsKey(comment.getId())) {
+            duplicateComments.add(comment);
+            return;
+        }
+        commentIds.advancePast(comment.getId());
+        insertComment(comment);
+    }
+
+    private boolean renumberDuplicateComments() {
+        for (Comment comment : duplicateComments) {
+            comment.setId(commentIds.next());
+            insertComment(comment);
+        }
+        boolean renumbered = !duplicateComments.isEmpty();
+        duplicateComments.clear();
+        return renumbered;
+    }
+
+    private void insertComment(Comment comment) {
+        commentsById.put(comment.getId(), comment);
+        commentsByPhoto.computeIfAbsent(comment.getPhotoName(), photoName -> new LinkedHashMap<>())
+                .put(comment.getId(), comment);
+    }
+
+    private void removeComment(Long commentId) {
+        Comment comment = commentsById.remove(commentId);
+        if (comment == null) {
+            return;
+        }
+        Map<Long, Comment> photoComments = commentsByPhoto.get(comment.getPhotoName());
+        photoComments.remove(commentId);
+        if (photoComments.isEmpty()) {
+            commentsByPhoto.remove(comment.getPhotoName());
+        }
+    }
+
+    private void removeCommentsByPhoto(String photoName) {
+        Map<Long, Comment> photoComments = commentsByPhoto.remove(photoName);
+        if (photoComments != null) {
+            commentsById.keySet().removeAll(photoComments.keySet());
+        }
+    }
+
+    private List<Comment> allComments() {
+        List<Comment> all = new ArrayList<>(commentsById.size());
+        commentsByPhoto.values().forEach(photoComments -> all.addAll(photoComments.values()));
+        return all;
+    }
+
     // Like operations
+    @Override
     public List<Like> getAllLikes() {
-        try {
-            String content = Files.readString(Paths.get(LIKES_FILE));
-            return objectMapper.readValue(content, new TypeReference<List<Like>>() {});
-        } catch (IOException e) {
-            System.err.println("Error reading likes: " + e.getMessage());
-            return new ArrayList<>();
-        }
+        return likeEngine.all();
     }
-    
+
+    @Override
     public List<Like> getLikesByPhotoName(String photoName) {
-        List<Like> allLikes = getAllLikes();
-        return allLikes.stream()
-                .filter(like -> like.getPhotoName().equals(photoName))
-                .toList();
+        return likeEngine.likes(photoName);
     }
-    
+
+    @Override
+    public long getLikeCount(String photoName) {
+        return likeEngine.count(photoName);
+    }
+
+    @Override
     public boolean hasUserLikedPhoto(String photoName, String userName) {
-        List<Like> likes = getLikesByPhotoName(photoName);
-        return likes.stream().anyMatch(like -> like.getUserName().equals(userName));
+        return likeEngine.contains(photoName, userName);
     }
-    
+
+    @Override
+    public boolean toggleLike(String photoName, String userName) {
+        checkWritable();
+        boolean liked = likeEngine.toggle(photoName, userName, () -> {
+            Like like = new Like(photoName, userName);
+            like.setId(likeIds.next());
+            like.setCreatedAt(LocalDateTime.now());
+            return like;
+        });
+
+        try {
+            awaitWrite(takeLikeWrite());
+        } catch (IOException e) {
+            System.err.println("Error toggling like: " + e.getMessage());
+        }
+        return liked;
+    }
+
+    @Override
     public Like saveLike(Like like) {
+        checkWritable();
+        like.setId(likeIds.next());
+        like.setCreatedAt(LocalDateTime.now());
+        likeEngine.add(like);
+
         try {
-            List<Like> likes = getAllLikes();
-            like.setId(likeIdCounter.getAndIncrement());
-            like.setCreatedAt(LocalDateTime.now());
-            likes.add(like);
-            
-            String json = objectMapper.writeValueAsString(likes);
-            Files.write(Paths.get(LIKES_FILE), json.getBytes());
-            
+            awaitWrite(takeLikeWrite());
             return like;
         } catch (IOException e) {
             System.err.println("Error saving like: " + e.getMessage());
             return null;
         }
     }
-    
+
+    @Override
     public void deleteLike(String photoName, String userName) {
+        checkWritable();
+        likeEngine.remove(photoName, userName);
+
         try {
-            List<Like> likes = getAllLikes();
-            likes.removeIf(like -> like.getPhotoName().equals(photoName) && like.getUserName().equals(userName));
-            
-            String json = objectMapper.writeValueAsString(likes);
-            Files.write(Paths.get(LIKES_FILE), json.getBytes());
+            awaitWrite(takeLikeWrite());
         } catch (IOException e) {
             System.err.println("Error deleting like: " + e.getMessage());
         }
     }
-    
+
+    @Override
     public void deleteLikesByPhotoName(String photoName) {
+        checkWritable();
+        likeEngine.removePhoto(photoName);
+
         try {
-            List<Like> likes = getAllLikes();
-            likes.removeIf(like -> like.getPhotoName().equals(photoName));
-            
-            String json = objectMapper.writeValueAsString(likes);
-            Files.write(Paths.get(LIKES_FILE), json.getBytes());
+            awaitWrite(takeLikeWrite());
         } catch (IOException e) {
             System.err.println("Error deleting likes for photo: " + e.getMessage());
         }
     }
-    
+
+    // One journal entry, and so one write, per dataset however many photos there are
+    @Override
+    public void deleteByPhotoNames(Collection<String> photoNames) {
+        checkWritable();
+        CompletableFuture<Void> commentsWritten = CompletableFuture.completedFuture(null);
+        commentsLock.writeLock().lock();
+        try {
+            List<String> withComments = new ArrayList<>();
+            for (String photoName : photoNames) {
+                if (commentsByPhoto.containsKey(photoName)) {
+                    withComments.add(photoName);
+                    removeCommentsByPhoto(photoName);
+                }
+            }
+            if (!withComments.isEmpty()) {
+                commentsWritten = submit(Dataset.COMMENTS, JournalEntry.deleteByPhotos(withComments));
+            }
+        } finally {
+            commentsLock.writeLock().unlock();
+        }
+        likeEngine.removePhotos(photoNames);
+
+        try {
+            awaitWrite(commentsWritten);
+            awaitWrite(takeLikeWrite());
+        } catch (IOException e) {
+            System.err.println("Error deleting comments and likes for photos: " + e.getMessage());
+        }
+    }
+
+    private void applyLikeEntry(JournalEntry entry) {
+        switch (entry.getOp()) {
+            case JournalEntry.ADD -> loadLike(objectMapper.convertValue(entry.getRecord(), Like.class));
+            case JournalEntry.DELETE_LIKE -> likeEngine.remove(entry.getPhotoName(), entry.getUserName());
+            case JournalEntry.DELETE_BY_PHOTO -> likeEngine.removePhoto(entry.getPhotoName());
+            case JournalEntry.DELETE_BY_PHOTOS -> likeEngine.removePhotos(entry.getPhotoNames());
+            default -> System.err.println("Skipping unknown like journal entry: " + entry.getOp());
+        }
+    }
+
+    // Likes are keyed by (photo, user), so only the sequence needs to see their ids
+    private void loadLike(Like like) {
+        if (like.getId() != null) {
+            likeIds.advancePast(like.getId());
+        }
+        likeEngine.add(like);
+    }
+
     // User operations
+    @Override
     public List<User> getAllUsers() {
+        usersLock.readLock().lock();
         try {
-            String content = Files.readString(Paths.get(USERS_FILE));
-            return objectMapper.readValue(content, new TypeReference<List<User>>() {});
-        } catch (IOException e) {
-            System.err.println("Error reading users: " + e.getMessage());
-            return new ArrayList<>();
+            return allUsers().stream().map(FileStorageService::copy).toList();
+        } finally {
+            usersLock.readLock().unlock();
         }
     }
-    
+
+    @Override
     public User getUserByUsername(String username) {
-        List<User> users = getAllUsers();
-        return users.stream()
-                .filter(user -> user.getUsername().equals(username))
-                .findFirst()
-                .orElse(null);
+        usersLock.readLock().lock();
+        try {
+            return copy(usersByUsername.get(username));
+        } finally {
+            usersLock.readLock().unlock();
+        }
     }
-    
+
+    @Override
     public User getUserByEmail(String email) {
-        List<User> users = getAllUsers();
-        return users.stream()
-                .filter(user -> user.getEmail().equals(email))
-                .findFirst()
-                .orElse(null);
+        usersLock.readLock().lock();
+        try {
+            return copy(usersByEmail.get(email));
+        } finally {
+            usersLock.readLock().unlock();
+        }
     }
-    
+
+    @Override
     public User saveUser(User user) {
+        checkWritable();
+        CompletableFuture<Void> written;
+        usersLock.writeLock().lock();
         try {
-            List<User> users = getAllUsers();
-            
             // Check if username already exists
-            if (users.stream().anyMatch(u -> u.getUsername().equals(user.getUsername()))) {
+            if (usersByUsername.containsKey(user.getUsername())) {
                 throw new RuntimeException("Username already exists");
             }
-            
+
             // Check if email already exists
-            if (users.stream().anyMatch(u -> u.getEmail().equals(user.getEmail()))) {
+            if (usersByEmail.containsKey(user.getEmail())) {
                 throw new RuntimeException("Email already exists");
             }
-            
-            user.setId(userIdCounter.getAndIncrement());
+
+            user.setId(userIds.next());
             user.setCreatedAt(LocalDateTime.now());
-            users.add(user);
-            
-            String json = objectMapper.writeValueAsString(users);
-            Files.write(Paths.get(USERS_FILE), json.getBytes());
-            
+            insertUser(copy(user));
+
+            written = submit(Dataset.USERS, JournalEntry.add(objectMapper.valueToTree(user)));
+        } finally {
+            usersLock.writeLock().unlock();
+        }
+
+        try {
+            awaitWrite(written);
             return user;
         } catch (IOException e) {
             System.err.println("Error saving user: " + e.getMessage());
             return null;
         }
     }
-    
+
+    @Override
     public User authenticateUser(String username, String password) {
-        User user = getUserByUsername(username);
-        if (user != null && user.getPassword().equals(password)) {
-            // Update last login time
+        User user;
+        CompletableFuture<Void> written;
+        usersLock.writeLock().lock();
+        try {
+            User stored = usersByUsername.get(username);
+            if (stored == null || !stored.getPassword().equals(password)) {
+                return null;
+            }
+            // Logging in still works while read-only; the login time is just not recorded
+            if (writeFailure != null) {
+                return copy(stored);
+            }
+            // Update last login time on a copy; the stored user may be being serialized
+            user = copy(stored);
             user.setLastLoginAt(LocalDateTime.now());
-            updateUser(user);
-            return user;
+            replaceUser(user);
+
+            written = submit(Dataset.USERS, JournalEntry.update(objectMapper.valueToTree(user)));
+        } finally {
+            usersLock.writeLock().unlock();
         }
-        return null;
+
+        try {
+            awaitWrite(written);
+        } catch (IOException e) {
+            System.err.println("Error updating user: " + e.getMessage());
+        }
+        return copy(user);
     }
-    
+
+    @Override
     public void updateUser(User user) {
+        checkWritable();
+        CompletableFuture<Void> written;
+        usersLock.writeLock().lock();
         try {
-            List<User> users = getAllUsers();
-            for (int i = 0; i < users.size(); i++) {
-                if (users.get(i).getId().equals(user.getId())) {
-                    users.set(i, user);
-                    break;
-                }
-            }
-            
-            String json = objectMapper.writeValueAsString(users);
-            Files.write(Paths.get(USERS_FILE), json.getBytes());
+            replaceUser(copy(user));
+
+            written = submit(Dataset.USERS, JournalEntry.update(objectMapper.valueToTree(user)));
+        } finally {
+            usersLock.writeLock().unlock();
+        }
+
+        try {
+            awaitWrite(written);
         } catch (IOException e) {
             System.err.println("Error updating user: " + e.getMessage());
         }
     }
-    
+
+    @Override
     public void deleteUser(Long userId) {
+        checkWritable();
+        CompletableFuture<Void> written;
+        usersLock.writeLock().lock();
+        try {
+            removeUser(userId);
+
+            written = submit(Dataset.USERS, JournalEntry.delete(userId));
+        } finally {
+            usersLock.writeLock().unlock();
+        }
+
         try {
-            List<User> users = getAllUsers();
-            users.removeIf(user -> user.getId().equals(userId));
-            
-            String json = objectMapper.writeValueAsString(users);
-            Files.write(Paths.get(USERS_FILE), json.getBytes());
+            awaitWrite(written);
         } catch (IOException e) {
             System.err.println("Error deleting user: " + e.getMessage());
         }
     }
-    
-    // Profile picture operations
-    public String storeProfilePicture(MultipartFile file, String username) {
+
+    private void applyUserEntry(JournalEntry entry) {
+        switch (entry.getOp()) {
+            case JournalEntry.ADD -> loadUser(objectMapper.convertValue(entry.getRecord(), User.class));
+            case JournalEntry.UPDATE -> replaceUser(objectMapper.convertValue(entry.getRecord(), User.class));
+            case JournalEntry.DELETE -> removeUser(entry.getId());
+            default -> System.err.println("Skipping unknown user journal entry: " + entry.getOp());
+        }
+    }
+
+    private void loadUser(User user) {
+        if (user.getId() == null || usersById.containsKey(user.getId())) {
+            duplicateUsers.add(user);
+            return;
+        }
+        userIds.advancePast(user.getId());
+        insertUser(user);
+    }
+
+    private boolean renumberDuplicateUsers() {
+        for (User user : duplicateUsers) {
+            user.setId(userIds.next());
+            insertUser(user);
+        }
+        boolean renumbered = !duplicateUsers.isEmpty();
+        duplicateUsers.clear();
+        return renumbered;
+    }
+
+    private void insertUser(User user) {
+        usersById.put(user.getId(), user);
+        usersByUsername.putIfAbsent(user.getUsername(), user);
+        usersByEmail.putIfAbsent(user.getEmail(), user);
+    }
+
+    private void replaceUser(User user) {
+        User existing = usersById.replace(user.getId(), user);
+        if (existing != null) {
+            unindexUser(existing);
+            usersByUsername.put(user.getUsername(), user);
+            usersByEmail.put(user.getEmail(), user);
+        }
+    }
+
+    private void removeUser(Long userId) {
+        User user = usersById.remove(userId);
+        if (user != null) {
+            unindexUser(user);
+        }
+    }
+
+    // Stored users are never handed out or changed in place, so the writer can serialize them
+    // without the lock; callers get and give copies
+    private static User copy(User user) {
+        if (user == null) {
+            return null;
+        }
+        User copy = new User(user.getUsername(), user.getEmail(), user.getPassword(), user.getFullName(),
+                user.getProfilePicture());
+        copy.setId(user.getId());
+        copy.setCreatedAt(user.getCreatedAt());
+        copy.setLastLoginAt(user.getLastLoginAt());
+        return copy;
+    }
+
+    private List<User> allUsers() {
+        return new ArrayList<>(usersById.values());
+    }
+
+    private void unindexUser(User user) {
+        usersByUsername.remove(user.getUsername(), user);
+        usersByEmail.remove(user.getEmail(), user);
+    }
+
+    // Message operations
+    @Override
+    public List<Message> getAllMessages() {
+        messagesLock.readLock().lock();
         try {
-            // Create profile pictures directory if it doesn't exist
-            String uploadDir = "uploads/profile-pictures";
-            Files.createDirectories(Paths.get(uploadDir));
-            
-            // Generate unique filename
-            String originalFilename = file.getOriginalFilename();
-            String fileExtension = "";
-            if (originalFilename != null && originalFilename.contains(".")) {
-                fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
-            }
-            String fileName = username + "_profile" + fileExtension;
-            String filePath = uploadDir + "/" + fileName;
-            
-            // Save the file
-            Files.write(Paths.get(filePath), file.getBytes());
-            
-            return fileName;
+            return allMessages();
+        } finally {
+            messagesLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message getLatestMessage() {
+        messagesLock.readLock().lock();
+        try {
+            return messages.isEmpty() ? null : messages.get(messages.size() - 1);
+        } finally {
+            messagesLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message saveMessage(Message message) {
+        checkWritable();
+        CompletableFuture<Void> written;
+        messagesLock.writeLock().lock();
+        try {
+            message.setId(messageIds.next());
+            message.setTimestamp(LocalDateTime.now());
+            messages.add(message);
+
+            written = submit(Dataset.MESSAGES, JournalEntry.add(objectMapper.valueToTree(message)));
+        } finally {
+            messagesLock.writeLock().unlock();
+        }
+
+        try {
+            awaitWrite(written);
+            return message;
         } catch (IOException e) {
-            System.err.println("Error storing profile picture: " + e.getMessage());
+            System.err.println("Error saving message: " + e.getMessage());
             return null;
         }
     }
-} 
\ No newline at end of file
+
+    private void applyMessageEntry(JournalEntry entry) {
+        if (JournalEntry.ADD.equals(entry.getOp())) {
+            loadMessage(objectMapper.convertValue(entry.getRecord(), Message.class));
+        } else {
+            System.err.println("Skipping unknown message journal entry: " + entry.getOp());
+        }
+    }
+
+    private void loadMessage(Message message) {
+        if (message.getId() != null) {
+            messageIds.advancePast(message.getId());
+        }
+        messages.add(message);
+    }
+
+    private List<Message> allMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    // Profile picture operations
+    @Override
+    public String storeProfilePicture(MultipartFile file, String username) {
+        return ProfilePictures.store(file, username);
+    }
+}
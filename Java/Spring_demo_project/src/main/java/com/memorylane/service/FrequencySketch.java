@@ -0,0 +1,84 @@
+package com.memorylane.service;
+
+/**
+ * Approximate, aging access counts for TinyLFU admission: a count-min sketch of four rows
+ * of 4-bit counters packed into longs.
+ *
+ * A key's estimate is the smallest of its four counters, so collisions only ever inflate
+ * it. After {@code 10 * width} increments every counter is halved, so popularity that has
+ * passed decays instead of protecting an entry forever. Not thread safe; callers lock.
+ */
+final class FrequencySketch {
+
+    private static final int ROWS = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {0x97cb3127L, 0xc3a5c85cL, 0x9ae16a3bL, 0xbf58476dL};
+
+    // Each long holds sixteen 4-bit counters
+    private final long[][] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int width) {
+        int counters = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+        this.table = new long[ROWS][counters / 16];
+        this.mask = counters - 1;
+        this.sampleSize = 10 * counters;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < ROWS; row++) {
+            added |= incrementAt(row, index(hash, row));
+        }
+        if (added && ++additions >= sampleSize) {
+            halve();
+        }
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            int counter = index(hash, row);
+            frequency = Math.min(frequency, (int) (table[row][counter >>> 4] >>> ((counter & 15) << 2)) & 0xF);
+        }
+        return frequency;
+    }
+
+    private boolean incrementAt(int row, int counter) {
+        int shift = (counter & 15) << 2;
+        long word = table[row][counter >>> 4];
+        if (((word >>> shift) & 0xF) == MAX_COUNT) {
+            return false;
+        }
+        table[row][counter >>> 4] = word + (1L << shift);
+        return true;
+    }
+
+    private void halve() {
+        for (long[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                // Shift every nibble right by one; the mask drops the bit each borrows from its neighbour
+                row[i] = (row[i] >>> 1) & 0x7777777777777777L;
+            }
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        hash ^= hash >>> 11;
+        hash *= 0xac4c1b51;
+        return hash ^ (hash >>> 15);
+    }
+}
@@ -0,0 +1,203 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.ObjectCacheProperties;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copies of the most requested objects from the {@link ObjectCache}, held in
+ * direct buffers outside the garbage-collected heap.
+ *
+ * Every lookup counts towards a key's frequency in a {@link FrequencySketch}. A disk hit is
+ * copied in only if its key has been requested more often than every entry it would push
+ * out (TinyLFU admission), so a burst of one-off requests cannot flush the popular photos
+ * and the song that is playing. Within the budget, entries leave in least recently used order.
+ *
+ * Admitted objects are copied in one at a time by a background thread, so the request that
+ * triggered the copy is served from disk as usual and copies never pile up in direct memory.
+ */
+@Service
+public class HotObjectCache {
+
+    /** {@code content} is a read-only view of its own, positioned at the first byte. */
+    public record HotObject(ByteBuffer content, String eTag, Instant lastModified, String contentType) {}
+
+    public record Stats(long hits, long misses, long admissions, long rejections, long evictions,
+                        long entries, long bytes, long maxBytes) {}
+
+    // Sketch width per byte of budget: one counter for every 16 KB, at least 1024
+    private static final long BYTES_PER_COUNTER = 16 * 1024;
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long maxObjectBytes;
+
+    // All guarded by the map; access order makes the first entry the least recently used
+    private final LinkedHashMap<String, HotObject> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> loading = new HashSet<>();
+    private final FrequencySketch sketch;
+    private long bytes;
+    private long invalidations;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong admissions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("hot-object-load").daemon().factory());
+
+    public HotObjectCache(ObjectCacheProperties properties) {
+        ObjectCacheProperties.Memory memory = properties.getMemory();
+        this.enabled = properties.isEnabled() && memory.isEnabled();
+        this.maxBytes = memory.getMaxSize().toBytes();
+        this.maxObjectBytes = Math.min(memory.getMaxObjectSize().toBytes(), Math.min(maxBytes, Integer.MAX_VALUE));
+        this.sketch = new FrequencySketch((int) Math.min(1 << 24, Math.max(1024, maxBytes / BYTES_PER_COUNTER)));
+    }
+
+    /** The in-memory copy of an object, or {@code null}; either way the request is counted. */
+    public HotObject get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        HotObject hot;
+        synchronized (entries) {
+            sketch.increment(key);
+            hot = entries.get(key);
+        }
+        if (hot == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new HotObject(hot.content().duplicate(), hot.eTag(), hot.lastModified(), hot.contentType());
+    }
+
+    /**
+     * Copies an object served from disk into memory in the background, if it is requested
+     * often enough. The future completes once the copy is in, or has been skipped.
+     */
+    public CompletableFuture<Void> offer(String key, ObjectCache.CachedObject cached) {
+        if (!enabled || cached.length() > maxObjectBytes) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long generation;
+        synchronized (entries) {
+            if (entries.containsKey(key) || loading.contains(key)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (!admits(key, cached.length())) {
+                rejections.incrementAndGet();
+                return CompletableFuture.completedFuture(null);
+            }
+            generation = invalidations;
+            loading.add(key);
+        }
+
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    load(key, cached, generation);
+                } finally {
+                    synchronized (entries) {
+                        loading.remove(key);
+                    }
+                }
+            }, loader);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            synchronized (entries) {
+                loading.remove(key);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private void load(String key, ObjectCache.CachedObject cached, long generation) {
+        // Read straight into the direct buffer; the bytes never pass through a heap array
+        ByteBuffer content = ByteBuffer.allocateDirect((int) cached.length());
+        try (FileChannel channel = FileChannel.open(cached.file(), StandardOpenOption.READ)) {
+            while (content.hasRemaining() && channel.read(content) >= 0) {
+                // keep reading
+            }
+        } catch (IOException e) {
+            // Most likely evicted from disk in the meantime
+            System.err.println("Error loading " + key + " into memory: " + e.getMessage());
+            return;
+        }
+        if (content.hasRemaining()) {
+            return;
+        }
+        content.flip();
+
+        synchronized (entries) {
+            // The entries it displaces, or the object itself, may have changed while it was read
+            if (invalidations != generation || entries.containsKey(key) || !admits(key, cached.length())) {
+                return;
+            }
+            Iterator<HotObject> eldest = entries.values().iterator();
+            while (bytes + cached.length() > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().content().capacity();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+            entries.put(key, new HotObject(content.asReadOnlyBuffer(), cached.eTag(), cached.lastModified(), cached.contentType()));
+            bytes += cached.length();
+            admissions.incrementAndGet();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        loader.shutdownNow();
+    }
+
+    public void invalidate(String key) {
+        synchronized (entries) {
+            HotObject removed = entries.remove(key);
+            if (removed != null) {
+                bytes -= removed.content().capacity();
+            }
+            invalidations++;
+        }
+    }
+
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.get(), misses.get(), admissions.get(), rejections.get(), evictions.get(),
+                    entries.size(), bytes, maxBytes);
+        }
+    }
+
+    // Caller holds the lock. A candidate must be more popular than every entry it would displace
+    private boolean admits(String key, long length) {
+        int frequency = sketch.frequency(key);
+        long needed = bytes + length - maxBytes;
+        Iterator<Map.Entry<String, HotObject>> eldest = entries.entrySet().iterator();
+        while (needed > 0 && eldest.hasNext()) {
+            Map.Entry<String, HotObject> victim = eldest.next();
+            if (sketch.frequency(victim.getKey()) >= frequency) {
+                return false;
+            }
+            needed -= victim.getValue().content().capacity();
+        }
+        return true;
+    }
+}
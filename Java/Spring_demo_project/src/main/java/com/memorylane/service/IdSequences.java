@@ -0,0 +1,94 @@
+package com.memorylane.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable id sequences backed by one small JSON file of high-water marks.
+ *
+ * Ids are handed out from memory; before a sequence passes its reserved limit the next
+ * block of {@code blockSize} ids is recorded on disk. After a restart a sequence resumes
+ * above both the recorded mark and the largest id found in the data, so ids are never
+ * reused, not even those of records that have since been deleted.
+ */
+public class IdSequences {
+
+    private static final ObjectReader MARKS_READER =
+            StorageJson.MAPPER.readerFor(new TypeReference<TreeMap<String, Long>>() {});
+    private static final ObjectWriter MARKS_WRITER = StorageJson.writer(Map.class);
+
+    public final class Sequence {
+        private final String name;
+        private final AtomicLong next;
+        private volatile long limit;
+
+        private Sequence(String name, long next) {
+            this.name = name;
+            this.next = new AtomicLong(next);
+            this.limit = next;
+        }
+
+        public long next() {
+            long id = next.getAndIncrement();
+            if (id >= limit) {
+                reserve(this, id);
+            }
+            return id;
+        }
+
+        /** Moves the sequence past an id found in the data while loading. */
+        public void advancePast(long id) {
+            next.accumulateAndGet(id + 1, Math::max);
+        }
+    }
+
+    private final Path file;
+    private final long blockSize;
+    private final Map<String, Long> marks;
+
+    public IdSequences(Path file, long blockSize) {
+        this.file = file;
+        this.blockSize = blockSize;
+        this.marks = read();
+    }
+
+    /** Returns a sequence that continues after every id reserved by earlier runs. */
+    public synchronized Sequence sequence(String name) {
+        return new Sequence(name, marks.getOrDefault(name, 1L));
+    }
+
+    private synchronized void reserve(Sequence sequence, long id) {
+        if (id < sequence.limit) {
+            return;
+        }
+        long limit = id + blockSize;
+        marks.put(sequence.name, limit);
+        try {
+            AtomicFiles.write(file, out -> MARKS_WRITER.writeValue(out, marks));
+        } catch (IOException e) {
+            // The ids stored with records still keep the sequence ahead of them after a restart
+            System.err.println("Error reserving ids for " + sequence.name + ": " + e.getMessage());
+        }
+        sequence.limit = limit;
+    }
+
+    private Map<String, Long> read() {
+        if (!Files.exists(file)) {
+            return new TreeMap<>();
+        }
+        try {
+            return MARKS_READER.readValue(file.toFile());
+        } catch (IOException e) {
+            System.err.println("Error reading " + file + ": " + e.getMessage());
+            return new TreeMap<>();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.memorylane.service;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Copies a JPEG or PNG without its metadata, leaving the compressed pixels untouched.
+ *
+ * For uploads that re-encoding would not make smaller: they are stored as uploaded, but
+ * without EXIF (capture location, camera serial), XMP, IPTC, comments or PNG text chunks.
+ * What changes how the pixels look is kept: JFIF, ICC profiles, the Adobe color transform
+ * and, in a minimal EXIF segment of its own, the orientation.
+ */
+final class ImageMetadata {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final Set<String> PNG_METADATA = Set.of("tEXt", "zTXt", "iTXt", "eXIf", "tIME");
+    private static final byte[] EXIF = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ICC_PROFILE = "ICC_PROFILE\0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ADOBE = "Adobe".getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_SIZE = 8192;
+
+    private ImageMetadata() {}
+
+    /**
+     * Copies {@code in} to {@code out} without metadata; {@code orientation} is the EXIF
+     * orientation read from the JPEG beforehand.
+     *
+     * @throws IOException if the image is not a well-formed JPEG or PNG
+     */
+    static void strip(InputStream in, OutputStream out, boolean png, int orientation) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (png) {
+            stripPng(data, out);
+        } else {
+            stripJpeg(data, out, orientation);
+        }
+    }
+
+    private static void stripJpeg(DataInputStream in, OutputStream out, int orientation) throws IOException {
+        if (in.readUnsignedShort() != 0xFFD8) {
+            throw new IOException("Not a JPEG");
+        }
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        while (true) {
+            int marker = in.readUnsignedByte();
+            if (marker != 0xFF) {
+                throw new IOException("Corrupt JPEG");
+            }
+            do {
+                marker = in.readUnsignedByte(); // 0xFF may be repeated as fill
+            } while (marker == 0xFF);
+            if (marker == 0xDA || marker == 0xD9) {
+                // Start of scan: metadata only comes before it, the rest is copied as is
+                out.write(0xFF);
+                out.write(marker);
+                in.transferTo(out);
+                return;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                out.write(0xFF);
+                out.write(marker);
+                continue; // no length
+            }
+            int length = in.readUnsignedShort();
+            if (length < 2) {
+                throw new IOException("Corrupt JPEG");
+            }
+            byte[] segment = new byte[length - 2];
+            in.readFully(segment);
+            if (isMetadata(marker, segment)) {
+                // The EXIF segment makes way for one holding only the orientation
+                if (marker == 0xE1 && startsWith(segment, EXIF) && orientation != ExifOrientation.NORMAL) {
+                    out.write(ExifOrientation.segment(orientation));
+                    orientation = ExifOrientation.NORMAL;
+                }
+                continue;
+            }
+            out.write(0xFF);
+            out.write(marker);
+            out.write(length >> 8);
+            out.write(length);
+            out.write(segment);
+        }
+    }
+
+    // APP1 (EXIF, XMP), the other application segments and comments; not JFIF, ICC or Adobe
+    private static boolean isMetadata(int marker, byte[] segment) {
+        if (marker == 0xFE) {
+            return true;
+        }
+        if (marker < 0xE1 || marker > 0xEF) {
+            return false;
+        }
+        return !(marker == 0xE2 && startsWith(segment, ICC_PROFILE))
+                && !(marker == 0xEE && startsWith(segment, ADOBE));
+    }
+
+    private static void stripPng(DataInputStream in, OutputStream out) throws IOException {
+        byte[] signature = new byte[PNG_SIGNATURE.length];
+        in.readFully(signature);
+        if (!Arrays.equals(signature, PNG_SIGNATURE)) {
+            throw new IOException("Not a PNG");
+        }
+        out.write(signature);
+        while (true) {
+            int length = in.readInt();
+            byte[] type = new byte[4];
+            in.readFully(type);
+            if (length < 0) {
+                throw new IOException("Corrupt PNG");
+            }
+            // Data and CRC
+            long rest = length + 4L;
+            String name = new String(type, StandardCharsets.US_ASCII);
+            if (PNG_METADATA.contains(name)) {
+                in.skipNBytes(rest);
+                continue;
+            }
+            out.write(length >>> 24);
+            out.write(length >>> 16);
+            out.write(length >>> 8);
+            out.write(length);
+            out.write(type);
+            copy(in, out, rest);
+            if (name.equals("IEND")) {
+                return;
+            }
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, long count) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (count > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, count));
+            if (read < 0) {
+                throw new EOFException();
+            }
+            out.write(buffer, 0, read);
+            count -= read;
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        return bytes.length >= prefix.length && Arrays.equals(bytes, 0, prefix.length, prefix, 0, prefix.length);
+    }
+}
@@ -0,0 +1,225 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.ImageOptimizationProperties;
+import jakarta.annotation.PreDestroy;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-encodes uploaded JPEGs and PNGs before they are stored: metadata is dropped (after
+ * applying the EXIF orientation), JPEGs are recompressed and large opaque PNGs become JPEGs.
+ *
+ * The upload is decoded straight from its stream and the result is written to a temp file,
+ * so apart from the decoded pixels no copy of the photo is held in memory. Re-encoding runs
+ * on a pool sized to the CPU; uploads that find it saturated or that ImageIO cannot read
+ * are stored as uploaded. Those that would not get smaller, or whose header claims more
+ * pixels than may be decoded, are stored as uploaded but with their metadata cut out, so a
+ * photo's location never goes out with it.
+ */
+@Service
+public class ImageOptimizer {
+
+    /** A re-encoded upload in a temp file the caller deletes once it is stored. */
+    public record Optimized(Path file, String contentType, long originalSize, long size) {
+
+        public void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Error deleting " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public record Stats(long uploads, long optimized, long originalBytes, long storedBytes) {}
+
+    // An EXIF segment is at most 64 KB and comes right after the start of the image
+    private static final int EXIF_HEAD = 64 * 1024 + 4;
+
+    private final boolean enabled;
+    private final float jpegQuality;
+    private final boolean convertOpaquePng;
+    private final long pngConversionThreshold;
+    private final long maxPixels;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong uploads = new AtomicLong();
+    private final AtomicLong optimized = new AtomicLong();
+    private final AtomicLong originalBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    public ImageOptimizer(ImageOptimizationProperties properties) {
+        this.enabled = properties.isEnabled();
+        this.jpegQuality = properties.getJpegQuality();
+        this.convertOpaquePng = properties.isConvertOpaquePng();
+        this.pngConversionThreshold = properties.getPngConversionThreshold().toBytes();
+        this.maxPixels = properties.getMaxPixels();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(properties.getWorkers(), properties.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()), runnable -> {
+                    Thread thread = new Thread(runnable, "image-optimizer-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Re-encodes an upload, waiting for a free worker.
+     *
+     * @return the smaller re-encoded photo, or {@code null} to store the upload as it is
+     */
+    public Optimized optimize(String fileName, InputStreamSource upload, String contentType, long size) {
+        boolean jpeg = "image/jpeg".equals(contentType) || "image/jpg".equals(contentType);
+        boolean png = "image/png".equals(contentType);
+        if (!enabled || !(jpeg || png)) {
+            return null;
+        }
+        uploads.incrementAndGet();
+        originalBytes.addAndGet(size);
+        Optimized result = null;
+        try {
+            Future<Optimized> task = executor.submit(() -> reencode(upload, png, size));
+            result = task.get();
+        } catch (RejectedExecutionException e) {
+            System.err.println("Image optimizer busy, storing " + fileName + " as uploaded");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error optimizing " + fileName + ", storing it as uploaded: " + e.getCause().getMessage());
+        }
+
+        if (result == null) {
+            storedBytes.addAndGet(size);
+            return null;
+        }
+        optimized.incrementAndGet();
+        storedBytes.addAndGet(result.size());
+        return result;
+    }
+
+    public Stats stats() {
+        return new Stats(uploads.get(), optimized.get(), originalBytes.get(), storedBytes.get());
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Optimized reencode(InputStreamSource upload, boolean png, long size) throws IOException {
+        BufferedImage image;
+        int orientation;
+        try (BufferedInputStream in = new BufferedInputStream(upload.getInputStream(), EXIF_HEAD)) {
+            in.mark(EXIF_HEAD);
+            orientation = ExifOrientation.read(in.readNBytes(EXIF_HEAD));
+            in.reset();
+            try {
+                image = ImageVariants.read(in, maxPixels);
+            } catch (IOException e) {
+                // Too large to decode safely, or corrupt; the metadata can still go
+                System.err.println("Not re-encoding upload: " + e.getMessage());
+                return stripped(upload, png, orientation, size);
+            }
+        }
+        if (image == null) {
+            return null;
+        }
+        image = ExifOrientation.apply(image, orientation);
+
+        boolean toJpeg = !png || (convertOpaquePng && size >= pngConversionThreshold && isOpaque(image));
+        Path file = Files.createTempFile("upload-", toJpeg ? ".jpg" : ".png");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                if (toJpeg) {
+                    ImageVariants.writeJpeg(toRgb(image), jpegQuality, out);
+                } else {
+                    ImageIO.write(image, "png", out);
+                }
+            }
+            long optimizedSize = Files.size(file);
+            if (optimizedSize >= size) {
+                Files.delete(file);
+                return stripped(upload, png, orientation, size);
+            }
+            return new Optimized(file, toJpeg ? "image/jpeg" : "image/png", size, optimizedSize);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    // The upload as it is, minus its metadata; null if it had none
+    private static Optimized stripped(InputStreamSource upload, boolean png, int orientation, long size) throws IOException {
+        Path file = Files.createTempFile("upload-", png ? ".png" : ".jpg");
+        try {
+            try (InputStream in = new BufferedInputStream(upload.getInputStream());
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                ImageMetadata.strip(in, out, png, orientation);
+            }
+            long strippedSize = Files.size(file);
+            if (strippedSize >= size) {
+                Files.delete(file);
+                return null;
+            }
+            return new Optimized(file, png ? "image/png" : "image/jpeg", size, strippedSize);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    // Screenshots usually carry an alpha channel that is fully opaque
+    private static boolean isOpaque(BufferedImage image) {
+        WritableRaster alpha = image.getAlphaRaster();
+        if (alpha == null) {
+            return true;
+        }
+        int opaque = (1 << alpha.getSampleModel().getSampleSize(0)) - 1;
+        int[] row = new int[alpha.getWidth()];
+        for (int y = 0; y < alpha.getHeight(); y++) {
+            alpha.getSamples(0, y, alpha.getWidth(), 1, 0, row);
+            for (int sample : row) {
+                if (sample != opaque) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // The JPEG writer misreads alpha and palette images
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR
+                || image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+}
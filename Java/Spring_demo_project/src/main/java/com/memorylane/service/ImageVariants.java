@@ -0,0 +1,340 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.ImageVariantProperties;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downscaled copies of photos, stored in the bucket under {@code variants/<width>/<fileName>}.
+ *
+ * They are made in the background when a photo is uploaded, and on the first request for
+ * photos that predate that, or whose background job was dropped. Concurrent requests for a
+ * missing variant wait on one resize. Resizing runs on a small bounded pool because it is
+ * CPU bound and holds the decoded image in memory; a request only ever gets a future for
+ * it, and checking whether a variant already exists is an async HEAD, so no request thread
+ * waits on the bucket or the pool. Originals are decoded straight from the bucket's stream,
+ * and only after their header shows they are within the pixel limit, since a small file can
+ * decode to gigabytes.
+ */
+@Service
+public class ImageVariants {
+
+    public static final String PREFIX = "variants/";
+
+    // An EXIF segment is at most 64 KB and comes right after the start of the image
+    private static final int EXIF_HEAD = 64 * 1024 + 4;
+
+    record Variant(byte[] bytes, String contentType) {}
+
+    private final S3Client s3;
+    private final S3AsyncClient s3Async;
+    private final String bucketName;
+    private final List<Integer> widths;
+    private final float jpegQuality;
+    private final long maxPixels;
+    private final ThreadPoolExecutor executor;
+
+    // Variant key to the key that answers for it: the variant, or the original if it cannot be resized
+    private final Map<String, String> resolved = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> generating = new ConcurrentHashMap<>();
+
+    public ImageVariants(S3Client s3, S3AsyncClient s3Async, @Value("${cloud.aws.bucket}") String bucketName,
+                         ImageVariantProperties properties) {
+        this.s3 = s3;
+        this.s3Async = s3Async;
+        this.bucketName = bucketName;
+        this.widths = properties.getVariantWidths().stream().sorted().distinct().toList();
+        this.jpegQuality = properties.getJpegQuality();
+        this.maxPixels = properties.getMaxPixels();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(properties.getWorkers(), properties.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()), runnable -> {
+                    Thread thread = new Thread(runnable, "image-variants-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public static boolean isVariant(String key) {
+        return key.startsWith(PREFIX);
+    }
+
+    static String variantKey(String fileName, int width) {
+        return PREFIX + width + "/" + fileName;
+    }
+
+    /**
+     * The key to fetch for {@code fileName} shown {@code width} pixels wide, if it is known
+     * without asking the bucket: the original when no variant is wide enough, or a variant
+     * resolved before. {@code null} otherwise.
+     */
+    public String known(String fileName, String originalKey, int width) {
+        Integer variantWidth = variantWidth(width);
+        return variantWidth == null ? originalKey : resolved.get(variantKey(fileName, variantWidth));
+    }
+
+    /**
+     * The key to fetch for {@code fileName} shown {@code width} pixels wide: the smallest
+     * variant at least that wide, made first if it does not exist yet, or the original
+     * stored at {@code originalKey}. Already complete when the key is {@link #known}.
+     */
+    public CompletableFuture<String> resolve(String fileName, String originalKey, int width) {
+        String known = known(fileName, originalKey, width);
+        if (known != null) {
+            return CompletableFuture.completedFuture(known);
+        }
+        int variantWidth = variantWidth(width);
+        String key = variantKey(fileName, variantWidth);
+        CompletableFuture<String> generation = generating.computeIfAbsent(key, k -> exists(k)
+                .thenCompose(found -> found ? CompletableFuture.completedFuture(k) : generate(originalKey, variantWidth, k)));
+        // Outside computeIfAbsent: the future may already be complete and run this at once
+        generation.whenComplete((result, error) -> generating.remove(key, generation));
+        return generation;
+    }
+
+    /**
+     * Queues the variants of a photo just stored at {@code originalKey}; if the queue is full
+     * they are made on first request. The photo is read back from the bucket, so the upload
+     * request never holds it in memory.
+     */
+    public void createVariants(String fileName, String originalKey) {
+        try {
+            executor.execute(() -> {
+                try {
+                    BufferedImage image = download(originalKey);
+                    if (image == null) {
+                        return;
+                    }
+                    for (int width : widths) {
+                        String key = variantKey(fileName, width);
+                        put(key, encode(scale(image, width), jpegQuality));
+                        resolved.put(key, key);
+                    }
+                } catch (Exception e) {
+                    System.err.println("Error creating variants of " + fileName + ": " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            System.err.println("Resize queue full, variants of " + fileName + " will be made on request");
+        }
+    }
+
+    /** Deletes the variants of a photo from the bucket and returns their keys. */
+    public List<String> deleteVariants(String fileName) {
+        List<String> keys = forgetVariants(fileName);
+        for (String key : keys) {
+            s3.deleteObject(builder -> builder.bucket(bucketName).key(key));
+        }
+        return keys;
+    }
+
+    /** Forgets the variants of a photo about to be deleted and returns their keys, for the caller to delete. */
+    public List<String> forgetVariants(String fileName) {
+        List<String> keys = new ArrayList<>();
+        for (int width : widths) {
+            String key = variantKey(fileName, width);
+            resolved.remove(key);
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Integer variantWidth(int width) {
+        return widths.stream().filter(w -> w >= width).findFirst().orElse(null);
+    }
+
+    // A variant from an earlier run is reused
+    private CompletableFuture<Boolean> exists(String key) {
+        return s3Async.headObject(builder -> builder.bucket(bucketName).key(key)).handle((head, error) -> {
+            if (error == null) {
+                resolved.put(key, key);
+                return true;
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof S3Exception e && e.statusCode() == 404) {
+                return false;
+            }
+            throw new CompletionException(cause);
+        });
+    }
+
+    private CompletableFuture<String> generate(String originalKey, int width, String key) {
+        try {
+            return CompletableFuture.supplyAsync(() -> resize(originalKey, width, key), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new IOException("Too many photos waiting to be resized", e));
+        }
+    }
+
+    // Runs on the pool
+    private String resize(String originalKey, int width, String key) {
+        try {
+            BufferedImage image = download(originalKey);
+            if (image == null) {
+                // A format ImageIO cannot read, e.g. WebP; the original is served as is
+                resolved.put(key, originalKey);
+                return originalKey;
+            }
+            put(key, encode(scale(image, width), jpegQuality));
+            resolved.put(key, key);
+            return key;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Only the decoded pixels are held in memory, never the file as well
+    private BufferedImage download(String originalKey) throws IOException {
+        try (ResponseInputStream<GetObjectResponse> original = s3.getObject(builder -> builder.bucket(bucketName).key(originalKey))) {
+            BufferedImage image = null;
+            try {
+                image = decode(original, maxPixels);
+                return image;
+            } finally {
+                if (image == null) {
+                    original.abort(); // rather than read the rest of a file that will not be used
+                }
+            }
+        }
+    }
+
+    private void put(String key, Variant variant) {
+        s3.putObject(builder -> builder.bucket(bucketName).key(key).contentType(variant.contentType()),
+                RequestBody.fromBytes(variant.bytes()));
+    }
+
+    /**
+     * The upright image, or {@code null} if ImageIO has no reader for its format.
+     *
+     * @throws IOException if it has more than {@code maxPixels} pixels, or cannot be decoded
+     */
+    static BufferedImage decode(InputStream original, long maxPixels) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(original, EXIF_HEAD);
+        in.mark(EXIF_HEAD);
+        byte[] head = in.readNBytes(EXIF_HEAD);
+        in.reset();
+        BufferedImage image = read(in, maxPixels);
+        return image != null ? ExifOrientation.apply(image, ExifOrientation.read(head)) : null;
+    }
+
+    /**
+     * Same, as stored: without applying the EXIF orientation.
+     *
+     * @throws IOException if it has more than {@code maxPixels} pixels, or cannot be decoded
+     */
+    static BufferedImage read(InputStream in, long maxPixels) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : Collections.emptyIterator();
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // From the header alone, before any pixel memory is allocated
+                long width = reader.getWidth(0);
+                long height = reader.getHeight(0);
+                if (width * height > maxPixels) {
+                    throw new IOException("Image of " + width + "x" + height + " pixels is over the limit of " + maxPixels);
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales to {@code width}, keeping the aspect ratio; narrower images keep their size.
+     * Bilinear steps of at most half the size each, since a single bilinear step skips
+     * most source pixels and aliases badly.
+     */
+    static BufferedImage scale(BufferedImage image, int width) {
+        int targetWidth = Math.min(width, image.getWidth());
+        int targetHeight = Math.max(1, (int) Math.round((double) image.getHeight() * targetWidth / image.getWidth()));
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = image;
+        do {
+            int stepWidth = Math.max(targetWidth, current.getWidth() / 2);
+            int stepHeight = Math.max(targetHeight, current.getHeight() / 2);
+            BufferedImage step = new BufferedImage(stepWidth, stepHeight, type);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, stepWidth, stepHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (current.getWidth() != targetWidth || current.getHeight() != targetHeight);
+        return current;
+    }
+
+    /** PNG when the image has transparency, JPEG otherwise. */
+    static Variant encode(BufferedImage image, float jpegQuality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (image.getColorModel().hasAlpha()) {
+            ImageIO.write(image, "png", out);
+            return new Variant(out.toByteArray(), "image/png");
+        }
+        writeJpeg(image, jpegQuality, out);
+        return new Variant(out.toByteArray(), "image/jpeg");
+    }
+
+    /** Baseline JPEG at the given quality, without any metadata segments. */
+    static void writeJpeg(BufferedImage image, float quality, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
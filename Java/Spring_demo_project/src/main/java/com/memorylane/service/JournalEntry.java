@@ -0,0 +1,87 @@
+package com.memorylane.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * One mutation recorded in a {@link StorageJournal} segment.
+ *
+ * Entries describe the logical operation rather than the resulting file, so replaying
+ * a segment on top of a snapshot that already contains it leaves the dataset unchanged.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JournalEntry {
+
+    public static final String ADD = "add";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+    public static final String DELETE_BY_PHOTO = "deleteByPhoto";
+    public static final String DELETE_BY_PHOTOS = "deleteByPhotos";
+    public static final String DELETE_LIKE = "deleteLike";
+
+    private String op;
+    private JsonNode record;
+    private Long id;
+    private String photoName;
+    private List<String> photoNames;
+    private String userName;
+
+    public JournalEntry() {}
+
+    private JournalEntry(String op) {
+        this.op = op;
+    }
+
+    public static JournalEntry add(JsonNode record) {
+        JournalEntry entry = new JournalEntry(ADD);
+        entry.record = record;
+        return entry;
+    }
+
+    public static JournalEntry update(JsonNode record) {
+        JournalEntry entry = new JournalEntry(UPDATE);
+        entry.record = record;
+        return entry;
+    }
+
+    public static JournalEntry delete(Long id) {
+        JournalEntry entry = new JournalEntry(DELETE);
+        entry.id = id;
+        return entry;
+    }
+
+    public static JournalEntry deleteByPhoto(String photoName) {
+        JournalEntry entry = new JournalEntry(DELETE_BY_PHOTO);
+        entry.photoName = photoName;
+        return entry;
+    }
+
+    public static JournalEntry deleteByPhotos(Collection<String> photoNames) {
+        JournalEntry entry = new JournalEntry(DELETE_BY_PHOTOS);
+        entry.photoNames = List.copyOf(photoNames);
+        return entry;
+    }
+
+    public static JournalEntry deleteLike(String photoName, String userName) {
+        JournalEntry entry = new JournalEntry(DELETE_LIKE);
+        entry.photoName = photoName;
+        entry.userName = userName;
+        return entry;
+    }
+
+    public String getOp() { return op; }
+    public void setOp(String op) { this.op = op; }
+    public JsonNode getRecord() { return record; }
+    public void setRecord(JsonNode record) { this.record = record; }
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getPhotoName() { return photoName; }
+    public void setPhotoName(String photoName) { this.photoName = photoName; }
+    public List<String> getPhotoNames() { return photoNames; }
+    public void setPhotoNames(List<String> photoNames) { this.photoNames = photoNames; }
+    public String getUserName() { return userName; }
+    public void setUserName(String userName) { this.userName = userName; }
+}
@@ -0,0 +1,277 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.StorageProperties;
+import com.memorylane.Repo.CommentRepository;
+import com.memorylane.Repo.LikeRepository;
+import com.memorylane.Repo.MessageRepository;
+import com.memorylane.Repo.UserRepository;
+import com.memorylane.model.Comment;
+import com.memorylane.model.Like;
+import com.memorylane.model.Message;
+import com.memorylane.model.User;
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Relational {@link StorageService}, the {@code jpa} backend.
+ *
+ * Lets several application nodes share one metadata database. Connection pool and JDBC
+ * batching settings live in {@code application-jpa.properties}; the likes table carries a
+ * unique (photo, user) index so concurrent toggles cannot create duplicate likes.
+ */
+@Service
+@ConditionalOnProperty(name = StorageService.BACKEND_PROPERTY, havingValue = "jpa")
+public class JpaStorageService implements StorageService {
+
+    private static final int MAX_TOGGLE_ATTEMPTS = 10;
+
+    private final CommentRepository commentRepository;
+    private final LikeRepository likeRepository;
+    private final UserRepository userRepository;
+    private final MessageRepository messageRepository;
+    private final TransactionTemplate transactions;
+    private final Path dataDir;
+
+    public JpaStorageService(CommentRepository commentRepository, LikeRepository likeRepository,
+                             UserRepository userRepository, MessageRepository messageRepository,
+                             PlatformTransactionManager transactionManager, StorageProperties properties) {
+        this.commentRepository = commentRepository;
+        this.likeRepository = likeRepository;
+        this.userRepository = userRepository;
+        this.messageRepository = messageRepository;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.dataDir = Paths.get(properties.getDataDir());
+    }
+
+    /**
+     * Seeds empty tables from the JSON files of the {@code json-file} backend, so switching
+     * backends keeps existing data. Ids are reassigned; the files are left untouched.
+     */
+    @PostConstruct
+    void importJsonFiles() {
+        if (commentRepository.count() > 0 || likeRepository.count() > 0 || userRepository.count() > 0
+                || messageRepository.count() > 0) {
+            return;
+        }
+        JsonDataFiles files = new JsonDataFiles(dataDir);
+        commentRepository.saveAll(withoutIds(files.comments(), Comment::setId));
+        likeRepository.saveAll(withoutIds(files.likes(), Like::setId));
+        userRepository.saveAll(withoutIds(files.users(), User::setId));
+        messageRepository.saveAll(withoutIds(files.messages(), Message::setId));
+    }
+
+    private static <T> List<T> withoutIds(List<T> records, BiConsumer<T, Long> setId) {
+        records.forEach(record -> setId.accept(record, null));
+        return records;
+    }
+
+    // Comment operations
+    @Override
+    public List<Comment> getAllComments() {
+        return commentRepository.findAll();
+    }
+
+    @Override
+    public List<Comment> getCommentsByPhotoName(String photoName) {
+        return commentRepository.findByPhotoNameOrderByCreatedAtAscIdAsc(photoName);
+    }
+
+    @Override
+    public Comment saveComment(Comment comment) {
+        comment.setId(null);
+        comment.setCreatedAt(LocalDateTime.now());
+        return commentRepository.save(comment);
+    }
+
+    @Override
+    public void deleteComment(Long commentId) {
+        commentRepository.deleteById(commentId);
+    }
+
+    @Override
+    @Transactional
+    public void deleteCommentsByPhotoName(String photoName) {
+        commentRepository.deleteByPhotoName(photoName);
+    }
+
+    // Like operations
+    @Override
+    public List<Like> getAllLikes() {
+        return likeRepository.findAll();
+    }
+
+    @Override
+    public List<Like> getLikesByPhotoName(String photoName) {
+        return likeRepository.findByPhotoName(photoName);
+    }
+
+    @Override
+    public long getLikeCount(String photoName) {
+        return likeRepository.countByPhotoName(photoName);
+    }
+
+    @Override
+    public boolean hasUserLikedPhoto(String photoName, String userName) {
+        return likeRepository.existsByPhotoNameAndUserName(photoName, userName);
+    }
+
+    @Override
+    public boolean toggleLike(String photoName, String userName) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactions.execute(status -> toggle(photoName, userName));
+            } catch (DataIntegrityViolationException | TransientDataAccessException e) {
+                // A concurrent toggle inserted the same like first, or held the row or index lock
+                // past the lock timeout or into a deadlock (CannotAcquireLockException and the other
+                // ConcurrencyFailureExceptions are transient); retrying either removes the like or
+                // waits its turn. The random pause keeps toggles racing on one like from colliding
+                // again in lockstep
+                if (attempt == MAX_TOGGLE_ATTEMPTS) {
+                    throw e;
+                }
+                LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(attempt * 1_000_000L));
+            }
+        }
+    }
+
+    private boolean toggle(String photoName, String userName) {
+        if (likeRepository.deleteByPhotoNameAndUserName(photoName, userName) > 0) {
+            return false;
+        }
+        likeRepository.saveAndFlush(new Like(photoName, userName));
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public Like saveLike(Like like) {
+        return likeRepository.findByPhotoNameAndUserName(like.getPhotoName(), like.getUserName())
+                .orElseGet(() -> {
+                    like.setId(null);
+                    like.setCreatedAt(LocalDateTime.now());
+                    return likeRepository.save(like);
+                });
+    }
+
+    @Override
+    @Transactional
+    public void deleteLike(String photoName, String userName) {
+        likeRepository.deleteByPhotoNameAndUserName(photoName, userName);
+    }
+
+    @Override
+    @Transactional
+    public void deleteLikesByPhotoName(String photoName) {
+        likeRepository.deleteByPhotoName(photoName);
+    }
+
+    @Override
+    @Transactional
+    public void deleteByPhotoNames(Collection<String> photoNames) {
+        if (photoNames.isEmpty()) {
+            return;
+        }
+        commentRepository.deleteByPhotoNameIn(photoNames);
+        likeRepository.deleteByPhotoNameIn(photoNames);
+    }
+
+    // User operations
+    @Override
+    public List<User> getAllUsers() {
+        return userRepository.findAll();
+    }
+
+    @Override
+    public User getUserByUsername(String username) {
+        return userRepository.findByUsername(username).orElse(null);
+    }
+
+    @Override
+    public User getUserByEmail(String email) {
+        return userRepository.findByEmail(email).orElse(null);
+    }
+
+    @Override
+    public User saveUser(User user) {
+        // Check if username already exists
+        if (userRepository.existsByUsername(user.getUsername())) {
+            throw new RuntimeException("Username already exists");
+        }
+
+        // Check if email already exists
+        if (userRepository.existsByEmail(user.getEmail())) {
+            throw new RuntimeException("Email already exists");
+        }
+
+        user.setId(null);
+        user.setCreatedAt(LocalDateTime.now());
+        try {
+            return userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            // Lost a race with a concurrent signup for the same username or email
+            throw new RuntimeException("Username or email already exists");
+        }
+    }
+
+    @Override
+    public User authenticateUser(String username, String password) {
+        User user = getUserByUsername(username);
+        if (user != null && user.getPassword().equals(password)) {
+            // Update last login time
+            user.setLastLoginAt(LocalDateTime.now());
+            updateUser(user);
+            return user;
+        }
+        return null;
+    }
+
+    @Override
+    public void updateUser(User user) {
+        userRepository.save(user);
+    }
+
+    @Override
+    public void deleteUser(Long userId) {
+        userRepository.deleteById(userId);
+    }
+
+    // Message operations
+    @Override
+    public List<Message> getAllMessages() {
+        return messageRepository.findAllByOrderByIdAsc();
+    }
+
+    @Override
+    public Message getLatestMessage() {
+        return messageRepository.findTopByOrderByIdDesc().orElse(null);
+    }
+
+    @Override
+    public Message saveMessage(Message message) {
+        message.setId(null);
+        message.setTimestamp(LocalDateTime.now());
+        return messageRepository.save(message);
+    }
+
+    // Profile picture operations
+    @Override
+    public String storeProfilePicture(MultipartFile file, String username) {
+        return ProfilePictures.store(file, username);
+    }
+}
@@ -0,0 +1,75 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.StorageProperties;
+import com.memorylane.model.Comment;
+import com.memorylane.model.Like;
+import com.memorylane.model.Message;
+import com.memorylane.model.User;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read-only view of the {@code json-file} backend's data directory, used to seed the other
+ * backends when they start empty. Records get their ids reassigned by the target backend,
+ * so duplicate ids in the files do not matter; duplicate likes and users are dropped. Files
+ * are read in whichever encoding they were written ({@link RecordFiles}).
+ */
+final class JsonDataFiles {
+
+    private final Path dataDir;
+    private final RecordFiles files = new RecordFiles(StorageProperties.Format.JSON, false);
+
+    JsonDataFiles(Path dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    List<Comment> comments() {
+        return read("comments", Comment.class);
+    }
+
+    List<Like> likes() {
+        Set<String> keys = new HashSet<>();
+        List<Like> likes = new ArrayList<>();
+        for (Like like : read("likes", Like.class)) {
+            if (keys.add(like.getPhotoName() + '\n' + like.getUserName())) {
+                likes.add(like);
+            }
+        }
+        return likes;
+    }
+
+    List<User> users() {
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        List<User> users = new ArrayList<>();
+        for (User user : read("users", User.class)) {
+            if (usernames.add(user.getUsername()) && emails.add(user.getEmail())) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    List<Message> messages() {
+        return read("messages", Message.class);
+    }
+
+    private <T> List<T> read(String name, Class<T> type) {
+        List<T> records = new ArrayList<>();
+        Path file = files.find(dataDir, name);
+        if (file == null) {
+            return records;
+        }
+        try {
+            files.read(file, type, records::add);
+        } catch (IOException e) {
+            System.err.println("Error reading " + file + ": " + e.getMessage());
+        }
+        return records;
+    }
+}
@@ -0,0 +1,541 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.StorageProperties;
+import com.memorylane.model.Comment;
+import com.memorylane.model.Like;
+import com.memorylane.model.Message;
+import com.memorylane.model.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import jakarta.annotation.PreDestroy;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Embedded on-disk {@link StorageService}, the {@code kv} backend.
+ *
+ * Everything lives in one MVStore file as sorted string keys holding JSON records:
+ * <pre>
+ * photo/{photo}/comment/{id}   comment
+ * photo/{photo}/like/{user}    like
+ * comment/{id}                 photo of the comment
+ * user/{username}              user
+ * user-id/{id}                 username
+ * user-email/{email}           username
+ * message/{id}                 message
+ * </pre>
+ * Names are URL-encoded so they never contain the separator and ids are zero-padded so
+ * they sort numerically. Point lookups and writes are O(log n) B-tree operations, a photo's
+ * comments or likes are one prefix range scan, and only the page cache stays in memory.
+ * Like counts and id sequences are kept in a second map of counters.
+ */
+@Service
+@ConditionalOnProperty(name = StorageService.BACKEND_PROPERTY, havingValue = "kv")
+public class KeyValueStorageService implements StorageService {
+
+    private static final String PHOTO = "photo/";
+    private static final String COMMENT = "comment/";
+    private static final String LIKE = "like/";
+    private static final String USER = "user/";
+    private static final String USER_ID = "user-id/";
+    private static final String USER_EMAIL = "user-email/";
+    private static final String MESSAGE = "message/";
+    private static final String LIKE_COUNT = "likes/";
+    private static final String SEQUENCE = "sequence/";
+
+    private final MVStore store;
+    private final MVMap<String, String> records;
+    private final MVMap<String, Long> counters;
+    private final boolean syncEveryWrite;
+
+    // Like changes for one (photo, user) pair must not interleave; user changes touch three keys
+    private final Lock[] likeLocks = new Lock[64];
+    private final Lock usersLock = new ReentrantLock();
+
+    public KeyValueStorageService(StorageProperties properties) {
+        Path dataDir = Paths.get(properties.getDataDir());
+        StorageProperties.Kv settings = properties.getKv();
+        try {
+            Files.createDirectories(dataDir);
+        } catch (IOException e) {
+            System.err.println("Error creating data directory: " + e.getMessage());
+        }
+
+        this.store = new MVStore.Builder()
+                .fileName(dataDir.resolve(settings.getFile()).toString())
+                .cacheSize(settings.getCacheSizeMb())
+                .open();
+        this.store.setAutoCommitDelay((int) settings.getAutoCommitDelay().toMillis());
+        this.records = store.openMap("records");
+        this.counters = store.openMap("counters");
+        this.syncEveryWrite = properties.getWrite().getDurability() == StorageProperties.Write.Durability.FSYNC;
+        for (int i = 0; i < likeLocks.length; i++) {
+            likeLocks[i] = new ReentrantLock();
+        }
+
+        if (records.isEmpty() && counters.isEmpty()) {
+            importJsonFiles(new JsonDataFiles(dataDir));
+        }
+    }
+
+    /** Seeds an empty store from the {@code json-file} backend's data directory. */
+    private void importJsonFiles(JsonDataFiles files) {
+        for (Comment comment : files.comments()) {
+            comment.setId(nextId("comments"));
+            putComment(comment);
+        }
+        for (Like like : files.likes()) {
+            like.setId(nextId("likes"));
+            if (records.putIfAbsent(likeKey(like.getPhotoName(), like.getUserName()), write(like)) == null) {
+                addLikes(like.getPhotoName(), 1);
+            }
+        }
+        for (User user : files.users()) {
+            user.setId(nextId("users"));
+            insertUser(user);
+        }
+        for (Message message : files.messages()) {
+            message.setId(nextId("messages"));
+            records.put(MESSAGE + id(message.getId()), write(message));
+        }
+        store.commit();
+    }
+
+    @PreDestroy
+    public void close() {
+        store.close();
+    }
+
+    // Comment operations
+    @Override
+    public List<Comment> getAllComments() {
+        List<Comment> comments = new ArrayList<>();
+        Cursor<String, String> cursor = records.cursor(PHOTO);
+        while (cursor.hasNext()) {
+            String key = cursor.next();
+            if (!key.startsWith(PHOTO)) {
+                break;
+            }
+            if (key.startsWith(COMMENT, key.indexOf('/', PHOTO.length()) + 1)) {
+                comments.add(read(cursor.getValue(), Comment.class));
+            }
+        }
+        return comments;
+    }
+
+    @Override
+    public List<Comment> getCommentsByPhotoName(String photoName) {
+        return scan(photoPrefix(photoName) + COMMENT, Comment.class);
+    }
+
+    @Override
+    public Comment saveComment(Comment comment) {
+        comment.setId(nextId("comments"));
+        comment.setCreatedAt(LocalDateTime.now());
+        putComment(comment);
+        commit();
+        return comment;
+    }
+
+    @Override
+    public void deleteComment(Long commentId) {
+        String photoName = records.remove(COMMENT + id(commentId));
+        if (photoName != null) {
+            records.remove(commentKey(photoName, commentId));
+            commit();
+        }
+    }
+
+    @Override
+    public void deleteCommentsByPhotoName(String photoName) {
+        for (Comment comment : getCommentsByPhotoName(photoName)) {
+            records.remove(commentKey(photoName, comment.getId()));
+            records.remove(COMMENT + id(comment.getId()));
+        }
+        commit();
+    }
+
+    private void putComment(Comment comment) {
+        records.put(commentKey(comment.getPhotoName(), comment.getId()), write(comment));
+        records.put(COMMENT + id(comment.getId()), comment.getPhotoName());
+    }
+
+    // Like operations
+    @Override
+    public List<Like> getAllLikes() {
+        List<Like> likes = new ArrayList<>();
+        Cursor<String, String> cursor = records.cursor(PHOTO);
+        while (cursor.hasNext()) {
+            String key = cursor.next();
+            if (!key.startsWith(PHOTO)) {
+                break;
+            }
+            if (key.startsWith(LIKE, key.indexOf('/', PHOTO.length()) + 1)) {
+                likes.add(read(cursor.getValue(), Like.class));
+            }
+        }
+        return likes;
+    }
+
+    @Override
+    public List<Like> getLikesByPhotoName(String photoName) {
+        return scan(photoPrefix(photoName) + LIKE, Like.class);
+    }
+
+    @Override
+    public long getLikeCount(String photoName) {
+        Long count = counters.get(LIKE_COUNT + encode(photoName));
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public boolean hasUserLikedPhoto(String photoName, String userName) {
+        return records.containsKey(likeKey(photoName, userName));
+    }
+
+    @Override
+    public boolean toggleLike(String photoName, String userName) {
+        String key = likeKey(photoName, userName);
+        Lock lock = likeLock(key);
+        boolean liked;
+        lock.lock();
+        try {
+            if (records.remove(key) != null) {
+                addLikes(photoName, -1);
+                liked = false;
+            } else {
+                Like like = new Like(photoName, userName);
+                like.setId(nextId("likes"));
+                records.put(key, write(like));
+                addLikes(photoName, 1);
+                liked = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        commit();
+        return liked;
+    }
+
+    @Override
+    public Like saveLike(Like like) {
+        String key = likeKey(like.getPhotoName(), like.getUserName());
+        Lock lock = likeLock(key);
+        lock.lock();
+        try {
+            String existing = records.get(key);
+            if (existing != null) {
+                return read(existing, Like.class);
+            }
+            like.setId(nextId("likes"));
+            like.setCreatedAt(LocalDateTime.now());
+            records.put(key, write(like));
+            addLikes(like.getPhotoName(), 1);
+        } finally {
+            lock.unlock();
+        }
+        commit();
+        return like;
+    }
+
+    @Override
+    public void deleteLike(String photoName, String userName) {
+        String key = likeKey(photoName, userName);
+        Lock lock = likeLock(key);
+        lock.lock();
+        try {
+            if (records.remove(key) != null) {
+                addLikes(photoName, -1);
+            }
+        } finally {
+            lock.unlock();
+        }
+        commit();
+    }
+
+    @Override
+    public void deleteLikesByPhotoName(String photoName) {
+        removeLikes(photoName);
+        commit();
+    }
+
+    // One commit for all the photos
+    @Override
+    public void deleteByPhotoNames(Collection<String> photoNames) {
+        for (String photoName : photoNames) {
+            for (Comment comment : getCommentsByPhotoName(photoName)) {
+                records.remove(commentKey(photoName, comment.getId()));
+                records.remove(COMMENT + id(comment.getId()));
+            }
+            removeLikes(photoName);
+        }
+        commit();
+    }
+
+    // Each like is removed under its lock and counted off, so a toggle running meanwhile
+    // leaves the count matching the likes that remain
+    private void removeLikes(String photoName) {
+        for (Like like : getLikesByPhotoName(photoName)) {
+            String key = likeKey(photoName, like.getUserName());
+            Lock lock = likeLock(key);
+            lock.lock();
+            try {
+                if (records.remove(key) != null) {
+                    addLikes(photoName, -1);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        counters.remove(LIKE_COUNT + encode(photoName), 0L);
+    }
+
+    private Lock likeLock(String key) {
+        return likeLocks[Math.floorMod(key.hashCode(), likeLocks.length)];
+    }
+
+    private void addLikes(String photoName, long delta) {
+        add(LIKE_COUNT + encode(photoName), delta);
+    }
+
+    // User operations
+    @Override
+    public List<User> getAllUsers() {
+        List<User> users = new ArrayList<>();
+        for (String username : scan(USER_ID)) {
+            User user = getUserByUsername(username);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    @Override
+    public User getUserByUsername(String username) {
+        String user = records.get(USER + encode(username));
+        return user == null ? null : read(user, User.class);
+    }
+
+    @Override
+    public User getUserByEmail(String email) {
+        String username = records.get(USER_EMAIL + encode(email));
+        return username == null ? null : getUserByUsername(username);
+    }
+
+    @Override
+    public User saveUser(User user) {
+        user.setId(nextId("users"));
+        user.setCreatedAt(LocalDateTime.now());
+        insertUser(user);
+        commit();
+        return user;
+    }
+
+    private void insertUser(User user) {
+        usersLock.lock();
+        try {
+            // Check if username already exists
+            if (records.containsKey(USER + encode(user.getUsername()))) {
+                throw new RuntimeException("Username already exists");
+            }
+
+            // Check if email already exists
+            if (records.containsKey(USER_EMAIL + encode(user.getEmail()))) {
+                throw new RuntimeException("Email already exists");
+            }
+
+            records.put(USER + encode(user.getUsername()), write(user));
+            records.put(USER_ID + id(user.getId()), user.getUsername());
+            records.put(USER_EMAIL + encode(user.getEmail()), user.getUsername());
+        } finally {
+            usersLock.unlock();
+        }
+    }
+
+    @Override
+    public User authenticateUser(String username, String password) {
+        User user = getUserByUsername(username);
+        if (user != null && user.getPassword().equals(password)) {
+            // Update last login time
+            user.setLastLoginAt(LocalDateTime.now());
+            updateUser(user);
+            return user;
+        }
+        return null;
+    }
+
+    @Override
+    public void updateUser(User user) {
+        usersLock.lock();
+        try {
+            String username = records.get(USER_ID + id(user.getId()));
+            if (username == null) {
+                return;
+            }
+            // Same checks as insertUser, except against the user's own records
+            if (!user.getUsername().equals(username) && records.containsKey(USER + encode(user.getUsername()))) {
+                throw new RuntimeException("Username already exists");
+            }
+            String emailOwner = records.get(USER_EMAIL + encode(user.getEmail()));
+            if (emailOwner != null && !emailOwner.equals(username)) {
+                throw new RuntimeException("Email already exists");
+            }
+
+            User existing = read(records.remove(USER + encode(username)), User.class);
+            records.remove(USER_EMAIL + encode(existing.getEmail()), existing.getUsername());
+
+            records.put(USER + encode(user.getUsername()), write(user));
+            records.put(USER_ID + id(user.getId()), user.getUsername());
+            records.put(USER_EMAIL + encode(user.getEmail()), user.getUsername());
+        } finally {
+            usersLock.unlock();
+        }
+        commit();
+    }
+
+    @Override
+    public void deleteUser(Long userId) {
+        usersLock.lock();
+        try {
+            String username = records.remove(USER_ID + id(userId));
+            if (username == null) {
+                return;
+            }
+            User user = read(records.remove(USER + encode(username)), User.class);
+            records.remove(USER_EMAIL + encode(user.getEmail()), username);
+        } finally {
+            usersLock.unlock();
+        }
+        commit();
+    }
+
+    // Message operations
+    @Override
+    public List<Message> getAllMessages() {
+        return scan(MESSAGE, Message.class);
+    }
+
+    @Override
+    public Message getLatestMessage() {
+        // '0' sorts right after '/', so this is the last key under the message prefix
+        String key = records.lowerKey(MESSAGE.substring(0, MESSAGE.length() - 1) + '0');
+        return key != null && key.startsWith(MESSAGE) ? read(records.get(key), Message.class) : null;
+    }
+
+    @Override
+    public Message saveMessage(Message message) {
+        message.setId(nextId("messages"));
+        message.setTimestamp(LocalDateTime.now());
+        records.put(MESSAGE + id(message.getId()), write(message));
+        commit();
+        return message;
+    }
+
+    // Profile picture operations
+    @Override
+    public String storeProfilePicture(MultipartFile file, String username) {
+        return ProfilePictures.store(file, username);
+    }
+
+    private <T> List<T> scan(String prefix, Class<T> type) {
+        List<T> values = new ArrayList<>();
+        scan(prefix, (key, value) -> values.add(read(value, type)));
+        return values;
+    }
+
+    private List<String> scan(String prefix) {
+        List<String> values = new ArrayList<>();
+        scan(prefix, (key, value) -> values.add(value));
+        return values;
+    }
+
+    private void scan(String prefix, BiConsumer<String, String> consumer) {
+        Cursor<String, String> cursor = records.cursor(prefix);
+        while (cursor.hasNext()) {
+            String key = cursor.next();
+            if (!key.startsWith(prefix)) {
+                return;
+            }
+            consumer.accept(key, cursor.getValue());
+        }
+    }
+
+    private long nextId(String sequence) {
+        return add(SEQUENCE + sequence, 1);
+    }
+
+    // Lock-free read-modify-write on a counter
+    private long add(String key, long delta) {
+        while (true) {
+            Long current = counters.get(key);
+            long updated = (current == null ? 0 : current) + delta;
+            if (current == null ? counters.putIfAbsent(key, updated) == null : counters.replace(key, current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    // With fsync durability every mutation is on disk before it returns; otherwise the
+    // background auto-commit writes it within memorylane.storage.kv.auto-commit-delay
+    private void commit() {
+        if (syncEveryWrite) {
+            store.commit();
+            store.sync();
+        }
+    }
+
+    private String write(Object record) {
+        try {
+            return StorageJson.writer(record.getClass()).writeValueAsString(record);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T read(String json, Class<T> type) {
+        try {
+            return StorageJson.reader(type).readValue(json);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String photoPrefix(String photoName) {
+        return PHOTO + encode(photoName) + '/';
+    }
+
+    private static String commentKey(String photoName, long commentId) {
+        return photoPrefix(photoName) + COMMENT + id(commentId);
+    }
+
+    private static String likeKey(String photoName, String userName) {
+        return photoPrefix(photoName) + LIKE + encode(userName);
+    }
+
+    private static String encode(String name) {
+        return URLEncoder.encode(name, StandardCharsets.UTF_8);
+    }
+
+    private static String id(long id) {
+        return String.format("%019d", id);
+    }
+}
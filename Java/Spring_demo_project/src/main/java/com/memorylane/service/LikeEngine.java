@@ -0,0 +1,225 @@
+package com.memorylane.service;
+
+import com.memorylane.model.Like;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Concurrent like state: per photo, a concurrent membership map keyed by user name and a
+ * {@link LongAdder} holding the live count.
+ *
+ * Every change to one (photo, user) pair runs inside that key's {@code compute}, so toggles
+ * are atomic without a global lock and the {@link Listener} sees the changes for a key in
+ * the same order they were applied.
+ *
+ * Those changes hold the photo's read lock, which they share; removing a photo takes the
+ * write lock and marks it removed, so a toggle either lands before the removal or retries on
+ * a fresh entry after it, never on the detached one.
+ */
+public class LikeEngine {
+
+    /** Receives every applied change, e.g. to queue it for persistence. */
+    public interface Listener {
+        void liked(Like like);
+
+        void unliked(String photoName, String userName);
+
+        void photoCleared(String photoName);
+
+        void photosCleared(List<String> photoNames);
+    }
+
+    private static final Listener SILENT = new Listener() {
+        @Override
+        public void liked(Like like) {}
+
+        @Override
+        public void unliked(String photoName, String userName) {}
+
+        @Override
+        public void photoCleared(String photoName) {}
+
+        @Override
+        public void photosCleared(List<String> photoNames) {}
+    };
+
+    private static final class PhotoLikes {
+        final ConcurrentHashMap<String, Like> users = new ConcurrentHashMap<>();
+        final LongAdder count = new LongAdder();
+        final StampedLock lock = new StampedLock();
+        boolean removed;
+    }
+
+    private final ConcurrentHashMap<String, PhotoLikes> photos = new ConcurrentHashMap<>();
+    private volatile Listener listener = SILENT;
+
+    /** Starts reporting changes; loading and journal replay happen before this is set. */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Likes the photo if the user has not liked it yet, otherwise removes the like.
+     *
+     * @return {@code true} if the photo is liked by the user afterwards
+     */
+    public boolean toggle(String photoName, String userName, Supplier<Like> newLike) {
+        return update(photoName, photo -> {
+            AtomicBoolean liked = new AtomicBoolean();
+            photo.users.compute(userName, (user, existing) -> {
+                if (existing != null) {
+                    photo.count.decrement();
+                    listener.unliked(photoName, userName);
+                    return null;
+                }
+                Like like = newLike.get();
+                photo.count.increment();
+                listener.liked(like);
+                liked.set(true);
+                return like;
+            });
+            return liked.get();
+        });
+    }
+
+    /** Adds the like unless the user already likes the photo; returns whether it was added. */
+    public boolean add(Like like) {
+        return update(like.getPhotoName(), photo -> {
+            AtomicBoolean added = new AtomicBoolean();
+            photo.users.computeIfAbsent(like.getUserName(), user -> {
+                photo.count.increment();
+                listener.liked(like);
+                added.set(true);
+                return like;
+            });
+            return added.get();
+        });
+    }
+
+    public void remove(String photoName, String userName) {
+        PhotoLikes photo = photos.get(photoName);
+        if (photo == null) {
+            return;
+        }
+        long stamp = photo.lock.readLock();
+        try {
+            // Once removed the entry is empty as far as readers are concerned
+            if (photo.removed) {
+                return;
+            }
+            photo.users.computeIfPresent(userName, (user, existing) -> {
+                photo.count.decrement();
+                listener.unliked(photoName, userName);
+                return null;
+            });
+        } finally {
+            photo.lock.unlockRead(stamp);
+        }
+    }
+
+    public void removePhoto(String photoName) {
+        PhotoLikes photo = photos.get(photoName);
+        if (photo == null) {
+            return;
+        }
+        long stamp = photo.lock.writeLock();
+        try {
+            if (detach(photo)) {
+                listener.photoCleared(photoName);
+                photos.remove(photoName, photo);
+            }
+        } finally {
+            photo.lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Removes the likes of all the photos, reported to the listener as one change. */
+    public void removePhotos(Collection<String> photoNames) {
+        // Locked in name order so two bulk removals cannot deadlock; all are held until the
+        // listener has the change and the entries are gone from the map
+        List<PhotoLikes> locked = new ArrayList<>();
+        List<Long> stamps = new ArrayList<>();
+        Map<String, PhotoLikes> cleared = new LinkedHashMap<>();
+        try {
+            for (String photoName : new TreeSet<>(photoNames)) {
+                PhotoLikes photo = photos.get(photoName);
+                if (photo == null) {
+                    continue;
+                }
+                stamps.add(photo.lock.writeLock());
+                locked.add(photo);
+                if (detach(photo)) {
+                    cleared.put(photoName, photo);
+                }
+            }
+            if (!cleared.isEmpty()) {
+                listener.photosCleared(List.copyOf(cleared.keySet()));
+                cleared.forEach(photos::remove);
+            }
+        } finally {
+            for (int i = 0; i < locked.size(); i++) {
+                locked.get(i).lock.unlockWrite(stamps.get(i));
+            }
+        }
+    }
+
+    // Runs the change on the photo's live entry, retrying if a removal detached it meanwhile
+    private <T> T update(String photoName, Function<PhotoLikes, T> change) {
+        while (true) {
+            PhotoLikes photo = photos.computeIfAbsent(photoName, name -> new PhotoLikes());
+            long stamp = photo.lock.readLock();
+            try {
+                if (!photo.removed) {
+                    return change.apply(photo);
+                }
+            } finally {
+                photo.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    // Called with the photo's write lock held; false if another removal got there first.
+    // The entry stays in the map until the listener has the removal: a toggle finds it, waits
+    // for the lock and retries on a fresh entry only once the removal has been reported
+    private boolean detach(PhotoLikes photo) {
+        if (photo.removed) {
+            return false;
+        }
+        photo.removed = true;
+        return true;
+    }
+
+    public long count(String photoName) {
+        PhotoLikes photo = photos.get(photoName);
+        return photo == null ? 0 : photo.count.sum();
+    }
+
+    public boolean contains(String photoName, String userName) {
+        PhotoLikes photo = photos.get(photoName);
+        return photo != null && photo.users.containsKey(userName);
+    }
+
+    public List<Like> likes(String photoName) {
+        PhotoLikes photo = photos.get(photoName);
+        return photo == null ? List.of() : List.copyOf(photo.users.values());
+    }
+
+    public List<Like> all() {
+        List<Like> all = new ArrayList<>();
+        for (PhotoLikes photo : photos.values()) {
+            all.addAll(photo.users.values());
+        }
+        return all;
+    }
+}
@@ -0,0 +1,593 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.MediaCatalogProperties;
+import com.memorylane.Configguration.StorageProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Every photo and song in the bucket with its metadata, persisted in a local file so
+ * listing them, finding where one is stored or what it contains is a lookup instead of a
+ * walk over the whole bucket.
+ *
+ * Files are stored under a prefix per category ({@code images/}, {@code music/}); the API
+ * still names them by file name alone. The upload and delete endpoints update the catalog
+ * as they change the bucket. A background job re-lists the bucket page by page to pick up
+ * anything changed elsewhere, then migrates objects from before the catalog: flat keys are
+ * moved under their prefix and objects without a hash are read once to fill it in.
+ */
+@Service
+public class MediaCatalog {
+
+    public enum Category {
+        IMAGE("images/", Pattern.compile(".*\\.(jpg|jpeg|png|gif|webp)$")),
+        MUSIC("music/", Pattern.compile(".*\\.(mp3|wav|m4a)$"));
+
+        private final String prefix;
+        private final Pattern extensions;
+
+        Category(String prefix, Pattern extensions) {
+            this.prefix = prefix;
+            this.extensions = extensions;
+        }
+
+        public String prefix() {
+            return prefix;
+        }
+
+        /** Where a file of this category is stored in the bucket. */
+        public String key(String fileName) {
+            return prefix + fileName;
+        }
+    }
+
+    /**
+     * One photo or song. {@code key} is where it is stored, which is not yet
+     * {@code category.key(fileName)} for a flat key waiting to be migrated. Width and height
+     * are those it is displayed at, {@code null} for songs and formats ImageIO cannot read;
+     * they and the hash are also {@code null} until an object uploaded elsewhere has been read.
+     */
+    public record Entry(String fileName, Category category, String key, String contentType, long size,
+                        Integer width, Integer height, Instant uploaded, String sha256) {
+
+        Entry withKey(String key) {
+            return new Entry(fileName, category, key, contentType, size, width, height, uploaded, sha256);
+        }
+
+        boolean needsMigration() {
+            return sha256 == null || !key.equals(category.key(fileName));
+        }
+    }
+
+    /** One page of file names; {@code nextCursor} is {@code null} on the last page. */
+    public record Page(List<String> fileNames, String nextCursor) {}
+
+    record Probe(Integer width, Integer height, String sha256) {}
+
+    // An EXIF segment is at most 64 KB and comes right after the start of the image
+    private static final int EXIF_HEAD = 64 * 1024 + 4;
+    private static final long SAVE_DELAY_MILLIS = 1000;
+    private static final Comparator<Entry> NEWEST_FIRST =
+            Comparator.comparing(Entry::uploaded).reversed().thenComparing(Entry::fileName);
+
+    private final S3Client s3;
+    private final String bucketName;
+    private final Path file;
+    private final int maxPageSize;
+    private final long refreshIntervalMillis;
+    private final boolean migrate;
+    private final ScheduledExecutorService executor;
+
+    // Changed together under this object's monitor; read without locking
+    private final Map<Category, NavigableSet<Entry>> byUploadTime = new EnumMap<>(Category.class);
+    private final Map<String, Entry> byName = new ConcurrentHashMap<>();
+    private final Set<String> changedDuringRefresh = ConcurrentHashMap.newKeySet();
+    // Flat keys already copied under their prefix, left behind by an interrupted migration
+    private final Set<String> leftovers = ConcurrentHashMap.newKeySet();
+    private boolean refreshing;
+    private boolean saveScheduled;
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final Object saveLock = new Object();
+    private volatile boolean loaded;
+
+    public MediaCatalog(S3Client s3, @Value("${cloud.aws.bucket}") String bucketName,
+                        MediaCatalogProperties properties, StorageProperties storage) {
+        this.s3 = s3;
+        this.bucketName = bucketName;
+        this.file = Paths.get(storage.getDataDir()).resolve(properties.getFile());
+        this.maxPageSize = properties.getMaxPageSize();
+        this.refreshIntervalMillis = properties.getRefreshInterval().toMillis();
+        this.migrate = properties.isMigrate();
+        for (Category category : Category.values()) {
+            byUploadTime.put(category, new ConcurrentSkipListSet<>(NEWEST_FIRST));
+        }
+        // Two threads, so saving is never held up by a long migration
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "media-catalog-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        load();
+    }
+
+    /** Starts the background sync with the bucket. */
+    @PostConstruct
+    public void start() {
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+                if (migrate) {
+                    migrate();
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error syncing media catalog: " + e.getMessage());
+            }
+        }, 0, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** The category a file name's extension suggests, or {@code null} for anything else, e.g. a variant key. */
+    public static Category categoryOf(String fileName) {
+        if (fileName.indexOf('/') >= 0) {
+            return null;
+        }
+        for (Category category : Category.values()) {
+            if (category.extensions.matcher(fileName).matches()) {
+                return category;
+            }
+        }
+        return null;
+    }
+
+    /** A new entry for {@code size} bytes about to be stored under the category's prefix, uploaded now. */
+    public static Entry describe(Category category, String fileName, String contentType,
+                                 InputStreamSource content, long size) throws IOException {
+        Probe probe;
+        try (InputStream in = content.getInputStream()) {
+            probe = probe(category, in);
+        }
+        return new Entry(fileName, category, category.key(fileName), contentType, size,
+                probe.width(), probe.height(), Instant.now().truncatedTo(ChronoUnit.MILLIS), probe.sha256());
+    }
+
+    /** Reads the catalog from the bucket now unless it is already loaded; throws if the bucket cannot be listed. */
+    public void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        refreshLock.lock();
+        try {
+            if (!loaded) {
+                refresh();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /** The entry for a file name, or {@code null}; never reads the bucket. */
+    public Entry get(String fileName) {
+        return byName.get(fileName);
+    }
+
+    /** The category of a file: the catalog's, or else the one its extension suggests. */
+    public Category category(String fileName) {
+        Entry entry = byName.get(fileName);
+        return entry != null ? entry.category() : categoryOf(fileName);
+    }
+
+    /**
+     * The bucket key a file is stored under; for one not in the catalog, where it would be.
+     * Until the catalog is first loaded the bucket is asked, as the file may still be under
+     * its flat key.
+     */
+    public String keyOf(String fileName) {
+        Entry entry = byName.get(fileName);
+        if (entry != null) {
+            return entry.key();
+        }
+        Category category = categoryOf(fileName);
+        if (category == null) {
+            return fileName;
+        }
+        String key = category.key(fileName);
+        // The prefixed copy is current when a migration was interrupted between the two
+        if (!loaded && !exists(key) && exists(fileName)) {
+            return fileName;
+        }
+        return key;
+    }
+
+    // A failed check counts as missing, leaving the prefixed key
+    private boolean exists(String key) {
+        try {
+            s3.headObject(builder -> builder.bucket(bucketName).key(key));
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (SdkException e) {
+            System.err.println("Error checking " + key + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Every file of one category, newest first. */
+    public List<Entry> entries(Category category) {
+        return List.copyOf(byUploadTime.get(category));
+    }
+
+    /**
+     * File names of one category, newest first, after the one the cursor points at.
+     *
+     * @param limit page size, capped; {@code null} for everything
+     */
+    public Page page(Category category, Integer limit, String cursor) {
+        NavigableSet<Entry> entries = byUploadTime.get(category);
+        Entry after = cursor != null ? decodeCursor(cursor) : null;
+        Iterator<Entry> remaining = (after != null ? entries.tailSet(after, false) : entries).iterator();
+        int size = limit != null ? Math.max(1, Math.min(limit, maxPageSize)) : Integer.MAX_VALUE;
+
+        List<String> fileNames = new ArrayList<>();
+        Entry last = null;
+        while (fileNames.size() < size && remaining.hasNext()) {
+            last = remaining.next();
+            fileNames.add(last.fileName());
+        }
+        return new Page(fileNames, last != null && remaining.hasNext() ? encodeCursor(last) : null);
+    }
+
+    /** Records a file just written to the bucket at {@code entry.key()}. */
+    public synchronized void added(Entry entry) {
+        put(entry);
+        changed(entry.fileName());
+    }
+
+    /** Records a file just deleted from the bucket. */
+    public synchronized void removed(String fileName) {
+        remove(fileName);
+        changed(fileName);
+    }
+
+    /** Re-lists the whole bucket, following continuation tokens past the 1000 keys of a single page. */
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            synchronized (this) {
+                refreshing = true;
+                changedDuringRefresh.clear();
+            }
+            Map<String, Entry> listed = new HashMap<>();
+            Set<String> flatDuplicates = new HashSet<>();
+            try {
+                for (S3Object object : s3.listObjectsV2Paginator(builder -> builder.bucket(bucketName)).contents()) {
+                    Entry found = fromListing(object);
+                    if (found == null) {
+                        continue;
+                    }
+                    Entry other = listed.get(found.fileName());
+                    if (other == null || !isFlat(found)) {
+                        listed.put(found.fileName(), found);
+                    }
+                    // Both a flat and a prefixed copy; the prefixed one is current
+                    if (other != null) {
+                        flatDuplicates.add(isFlat(found) ? found.key() : other.key());
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    refreshing = false;
+                }
+            }
+
+            synchronized (this) {
+                for (String fileName : List.copyOf(byName.keySet())) {
+                    if (!listed.containsKey(fileName) && !changedDuringRefresh.contains(fileName)) {
+                        remove(fileName);
+                    }
+                }
+                for (Entry found : listed.values()) {
+                    Entry known = byName.get(found.fileName());
+                    // A known entry keeps its upload time and the metadata only a read can give
+                    if (!changedDuringRefresh.contains(found.fileName())
+                            && (known == null || !known.key().equals(found.key()) || known.size() != found.size())) {
+                        put(found);
+                    }
+                }
+                changedDuringRefresh.clear();
+                leftovers.addAll(flatDuplicates);
+                loaded = true;
+                scheduleSave();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Moves flat keys under their category prefix and fills in the metadata of entries
+     * listed from the bucket. Copies of the flat keys left in the object caches are never
+     * requested again and age out.
+     */
+    public void migrate() {
+        for (String key : List.copyOf(leftovers)) {
+            try {
+                s3.deleteObject(builder -> builder.bucket(bucketName).key(key));
+                leftovers.remove(key);
+            } catch (SdkException e) {
+                System.err.println("Error deleting " + key + ": " + e.getMessage());
+            }
+        }
+        List<Entry> pending = byName.values().stream().filter(Entry::needsMigration).toList();
+        if (!pending.isEmpty()) {
+            System.err.println("Migrating " + pending.size() + " objects in the media catalog");
+        }
+        for (Entry entry : pending) {
+            try {
+                migrate(entry);
+            } catch (IOException | SdkException e) {
+                System.err.println("Error migrating " + entry.key() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+        boolean dirty;
+        synchronized (this) {
+            dirty = saveScheduled;
+        }
+        if (dirty) {
+            save();
+        }
+    }
+
+    private void migrate(Entry entry) throws IOException {
+        Entry migrated = entry.withKey(entry.category().key(entry.fileName()));
+        if (entry.sha256() == null) {
+            try (ResponseInputStream<GetObjectResponse> object = s3.getObject(builder -> builder.bucket(bucketName).key(entry.key()))) {
+                Probe probe = probe(entry.category(), object);
+                GetObjectResponse response = object.response();
+                migrated = new Entry(entry.fileName(), entry.category(), migrated.key(),
+                        response.contentType() != null ? response.contentType() : entry.contentType(),
+                        response.contentLength() != null ? response.contentLength() : entry.size(),
+                        probe.width(), probe.height(), entry.uploaded(), probe.sha256());
+            }
+        }
+        boolean moving = !entry.key().equals(migrated.key());
+        if (moving) {
+            String target = migrated.key();
+            s3.copyObject(builder -> builder
+                    .sourceBucket(bucketName).sourceKey(entry.key())
+                    .destinationBucket(bucketName).destinationKey(target));
+        }
+
+        boolean current;
+        synchronized (this) {
+            Entry now = byName.get(entry.fileName());
+            // Deleted, or replaced by a refresh, while it was read
+            current = now != null && now.key().equals(entry.key());
+            if (current) {
+                put(migrated);
+                changed(entry.fileName());
+            }
+        }
+        if (moving) {
+            String stale = current ? entry.key() : migrated.key();
+            s3.deleteObject(builder -> builder.bucket(bucketName).key(stale));
+        }
+    }
+
+    // Callers hold the monitor
+    private void changed(String fileName) {
+        if (refreshing) {
+            changedDuringRefresh.add(fileName);
+        }
+        scheduleSave();
+    }
+
+    private void put(Entry entry) {
+        Entry previous = byName.put(entry.fileName(), entry);
+        if (previous != null) {
+            byUploadTime.get(previous.category()).remove(previous);
+        }
+        byUploadTime.get(entry.category()).add(entry);
+    }
+
+    private void remove(String fileName) {
+        Entry previous = byName.remove(fileName);
+        if (previous != null) {
+            byUploadTime.get(previous.category()).remove(previous);
+        }
+    }
+
+    // Changes come in bursts, e.g. a refresh or a batch upload; the file is rewritten once for them
+    private void scheduleSave() {
+        if (!saveScheduled) {
+            saveScheduled = true;
+            try {
+                executor.schedule(this::save, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; close() saves
+            }
+        }
+    }
+
+    private void save() {
+        synchronized (saveLock) {
+            Entry[] entries;
+            synchronized (this) {
+                saveScheduled = false;
+                entries = byName.values().toArray(Entry[]::new);
+            }
+            try {
+                Files.createDirectories(file.getParent());
+                AtomicFiles.write(file, out -> StorageJson.writer(Entry[].class).writeValue(out, entries));
+            } catch (IOException e) {
+                System.err.println("Error saving media catalog: " + e.getMessage());
+            }
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            Entry[] entries = StorageJson.reader(Entry[].class).readValue(file.toFile());
+            for (Entry entry : entries) {
+                put(entry);
+            }
+            loaded = true;
+        } catch (IOException e) {
+            // Rebuilt from the bucket by the first refresh
+            System.err.println("Error reading media catalog, listing the bucket instead: " + e.getMessage());
+        }
+    }
+
+    // The entry a listed object stands for, or null if it is not a photo or song
+    private static Entry fromListing(S3Object object) {
+        String key = object.key();
+        Category category = null;
+        String fileName = null;
+        for (Category candidate : Category.values()) {
+            if (key.startsWith(candidate.prefix())) {
+                category = candidate;
+                fileName = key.substring(candidate.prefix().length());
+            }
+        }
+        if (category == null) {
+            // Stored before the catalog, under its file name
+            category = categoryOf(key);
+            fileName = key;
+        }
+        if (category == null || fileName.isEmpty() || fileName.indexOf('/') >= 0) {
+            return null;
+        }
+        String contentType = MediaTypeFactory.getMediaType(fileName)
+                .map(MediaType::toString)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        return new Entry(fileName, category, key, contentType, object.size() != null ? object.size() : 0,
+                null, null, object.lastModified(), null);
+    }
+
+    private static boolean isFlat(Entry entry) {
+        return !entry.key().equals(entry.category().key(entry.fileName()));
+    }
+
+    /** Pixel size and hash of a photo or song, read in one pass; only the header of a photo is decoded. */
+    static Probe probe(Category category, InputStream content) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        Integer width = null;
+        Integer height = null;
+        try (BufferedInputStream in = new BufferedInputStream(new DigestInputStream(content, digest), EXIF_HEAD)) {
+            if (category == Category.IMAGE) {
+                in.mark(EXIF_HEAD);
+                int orientation = ExifOrientation.read(in.readNBytes(EXIF_HEAD));
+                in.reset();
+                int[] size = pixelSize(in);
+                if (size != null) {
+                    // Turned a quarter, the photo is displayed with its sides swapped
+                    boolean swapped = orientation >= 5;
+                    width = size[swapped ? 1 : 0];
+                    height = size[swapped ? 0 : 1];
+                }
+            }
+            // The rest still has to pass through the digest
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return new Probe(width, height, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    // Width and height from the image header, or null if ImageIO cannot read the format
+    private static int[] pixelSize(InputStream in) {
+        ImageInputStream input = new MemoryCacheImageInputStream(in);
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            return new int[]{reader.getWidth(0), reader.getHeight(0)};
+        } catch (IOException e) {
+            return null;
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    // Opaque to clients: the upload time and file name of the last entry on the previous page
+    private static String encodeCursor(Entry last) {
+        String position = last.uploaded() + "|" + last.fileName();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Only compared by upload time and file name
+    private static Entry decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf('|');
+            return new Entry(position.substring(separator + 1), null, null, null, 0, null, null,
+                    Instant.parse(position.substring(0, separator)), null);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.ObjectCacheProperties;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded, least-recently-used disk cache of bucket objects, read through on a miss.
+ *
+ * Each fill downloads the whole object into a temp file, checks its length and, for
+ * single-part uploads, its MD5 against the bucket's ETag, then renames it into place and
+ * writes a metadata file beside it. A metadata file therefore marks a complete entry, which
+ * lets the index be rebuilt at startup. Concurrent misses for one key share a download.
+ * Every fill gets fresh file names, so replacing or dropping an entry never touches the
+ * files of another. A request that misses can also {@link #prefetch} the object instead,
+ * and be answered straight from the bucket meanwhile, or {@link #transfer} the body it is
+ * streaming anyway and have it kept on the way.
+ */
+@Service
+public class ObjectCache {
+
+    public record CachedObject(Path file, String eTag, Instant lastModified, String contentType, long length) {}
+
+    public record Stats(long hits, long misses, long evictions, long entries, long bytes, long maxBytes) {}
+
+    record Metadata(String key, String eTag, Instant lastModified, String contentType, long length) {}
+
+    private static final String DATA_SUFFIX = ".bin";
+    private static final String METADATA_SUFFIX = ".json";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final S3Client s3;
+    private final String bucketName;
+    private final boolean enabled;
+    private final Path dir;
+    private final long maxBytes;
+    private final long maxObjectBytes;
+
+    // Guarded by itself; access order makes the first entry the least recently used
+    private final LinkedHashMap<String, CachedObject> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> invalidatedWhileLoading = new HashSet<>();
+    private long bytes;
+
+    private final Map<String, CompletableFuture<CachedObject>> loading = new ConcurrentHashMap<>();
+    // Background fills wait on the bucket, so each gets a virtual thread
+    private final ExecutorService prefetcher = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("object-cache-fill-", 1).factory());
+    private final AtomicLong fills = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ObjectCache(S3Client s3, @Value("${cloud.aws.bucket}") String bucketName, ObjectCacheProperties properties) {
+        this.s3 = s3;
+        this.bucketName = bucketName;
+        this.enabled = properties.isEnabled();
+        this.dir = Paths.get(properties.getDir());
+        this.maxBytes = properties.getMaxSize().toBytes();
+        this.maxObjectBytes = maxBytes / 4;
+        if (enabled) {
+            try {
+                Files.createDirectories(dir);
+                loadIndex();
+            } catch (IOException e) {
+                System.err.println("Error loading object cache: " + e.getMessage());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** The cached copy of an object, or {@code null}; never goes to the bucket. */
+    public CachedObject getIfPresent(String key) {
+        CachedObject cached;
+        synchronized (index) {
+            cached = index.get(key);
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+        }
+        return cached;
+    }
+
+    /**
+     * The cached copy of an object, downloading it first on a miss.
+     *
+     * @return {@code null} if the object is too large to cache or was deleted while loading
+     */
+    public CachedObject get(String key) throws IOException {
+        CachedObject cached = getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<CachedObject> load = new CompletableFuture<>();
+        CompletableFuture<CachedObject> running = loading.putIfAbsent(key, load);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            synchronized (index) {
+                cached = index.get(key);
+            }
+            if (cached == null) {
+                cached = fill(key);
+            }
+            load.complete(cached);
+            return cached;
+        } catch (IOException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    /** Starts caching an object in the background unless it is cached or being cached already. */
+    public void prefetch(String key) {
+        if (!enabled || loading.containsKey(key)) {
+            return;
+        }
+        if (isCached(key)) {
+            return;
+        }
+        prefetcher.execute(() -> {
+            try {
+                get(key);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Caching " + key + " failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Copies an object the bucket is sending to {@code client}, and caches it from the same
+     * body when it is a whole object small enough to cache, not cached yet and not being
+     * cached already. The copy never fails the client: if it cannot be kept, the rest of the
+     * body goes to the client alone. The fill then goes at the client's pace, and is lost
+     * with the client if it disconnects.
+     */
+    public void transfer(String key, ResponseInputStream<GetObjectResponse> object, OutputStream client) throws IOException {
+        GetObjectResponse response = object.response();
+        Long length = response.contentLength();
+        CompletableFuture<CachedObject> load = new CompletableFuture<>();
+        if (!enabled || response.contentRange() != null || length == null || length > maxObjectBytes
+                || isCached(key) || loading.putIfAbsent(key, load) != null) {
+            object.transferTo(client);
+            return;
+        }
+        misses.incrementAndGet();
+
+        Path data = dataPath(key);
+        MessageDigest md5 = digest("MD5");
+        AtomicBoolean delivered = new AtomicBoolean();
+        try {
+            AtomicFiles.write(data, out -> {
+                IOException cacheFailure = null;
+                long copied = 0;
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int read; (read = object.read(buffer)) >= 0; copied += read) {
+                    client.write(buffer, 0, read);
+                    if (cacheFailure == null) {
+                        try {
+                            out.write(buffer, 0, read);
+                            md5.update(buffer, 0, read);
+                        } catch (IOException e) {
+                            cacheFailure = e;
+                        }
+                    }
+                }
+                delivered.set(true);
+                if (cacheFailure != null) {
+                    throw cacheFailure;
+                }
+                verify(key, copied, length, md5, response.eTag());
+            });
+            load.complete(commit(key, data, response, length));
+        } catch (IOException | RuntimeException e) {
+            load.completeExceptionally(e);
+            deleteTemp(data);
+            if (!delivered.get()) {
+                throw e;
+            }
+            System.err.println("Caching " + key + " failed: " + e.getMessage());
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        prefetcher.shutdownNow();
+    }
+
+    /** Drops an object, e.g. after it was deleted from the bucket. */
+    public void invalidate(String key) {
+        synchronized (index) {
+            CachedObject removed = index.remove(key);
+            if (removed != null) {
+                bytes -= removed.length();
+                delete(removed.file());
+            }
+            if (loading.containsKey(key)) {
+                invalidatedWhileLoading.add(key);
+            }
+        }
+    }
+
+    public Stats stats() {
+        synchronized (index) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), index.size(), bytes, maxBytes);
+        }
+    }
+
+    private CachedObject fill(String key) throws IOException {
+        ResponseInputStream<GetObjectResponse> object = s3.getObject(builder -> builder.bucket(bucketName).key(key));
+        GetObjectResponse response = object.response();
+        Long length = response.contentLength();
+        if (length == null || length > maxObjectBytes) {
+            object.abort();
+            object.close();
+            return null;
+        }
+
+        Path data = dataPath(key);
+        MessageDigest md5 = digest("MD5");
+        try (InputStream in = new DigestInputStream(object, md5)) {
+            AtomicFiles.write(data, out -> {
+                long copied = in.transferTo(out);
+                verify(key, copied, length, md5, response.eTag());
+            });
+        } catch (IOException e) {
+            object.abort();
+            deleteTemp(data);
+            throw e;
+        }
+        return commit(key, data, response, length);
+    }
+
+    // Fresh for every fill
+    private Path dataPath(String key) {
+        String name = HexFormat.of().formatHex(digest("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)))
+                + "-" + fills.incrementAndGet();
+        return dir.resolve(name + DATA_SUFFIX);
+    }
+
+    // Writes the metadata beside a complete data file, which makes it an entry
+    private CachedObject commit(String key, Path data, GetObjectResponse response, long length) throws IOException {
+        Metadata metadata = new Metadata(key, response.eTag(), response.lastModified(), response.contentType(), length);
+        AtomicFiles.write(metadataPath(data), out -> StorageJson.writer(Metadata.class).writeValue(out, metadata));
+        return insert(key, new CachedObject(data, metadata.eTag(), metadata.lastModified(), metadata.contentType(), length));
+    }
+
+    private boolean isCached(String key) {
+        synchronized (index) {
+            return index.containsKey(key);
+        }
+    }
+
+    // Multipart ETags ("<md5 of part md5s>-<parts>") cannot be checked against the content
+    private static void verify(String key, long copied, long length, MessageDigest md5, String eTag) throws IOException {
+        if (copied != length) {
+            throw new IOException("Truncated download of " + key + ": " + copied + " of " + length + " bytes");
+        }
+        String expected = eTag != null ? eTag.replace("\"", "") : null;
+        if (expected != null && !expected.contains("-")
+                && !expected.equalsIgnoreCase(HexFormat.of().formatHex(md5.digest()))) {
+            throw new IOException("Checksum mismatch downloading " + key);
+        }
+    }
+
+    private CachedObject insert(String key, CachedObject cached) {
+        synchronized (index) {
+            if (invalidatedWhileLoading.remove(key)) {
+                delete(cached.file());
+                return null;
+            }
+            CachedObject previous = index.put(key, cached);
+            if (previous != null) {
+                bytes -= previous.length();
+                delete(previous.file());
+            }
+            bytes += cached.length();
+            evict();
+            return cached;
+        }
+    }
+
+    // Caller holds the index lock
+    private void evict() {
+        Iterator<CachedObject> eldest = index.values().iterator();
+        while (bytes > maxBytes && index.size() > 1 && eldest.hasNext()) {
+            CachedObject evicted = eldest.next();
+            eldest.remove();
+            bytes -= evicted.length();
+            delete(evicted.file());
+            evictions.incrementAndGet();
+        }
+    }
+
+    /** Rebuilds the index from the metadata files, oldest fill first; drops anything incomplete. */
+    private void loadIndex() throws IOException {
+        List<Path> metadataFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(METADATA_SUFFIX)) {
+                    metadataFiles.add(file);
+                } else if (!name.endsWith(DATA_SUFFIX) || !Files.exists(metadataPath(file))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        metadataFiles.sort((a, b) -> lastModified(a).compareTo(lastModified(b)));
+
+        synchronized (index) {
+            for (Path file : metadataFiles) {
+                Path data = dir.resolve(file.getFileName().toString().replace(METADATA_SUFFIX, DATA_SUFFIX));
+                try {
+                    Metadata metadata = StorageJson.reader(Metadata.class).readValue(file.toFile());
+                    if (!Files.exists(data) || Files.size(data) != metadata.length()) {
+                        throw new IOException("incomplete entry");
+                    }
+                    CachedObject previous = index.put(metadata.key(), new CachedObject(data, metadata.eTag(),
+                            metadata.lastModified(), metadata.contentType(), metadata.length()));
+                    if (previous != null) {
+                        bytes -= previous.length();
+                        delete(previous.file());
+                    }
+                    bytes += metadata.length();
+                } catch (IOException e) {
+                    System.err.println("Dropping cached object " + file.getFileName() + ": " + e.getMessage());
+                    delete(data);
+                }
+            }
+            evict();
+        }
+    }
+
+    private static void deleteTemp(Path data) {
+        try {
+            Files.deleteIfExists(data.resolveSibling(data.getFileName() + AtomicFiles.TEMP_SUFFIX));
+        } catch (IOException e) {
+            System.err.println("Error deleting " + data + AtomicFiles.TEMP_SUFFIX + ": " + e.getMessage());
+        }
+    }
+
+    private static Path metadataPath(Path data) {
+        return data.resolveSibling(data.getFileName().toString().replace(DATA_SUFFIX, METADATA_SUFFIX));
+    }
+
+    private static void delete(Path data) {
+        try {
+            Files.deleteIfExists(metadataPath(data));
+            Files.deleteIfExists(data);
+        } catch (IOException e) {
+            System.err.println("Error deleting cached object " + data + ": " + e.getMessage());
+        }
+    }
+
+    private static Instant lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant();
+        } catch (IOException e) {
+            return Instant.EPOCH;
+        }
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static CachedObject await(CompletableFuture<CachedObject> load) throws IOException {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + load, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.memorylane.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deletes many objects from the bucket with {@code DeleteObjects}, up to 1000 keys per
+ * request, instead of one request per key.
+ *
+ * Requests run in quiet mode, so the bucket only reports the keys it could not delete;
+ * every other key of a request that succeeded is gone. A key that did not exist counts as
+ * deleted, as it does for a single delete.
+ */
+@Service
+public class ObjectDeleter {
+
+    // The most keys S3 accepts in one DeleteObjects request
+    static final int MAX_KEYS_PER_REQUEST = 1000;
+
+    /** {@code error} is null if the key was deleted. */
+    public record Result(String key, String error) {
+
+        public boolean isDeleted() {
+            return error == null;
+        }
+    }
+
+    private final S3Client s3;
+    private final String bucketName;
+
+    public ObjectDeleter(S3Client s3, @Value("${cloud.aws.bucket}") String bucketName) {
+        this.s3 = s3;
+        this.bucketName = bucketName;
+    }
+
+    /** Deletes the keys and returns a result per distinct key, in the order given. */
+    public List<Result> delete(Collection<String> keys) {
+        Map<String, String> errors = new LinkedHashMap<>();
+        keys.forEach(key -> errors.put(key, null));
+        List<String> distinct = new ArrayList<>(errors.keySet());
+
+        for (int start = 0; start < distinct.size(); start += MAX_KEYS_PER_REQUEST) {
+            List<String> batch = distinct.subList(start, Math.min(start + MAX_KEYS_PER_REQUEST, distinct.size()));
+            List<ObjectIdentifier> objects = batch.stream()
+                    .map(key -> ObjectIdentifier.builder().key(key).build())
+                    .toList();
+            try {
+                DeleteObjectsResponse response = s3.deleteObjects(builder -> builder.bucket(bucketName)
+                        .delete(delete -> delete.objects(objects).quiet(true)));
+                for (S3Error error : response.errors()) {
+                    errors.put(error.key(), error.code() + ": " + error.message());
+                }
+            } catch (SdkException e) {
+                // The whole request failed; none of its keys can be assumed deleted
+                System.err.println("Error deleting " + batch.size() + " objects: " + e.getMessage());
+                batch.forEach(key -> errors.put(key, e.getMessage()));
+            }
+        }
+
+        List<Result> results = new ArrayList<>(errors.size());
+        errors.forEach((key, error) -> results.add(new Result(key, error)));
+        return results;
+    }
+}
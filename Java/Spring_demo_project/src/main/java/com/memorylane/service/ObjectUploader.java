@@ -0,0 +1,212 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.UploadProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.MultipartUpload;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends uploads to the bucket straight from their stream, never as one array.
+ *
+ * Small files go in a single request. From {@code memorylane.upload.multipart-threshold}
+ * on, the file is cut into parts that are sent in parallel as a multipart upload. An
+ * upload reuses a fixed set of part buffers, so however large the song it holds at most
+ * {@code parts-in-flight} parts in memory; reading the next part waits for a buffer to
+ * come back. A failed part is retried with its buffer; an upload that fails anyway is
+ * aborted, and uploads left over from a crash are aborted on the next startup.
+ */
+@Service
+public class ObjectUploader {
+
+    // The smallest part S3 accepts, and the most parts one upload may have
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    static final int MAX_PARTS = 10_000;
+
+    private static final long RETRY_DELAY_MILLIS = 200;
+
+    private final S3Client s3;
+    private final String bucketName;
+    private final long multipartThreshold;
+    private final int partSize;
+    private final int partsInFlight;
+    private final int partAttempts;
+    private final Duration abandonedAfter;
+    private final ThreadPoolExecutor executor;
+
+    public ObjectUploader(S3Client s3, @Value("${cloud.aws.bucket}") String bucketName, UploadProperties properties) {
+        this.s3 = s3;
+        this.bucketName = bucketName;
+        this.multipartThreshold = properties.getMultipartThreshold().toBytes();
+        this.partSize = (int) Math.max(MIN_PART_SIZE, properties.getPartSize().toBytes());
+        this.partsInFlight = Math.max(1, properties.getPartsInFlight());
+        this.partAttempts = Math.max(1, properties.getPartAttempts());
+        this.abandonedAfter = properties.getAbandonedAfter();
+        AtomicInteger threads = new AtomicInteger();
+        // Unbounded queue: each upload already limits how many of its parts are queued
+        this.executor = new ThreadPoolExecutor(properties.getWorkers(), properties.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "object-uploader-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /** Aborts, in the background, the multipart uploads a previous run left unfinished. */
+    @PostConstruct
+    public void start() {
+        executor.execute(() -> {
+            try {
+                abortAbandoned();
+            } catch (RuntimeException e) {
+                System.err.println("Error aborting abandoned uploads: " + e.getMessage());
+            }
+        });
+    }
+
+    /** Stores {@code size} bytes of content under {@code key}. */
+    public void upload(String key, String contentType, InputStreamSource content, long size) throws IOException {
+        if (size < multipartThreshold) {
+            try (InputStream in = content.getInputStream()) {
+                s3.putObject(builder -> builder.bucket(bucketName).key(key).contentType(contentType),
+                        RequestBody.fromInputStream(in, size));
+            }
+            return;
+        }
+        uploadInParts(key, contentType, content, size);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void uploadInParts(String key, String contentType, InputStreamSource content, long size) throws IOException {
+        // Large enough that the file fits in the allowed number of parts
+        int bufferSize = (int) Math.max(partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+        String uploadId = s3.createMultipartUpload(builder -> builder.bucket(bucketName).key(key).contentType(contentType))
+                .uploadId();
+
+        BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(partsInFlight);
+        int allocated = 0;
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        boolean completed = false;
+        try (InputStream in = content.getInputStream()) {
+            for (int partNumber = 1; ; partNumber++) {
+                byte[] buffer = buffers.poll();
+                if (buffer == null && allocated < partsInFlight) {
+                    buffer = new byte[bufferSize];
+                    allocated++;
+                } else if (buffer == null) {
+                    buffer = buffers.take();
+                }
+                // Stop reading as soon as a part has failed for good
+                if (parts.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                    break;
+                }
+                int length = in.readNBytes(buffer, 0, bufferSize);
+                if (length == 0 && partNumber > 1) {
+                    break;
+                }
+                byte[] part = buffer;
+                int number = partNumber;
+                parts.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return uploadPart(key, uploadId, number, part, length);
+                    } finally {
+                        buffers.add(part);
+                    }
+                }, executor));
+                if (length < bufferSize) {
+                    break;
+                }
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>();
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completedParts.add(part.join());
+            }
+            s3.completeMultipartUpload(builder -> builder.bucket(bucketName).key(key).uploadId(uploadId)
+                    .multipartUpload(upload -> upload.parts(completedParts)));
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading " + key, e);
+        } catch (CompletionException e) {
+            throw new IOException("Error uploading a part of " + key, e.getCause());
+        } finally {
+            if (!completed) {
+                // Parts already sent are dropped by the abort; ones still running fail against it
+                parts.forEach(part -> part.cancel(false));
+                abort(key, uploadId);
+            }
+        }
+    }
+
+    // Runs on the pool
+    private CompletedPart uploadPart(String key, String uploadId, int partNumber, byte[] buffer, int length) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                String eTag = s3.uploadPart(builder -> builder.bucket(bucketName).key(key).uploadId(uploadId)
+                                .partNumber(partNumber).contentLength((long) length),
+                        RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, length), length)).eTag();
+                return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+            } catch (SdkException e) {
+                // A client error, e.g. the upload was aborted, fails the same way again
+                boolean retryable = !(e instanceof S3Exception error) || error.statusCode() >= 500;
+                if (!retryable || attempt >= partAttempts) {
+                    throw e;
+                }
+                System.err.println("Retrying part " + partNumber + " of " + key + ": " + e.getMessage());
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS << (attempt - 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void abort(String key, String uploadId) {
+        try {
+            s3.abortMultipartUpload(builder -> builder.bucket(bucketName).key(key).uploadId(uploadId));
+        } catch (SdkException e) {
+            // Left for the next startup's sweep
+            System.err.println("Error aborting upload of " + key + ": " + e.getMessage());
+        }
+    }
+
+    void abortAbandoned() {
+        Instant cutoff = Instant.now().minus(abandonedAfter);
+        for (MultipartUpload upload : s3.listMultipartUploadsPaginator(builder -> builder.bucket(bucketName)).uploads()) {
+            if (upload.initiated() != null && upload.initiated().isBefore(cutoff)) {
+                System.err.println("Aborting abandoned upload of " + upload.key());
+                abort(upload.key(), upload.uploadId());
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.memorylane.service;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Profile pictures live on local disk whichever metadata backend is in use.
+ */
+final class ProfilePictures {
+
+    private ProfilePictures() {}
+
+    static String store(MultipartFile file, String username) {
+        try {
+            // Create profile pictures directory if it doesn't exist
+            String uploadDir = "uploads/profile-pictures";
+            Files.createDirectories(Paths.get(uploadDir));
+
+            // Generate unique filename
+            String originalFilename = file.getOriginalFilename();
+            String fileExtension = "";
+            if (originalFilename != null && originalFilename.contains(".")) {
+                fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
+            }
+            String fileName = username + "_profile" + fileExtension;
+            String filePath = uploadDir + "/" + fileName;
+
+            // Save the file
+            Files.write(Paths.get(filePath), file.getBytes());
+
+            return fileName;
+        } catch (IOException e) {
+            System.err.println("Error storing profile picture: " + e.getMessage());
+            return null;
+        }
+    }
+}
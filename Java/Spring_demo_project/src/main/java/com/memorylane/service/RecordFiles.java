@@ -0,0 +1,146 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.StorageProperties;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Dataset files as a stream of records: a JSON array, or the same array in Smile (Jackson's
+ * binary JSON), optionally gzip compressed.
+ *
+ * The encoding is part of the file name ({@code .json}, {@code .smile}, plus {@code .gz}),
+ * so files written under an earlier setting stay readable. Reads hand records to a consumer
+ * one at a time and writes stream from an iterable, so neither side ever holds the whole
+ * file or a second copy of the dataset in memory.
+ */
+public final class RecordFiles {
+
+    private static final String JSON = ".json";
+    private static final String SMILE = ".smile";
+    private static final String GZIP = ".gz";
+    private static final String[] EXTENSIONS = {JSON, JSON + GZIP, SMILE, SMILE + GZIP};
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ObjectWriter JSON_WRITER = StorageJson.streamingWriter(StorageJson.MAPPER, Object.class);
+    private static final ObjectWriter SMILE_WRITER = StorageJson.streamingWriter(StorageJson.SMILE_MAPPER, Object.class);
+
+    private final String extension;
+
+    public RecordFiles(StorageProperties.Format format, boolean compress) {
+        this.extension = (format == StorageProperties.Format.SMILE ? SMILE : JSON) + (compress ? GZIP : "");
+    }
+
+    /** Where a dataset is written under the configured encoding. */
+    public Path path(Path dir, String name) {
+        return dir.resolve(name + extension);
+    }
+
+    /** The existing file of a dataset, preferring the configured encoding, or {@code null}. */
+    public Path find(Path dir, String name) {
+        Path preferred = path(dir, name);
+        if (Files.exists(preferred)) {
+            return preferred;
+        }
+        for (String candidate : EXTENSIONS) {
+            Path file = dir.resolve(name + candidate);
+            if (Files.exists(file)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Makes sure a dataset is stored in the configured encoding, converting and then removing
+     * a file written under another one.
+     *
+     * @return the dataset's path under the configured encoding
+     */
+    public Path migrate(Path dir, String name, Class<?> type) throws IOException {
+        Path target = path(dir, name);
+        Path source = find(dir, name);
+        if (source != null && !source.equals(target)) {
+            convert(source, target, type);
+            Files.delete(source);
+        }
+        return target;
+    }
+
+    public <T> void read(Path file, Class<T> type, Consumer<? super T> consumer) throws IOException {
+        try (InputStream in = open(file);
+             MappingIterator<T> records = mapper(file).readerFor(type).readValues(in)) {
+            while (records.hasNextValue()) {
+                consumer.accept(records.nextValue());
+            }
+        }
+    }
+
+    public void write(Path file, Iterable<?> records) throws IOException {
+        AtomicFiles.write(file, out -> {
+            GZIPOutputStream gzip = compressed(file) ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+            try (SequenceWriter sequence = writer(file).writeValuesAsArray(gzip != null ? gzip : out)) {
+                for (Object record : records) {
+                    sequence.write(record);
+                }
+            }
+            if (gzip != null) {
+                gzip.finish();
+            }
+        });
+    }
+
+    /** Re-encodes a file record by record, e.g. from JSON to compressed Smile. */
+    public void convert(Path source, Path target, Class<?> type) throws IOException {
+        AtomicFiles.write(target, out -> {
+            GZIPOutputStream gzip = compressed(target) ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+            try (SequenceWriter sequence = writer(target).writeValuesAsArray(gzip != null ? gzip : out)) {
+                read(source, type, record -> {
+                    try {
+                        sequence.write(record);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (gzip != null) {
+                gzip.finish();
+            }
+        });
+    }
+
+    private InputStream open(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        return compressed(file) ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+    }
+
+    private static ObjectWriter writer(Path file) {
+        return smile(file) ? SMILE_WRITER : JSON_WRITER;
+    }
+
+    private static ObjectMapper mapper(Path file) {
+        return smile(file) ? StorageJson.SMILE_MAPPER : StorageJson.MAPPER;
+    }
+
+    private static boolean smile(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(SMILE) || name.endsWith(SMILE + GZIP);
+    }
+
+    private static boolean compressed(Path file) {
+        return file.getFileName().toString().endsWith(GZIP);
+    }
+}
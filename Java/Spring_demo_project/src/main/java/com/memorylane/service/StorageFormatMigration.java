@@ -0,0 +1,55 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.StorageProperties;
+import com.memorylane.model.Comment;
+import com.memorylane.model.Like;
+import com.memorylane.model.Message;
+import com.memorylane.model.User;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts the {@code json-file} backend's data files to another encoding ahead of a
+ * deployment, so the first startup with the new {@code memorylane.storage.format} does not
+ * pay for the conversion. Run it while the application is stopped:
+ *
+ * <pre>gradle migrateDataFiles --args="data smile --gzip"</pre>
+ *
+ * Journal snapshots are left alone; they are still read in their old encoding and the next
+ * compaction writes the new one.
+ */
+public final class StorageFormatMigration {
+
+    private StorageFormatMigration() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3 || (args.length == 3 && !args[2].equals("--gzip"))) {
+            System.err.println("Usage: StorageFormatMigration <data-dir> <json|smile> [--gzip]");
+            System.exit(2);
+        }
+        Path dataDir = Paths.get(args[0]);
+        StorageProperties.Format format = StorageProperties.Format.valueOf(args[1].toUpperCase());
+        boolean compress = args.length == 3;
+
+        RecordFiles files = new RecordFiles(format, compress);
+        migrate(files, dataDir, "comments", Comment.class);
+        migrate(files, dataDir, "likes", Like.class);
+        migrate(files, dataDir, "users", User.class);
+        migrate(files, dataDir, "messages", Message.class);
+    }
+
+    private static void migrate(RecordFiles files, Path dataDir, String name, Class<?> type) throws IOException {
+        Path source = files.find(dataDir, name);
+        if (source == null) {
+            System.out.println(name + ": no data file, skipped");
+            return;
+        }
+        long before = Files.size(source);
+        Path target = files.migrate(dataDir, name, type);
+        System.out.printf("%s: %s (%,d bytes) -> %s (%,d bytes)%n", name, source.getFileName(), before,
+                target.getFileName(), Files.size(target));
+    }
+}
@@ -0,0 +1,200 @@
+package com.memorylane.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only write-ahead log for one dataset.
+ *
+ * Every mutation is appended as one JSON line to the active segment. Segments roll once
+ * they reach the configured size; the compactor folds sealed segments into a numbered
+ * snapshot and only then deletes them. Recovery loads the newest snapshot and replays the
+ * segments written after it, so a crash at any point never applies an entry twice.
+ * Segments are always JSON lines; snapshots use the configured {@link RecordFiles} encoding,
+ * and a snapshot written under an earlier encoding is still found and read.
+ */
+public class StorageJournal implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ObjectReader ENTRY_READER = StorageJson.reader(JournalEntry.class);
+    // One entry per line, with nothing between the values but the newline written after each
+    private static final ObjectWriter ENTRY_WRITER = StorageJson.writer(JournalEntry.class)
+            .withRootValueSeparator((String) null);
+
+    private final Path dir;
+    private final RecordFiles snapshots;
+    private final long segmentSize;
+    private final boolean fsync;
+
+    private FileChannel active;
+    private OutputStream activeOut;
+    private long activeIndex;
+    private long activeBytes;
+
+    public StorageJournal(Path dir, RecordFiles snapshots, long segmentSize, boolean fsync) throws IOException {
+        this.dir = dir;
+        this.snapshots = snapshots;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        Files.createDirectories(dir);
+        this.activeIndex = Math.max(lastIndex(SEGMENT_PREFIX), latestSnapshotIndex()) + 1;
+    }
+
+    /** Index of the newest snapshot, or 0 when the dataset has never been compacted. */
+    public long latestSnapshotIndex() throws IOException {
+        return lastIndex(SNAPSHOT_PREFIX);
+    }
+
+    /** The snapshot file with the given index, in whichever encoding it was written. */
+    public Path snapshotPath(long index) {
+        Path existing = snapshots.find(dir, snapshotName(index));
+        return existing != null ? existing : snapshots.path(dir, snapshotName(index));
+    }
+
+    public boolean hasSegments() throws IOException {
+        return !indexes(SEGMENT_PREFIX).isEmpty();
+    }
+
+    /** Replays, oldest first, every entry in the segments newer than the given snapshot. */
+    public void replay(long afterSnapshot, Consumer<JournalEntry> consumer) throws IOException {
+        for (long index : indexes(SEGMENT_PREFIX)) {
+            if (index <= afterSnapshot) {
+                continue;
+            }
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(segmentPath(index)), BUFFER_SIZE);
+                 MappingIterator<JournalEntry> entries = ENTRY_READER.readValues(in)) {
+                while (entries.hasNextValue()) {
+                    consumer.accept(entries.nextValue());
+                }
+            } catch (JsonProcessingException e) {
+                // A torn entry can only be the tail of a segment interrupted by a crash
+                System.err.println("Ignoring torn journal tail in " + segmentPath(index) + ": " + e.getOriginalMessage());
+            }
+        }
+    }
+
+    public void append(JournalEntry entry) throws IOException {
+        appendAll(List.of(entry));
+    }
+
+    /** Appends a batch of entries with one buffered write and, if enabled, a single fsync. */
+    public synchronized void appendAll(List<JournalEntry> entries) throws IOException {
+        if (active == null) {
+            active = FileChannel.open(segmentPath(activeIndex),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            activeBytes = active.size();
+            activeOut = new BufferedOutputStream(Channels.newOutputStream(active), BUFFER_SIZE);
+        }
+
+        // Entries are encoded straight into the segment's buffer; a batch that fits is one write
+        try (JsonGenerator generator = ENTRY_WRITER.createGenerator(activeOut)) {
+            for (JournalEntry entry : entries) {
+                ENTRY_WRITER.writeValue(generator, entry);
+                generator.writeRaw('\n');
+            }
+        }
+        activeOut.flush();
+        activeBytes = active.position();
+        if (fsync) {
+            active.force(false);
+        }
+
+        if (activeBytes >= segmentSize) {
+            roll();
+        }
+    }
+
+    /**
+     * Seals the active segment so later appends go to a new one.
+     *
+     * @return the index up to which segments are sealed and may be folded into a snapshot
+     */
+    public synchronized long roll() throws IOException {
+        if (active != null) {
+            closeActive();
+            activeIndex++;
+        }
+        return activeIndex - 1;
+    }
+
+    /** Atomically writes the snapshot covering every segment up to {@code index}. */
+    public void writeSnapshot(long index, Iterable<?> records) throws IOException {
+        snapshots.write(snapshots.path(dir, snapshotName(index)), records);
+    }
+
+    /** Drops the segments and older snapshots made redundant by snapshot {@code index}. */
+    public void deleteThrough(long index) throws IOException {
+        for (long segment : indexes(SEGMENT_PREFIX)) {
+            if (segment <= index) {
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        }
+        for (long snapshot : indexes(SNAPSHOT_PREFIX)) {
+            if (snapshot < index) {
+                Files.deleteIfExists(snapshotPath(snapshot));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            closeActive();
+        }
+    }
+
+    private void closeActive() throws IOException {
+        activeOut.close();
+        active.close();
+        active = null;
+        activeOut = null;
+    }
+
+    private Path segmentPath(long index) {
+        return dir.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private static String snapshotName(long index) {
+        return String.format("%s%010d", SNAPSHOT_PREFIX, index);
+    }
+
+    private long lastIndex(String prefix) throws IOException {
+        List<Long> indexes = indexes(prefix);
+        return indexes.isEmpty() ? 0 : indexes.get(indexes.size() - 1);
+    }
+
+    // Any extension: snapshots may be in several encodings. Unfinished temp files are skipped
+    private List<Long> indexes(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && !name.endsWith(AtomicFiles.TEMP_SUFFIX)
+                            && name.indexOf('.', prefix.length()) > prefix.length())
+                    .map(name -> Long.parseLong(name.substring(prefix.length(), name.indexOf('.', prefix.length()))))
+                    .distinct()
+                    .sorted()
+                    .toList();
+        }
+    }
+}
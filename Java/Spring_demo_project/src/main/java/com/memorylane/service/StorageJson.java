@@ -0,0 +1,60 @@
+package com.memorylane.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The one Jackson configuration used for everything the storage backends persist.
+ *
+ * It is deliberately separate from the Spring MVC mapper, so {@code spring.jackson.*}
+ * settings can never change the on-disk format. Readers and writers are immutable and
+ * built once per type; writers leave the target stream open and unflushed, since callers
+ * stream several values into a file they still have to force.
+ */
+final class StorageJson {
+
+    static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            // Generated accessors instead of reflection for (de)serializing the models
+            .registerModule(new BlackbirdModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    // Same configuration, Smile encoded. Photo and author names repeat across records;
+    // shared string values store them once
+    static final ObjectMapper SMILE_MAPPER = MAPPER.copyWith(SmileFactory.builder()
+            .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+            .build());
+
+    private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+    private StorageJson() {}
+
+    static ObjectReader reader(Class<?> type) {
+        return READERS.computeIfAbsent(type, MAPPER::readerFor);
+    }
+
+    static ObjectWriter writer(Class<?> type) {
+        return WRITERS.computeIfAbsent(type, StorageJson::streamingWriter);
+    }
+
+    static ObjectWriter streamingWriter(ObjectMapper mapper, Class<?> type) {
+        return mapper.writerFor(type)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private static ObjectWriter streamingWriter(Class<?> type) {
+        return streamingWriter(MAPPER, type);
+    }
+}
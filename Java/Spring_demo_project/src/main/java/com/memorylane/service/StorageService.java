@@ -0,0 +1,96 @@
+package com.memorylane.service;
+
+import com.memorylane.model.Comment;
+import com.memorylane.model.Like;
+import com.memorylane.model.Message;
+import com.memorylane.model.User;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Metadata storage for comments, likes, users and messages.
+ *
+ * The backend is chosen with {@code memorylane.storage.backend}: {@code json-file} (the
+ * default, {@link FileStorageService}), {@code kv} ({@link KeyValueStorageService}) or
+ * {@code jpa} ({@link JpaStorageService}).
+ */
+public interface StorageService {
+
+    String BACKEND_PROPERTY = "memorylane.storage.backend";
+
+    // Comment operations
+    List<Comment> getAllComments();
+
+    /** Comments on a photo, oldest first. */
+    List<Comment> getCommentsByPhotoName(String photoName);
+
+    /** Assigns an id and creation time; returns {@code null} if the comment could not be stored. */
+    Comment saveComment(Comment comment);
+
+    void deleteComment(Long commentId);
+
+    void deleteCommentsByPhotoName(String photoName);
+
+    // Like operations
+    List<Like> getAllLikes();
+
+    List<Like> getLikesByPhotoName(String photoName);
+
+    long getLikeCount(String photoName);
+
+    boolean hasUserLikedPhoto(String photoName, String userName);
+
+    /**
+     * Atomically likes or unlikes a photo for a user.
+     *
+     * @return {@code true} if the user likes the photo afterwards
+     */
+    boolean toggleLike(String photoName, String userName);
+
+    Like saveLike(Like like);
+
+    void deleteLike(String photoName, String userName);
+
+    void deleteLikesByPhotoName(String photoName);
+
+    /**
+     * Deletes the comments and likes of all the photos at once: one pass over each dataset
+     * and one write, instead of one per photo.
+     */
+    void deleteByPhotoNames(Collection<String> photoNames);
+
+    // User operations
+    List<User> getAllUsers();
+
+    User getUserByUsername(String username);
+
+    User getUserByEmail(String email);
+
+    /**
+     * Registers a new user.
+     *
+     * @throws RuntimeException if the username or email is already taken
+     */
+    User saveUser(User user);
+
+    /** Returns the user and records the login if the password matches, otherwise {@code null}. */
+    User authenticateUser(String username, String password);
+
+    void updateUser(User user);
+
+    void deleteUser(Long userId);
+
+    // Message operations
+    List<Message> getAllMessages();
+
+    /** The most recently created message, or {@code null} if there is none. */
+    Message getLatestMessage();
+
+    /** Assigns an id and timestamp; returns {@code null} if the message could not be stored. */
+    Message saveMessage(Message message);
+
+    // Profile picture operations
+    String storeProfilePicture(MultipartFile file, String username);
+}
@@ -0,0 +1,302 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.UploadProperties;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Resumable uploads: a client creates a session for a file of known size, sends it in
+ * chunks at increasing offsets and, once every byte has arrived, completes it.
+ *
+ * Chunks are appended to a file on local disk and forced before they are acknowledged, so
+ * the offset a client is told is never lost, not even by a restart. A chunk cut off by a
+ * dropped connection keeps the bytes that arrived; the client asks for the offset and
+ * carries on from there. Sessions that see no chunk for {@code expire-after} are deleted.
+ */
+@Service
+public class UploadSessions {
+
+    /** {@code offset} is the number of bytes received so far. */
+    public record Session(String id, String fileName, String contentType, long size, long offset, Instant updated) {
+
+        public boolean isComplete() {
+            return offset == size;
+        }
+    }
+
+    /** Stores a session's content once it is complete. */
+    public interface Completion<T> {
+        T store(Session session, Path content) throws IOException;
+    }
+
+    record Metadata(String fileName, String contentType, long size) {}
+
+    private static final Pattern ID = Pattern.compile("[0-9a-f-]{36}");
+    private static final String CONTENT_SUFFIX = ".part";
+    private static final String METADATA_SUFFIX = ".json";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path dir;
+    private final Duration expireAfter;
+    private final long maxSize;
+    private final ScheduledExecutorService sweeper;
+
+    // One chunk, completion or cancellation at a time per session
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    public UploadSessions(UploadProperties properties) throws IOException {
+        UploadProperties.Sessions sessions = properties.getSessions();
+        this.dir = Paths.get(sessions.getDir());
+        this.expireAfter = sessions.getExpireAfter();
+        this.maxSize = sessions.getMaxSize().toBytes();
+        Files.createDirectories(dir);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-sessions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(60_000, Math.min(expireAfter.toMillis() / 4, 3_600_000));
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                expire();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error expiring upload sessions: " + e.getMessage());
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /** Starts a session for {@code size} bytes; throws IllegalArgumentException for an unacceptable size. */
+    public Session create(String fileName, String contentType, long size) throws IOException {
+        if (size <= 0 || size > maxSize) {
+            throw new IllegalArgumentException("Size must be between 1 and " + maxSize + " bytes");
+        }
+        String id = UUID.randomUUID().toString();
+        Files.createFile(contentPath(id));
+        Metadata metadata = new Metadata(fileName, contentType, size);
+        AtomicFiles.write(metadataPath(id), out -> StorageJson.writer(Metadata.class).writeValue(out, metadata));
+        return get(id);
+    }
+
+    /** The session, or {@code null} if there is none with that id or it has expired. */
+    public Session get(String id) throws IOException {
+        if (!ID.matcher(id).matches() || !Files.exists(metadataPath(id))) {
+            return null;
+        }
+        try {
+            Metadata metadata = StorageJson.reader(Metadata.class).readValue(metadataPath(id).toFile());
+            Path content = contentPath(id);
+            return new Session(id, metadata.fileName(), metadata.contentType(), metadata.size(),
+                    Files.size(content), Files.getLastModifiedTime(content).toInstant());
+        } catch (NoSuchFileException e) {
+            return null; // expired or cancelled meanwhile
+        }
+    }
+
+    /**
+     * Appends a chunk that starts at {@code offset}.
+     *
+     * @return the session after the chunk, or {@code null} if there is no such session
+     * @throws IllegalStateException if the offset is not the number of bytes received so
+     *         far, or another request is writing to the session
+     * @throws IllegalArgumentException if the chunk runs past the session's size; the bytes
+     *         up to the size are kept
+     */
+    public Session append(String id, long offset, InputStream chunk) throws IOException {
+        if (!ID.matcher(id).matches()) {
+            return null;
+        }
+        ReentrantLock lock = lock(id, false);
+        if (lock == null) {
+            throw new IllegalStateException("Another chunk of " + id + " is being written");
+        }
+        boolean gone = false;
+        try {
+            Session session = get(id);
+            if (session == null) {
+                gone = true;
+                return null;
+            }
+            if (offset != session.offset()) {
+                throw new IllegalStateException("Expected offset " + session.offset() + ", got " + offset);
+            }
+            boolean tooLong;
+            try (FileChannel channel = FileChannel.open(contentPath(id), StandardOpenOption.WRITE)) {
+                channel.position(offset);
+                try {
+                    tooLong = copy(chunk, channel, session.size() - offset);
+                } finally {
+                    // Whatever arrived before a dropped connection counts
+                    channel.force(false);
+                }
+            }
+            Files.setLastModifiedTime(contentPath(id), FileTime.from(Instant.now()));
+            if (tooLong) {
+                throw new IllegalArgumentException("Chunk runs past the size of " + id);
+            }
+            return get(id);
+        } finally {
+            unlock(id, lock, gone);
+        }
+    }
+
+    /**
+     * Hands a complete session's content to {@code completion} and deletes the session once
+     * it succeeds; if it fails, the session stays so completing can be retried.
+     *
+     * @return what the completion returned, or {@code null} if there is no such session
+     * @throws IllegalStateException if bytes are still missing or a chunk is being written
+     */
+    public <T> T complete(String id, Completion<T> completion) throws IOException {
+        if (!ID.matcher(id).matches()) {
+            return null;
+        }
+        ReentrantLock lock = lock(id, false);
+        if (lock == null) {
+            throw new IllegalStateException("A chunk of " + id + " is being written");
+        }
+        boolean gone = false;
+        try {
+            Session session = get(id);
+            if (session == null) {
+                gone = true;
+                return null;
+            }
+            if (!session.isComplete()) {
+                throw new IllegalStateException(id + " has " + session.offset() + " of " + session.size() + " bytes");
+            }
+            T result = completion.store(session, contentPath(id));
+            delete(id);
+            gone = true;
+            return result;
+        } finally {
+            // A failed completion keeps the session, and with it the lock, for the retry
+            unlock(id, lock, gone);
+        }
+    }
+
+    /** Deletes a session and what it staged; false if there was none. */
+    public boolean cancel(String id) throws IOException {
+        if (!ID.matcher(id).matches()) {
+            return false;
+        }
+        ReentrantLock lock = lock(id, true);
+        try {
+            return delete(id);
+        } finally {
+            unlock(id, lock, true);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    void expire() throws IOException {
+        Instant cutoff = Instant.now().minus(expireAfter);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + METADATA_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String id = name.substring(0, name.length() - METADATA_SUFFIX.length());
+                Path content = contentPath(id);
+                Instant updated = Files.exists(content)
+                        ? Files.getLastModifiedTime(content).toInstant()
+                        : Files.getLastModifiedTime(file).toInstant();
+                if (!updated.isBefore(cutoff)) {
+                    continue;
+                }
+                // A session being written to is not stale
+                ReentrantLock lock = lock(id, false);
+                if (lock != null) {
+                    try {
+                        System.err.println("Expiring upload session " + id);
+                        delete(id);
+                    } finally {
+                        unlock(id, lock, true);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Locks a session, or returns {@code null} if {@code wait} is false and another request
+     * holds it. A lock leaves the map only while held, by the request that found the session
+     * gone, so one taken from the map is checked to still be there once acquired; otherwise
+     * two requests could hold different locks for one session.
+     */
+    private ReentrantLock lock(String id, boolean wait) {
+        while (true) {
+            ReentrantLock lock = locks.computeIfAbsent(id, key -> new ReentrantLock());
+            if (wait) {
+                lock.lock();
+            } else if (!lock.tryLock()) {
+                return null;
+            }
+            if (locks.get(id) == lock) {
+                return lock;
+            }
+            lock.unlock();
+        }
+    }
+
+    // Removes the lock before releasing it if the session no longer exists
+    private void unlock(String id, ReentrantLock lock, boolean gone) {
+        if (gone) {
+            locks.remove(id, lock);
+        }
+        lock.unlock();
+    }
+
+    // Caller holds the session's lock; metadata goes first, so a half-deleted session is gone
+    private boolean delete(String id) throws IOException {
+        boolean existed = Files.deleteIfExists(metadataPath(id));
+        Files.deleteIfExists(contentPath(id));
+        return existed;
+    }
+
+    // Copies at most limit bytes; true if the stream had more
+    private static boolean copy(InputStream in, FileChannel channel, long limit) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = limit;
+        int read;
+        while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) >= 0) {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            remaining -= read;
+        }
+        return remaining == 0 && in.read() >= 0;
+    }
+
+    private Path contentPath(String id) {
+        return dir.resolve(id + CONTENT_SUFFIX);
+    }
+
+    private Path metadataPath(String id) {
+        return dir.resolve(id + METADATA_SUFFIX);
+    }
+}
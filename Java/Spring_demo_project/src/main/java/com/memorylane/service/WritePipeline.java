@@ -0,0 +1,162 @@
+package com.memorylane.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Single-writer group commit.
+ *
+ * Request threads {@link #submit} items and get a future back; one writer thread drains
+ * the queue in batches of up to {@code maxBatchSize}, waiting at most {@code maxWait} for
+ * a batch to fill, hands each batch to the {@link BatchWriter} and then completes every
+ * future in it. Concurrent writers therefore share one write and one fsync instead of
+ * contending for the file.
+ *
+ * Submitters share a read lock while queueing and closing takes the write lock, so once
+ * {@link #close} has stopped the pipeline nothing can be queued behind the writer's final
+ * drain; whatever is still queued when the writer exits is failed, never dropped.
+ */
+public class WritePipeline<T> implements AutoCloseable {
+
+    public interface BatchWriter<T> {
+        void write(List<T> batch) throws IOException;
+    }
+
+    private static final class Pending<T> {
+        final T item;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(T item) {
+            this.item = item;
+        }
+    }
+
+    private final BlockingQueue<Pending<T>> queue = new LinkedBlockingQueue<>();
+    private final BatchWriter<T> batchWriter;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final Thread writer;
+    private final ReadWriteLock state = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+
+    public WritePipeline(String name, BatchWriter<T> batchWriter, int maxBatchSize, long maxWaitNanos) {
+        this.batchWriter = batchWriter;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWaitNanos;
+        this.writer = new Thread(this::run, name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /** Queues an item; the future completes once the batch containing it has been written. */
+    public CompletableFuture<Void> submit(T item) {
+        return enqueue(new Pending<>(item));
+    }
+
+    /** Completes once every item submitted before this call has been written. */
+    public CompletableFuture<Void> sync() {
+        return enqueue(new Pending<>(null));
+    }
+
+    private CompletableFuture<Void> enqueue(Pending<T> pending) {
+        state.readLock().lock();
+        try {
+            if (!running) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Write pipeline is closed"));
+            }
+            queue.add(pending);
+            return pending.done;
+        } finally {
+            state.readLock().unlock();
+        }
+    }
+
+    private void run() {
+        List<Pending<T>> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending<T> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fill(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stop();
+            }
+            writeBatch(batch);
+            batch.clear();
+        }
+        // Anything queued before the pipeline stopped is still written
+        queue.drainTo(batch);
+        writeBatch(batch);
+    }
+
+    private void stop() {
+        state.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            state.writeLock().unlock();
+        }
+    }
+
+    private void fill(List<Pending<T>> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                return;
+            }
+            Pending<T> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void writeBatch(List<Pending<T>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<T> items = new ArrayList<>(batch.size());
+        for (Pending<T> pending : batch) {
+            if (pending.item != null) {
+                items.add(pending.item);
+            }
+        }
+        try {
+            if (!items.isEmpty()) {
+                batchWriter.write(items);
+            }
+            batch.forEach(pending -> pending.done.complete(null));
+        } catch (IOException | RuntimeException e) {
+            batch.forEach(pending -> pending.done.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Stops accepting items, writes everything already queued and waits for the writer.
+     * The writer is not interrupted: that would close the FileChannel it may be writing to.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        stop();
+        writer.join();
+
+        List<Pending<T>> left = new ArrayList<>();
+        queue.drainTo(left);
+        IllegalStateException closed = new IllegalStateException("Write pipeline closed before the item was written");
+        left.forEach(pending -> pending.done.completeExceptionally(closed));
+    }
+}
@@ -0,0 +1,111 @@
+package com.memorylane.controller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalFilesTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void contentTypeFollowsTheExtension() {
+        assertEquals("image/png", LocalFiles.contentType("a.png").toString());
+        assertEquals("image/webp", LocalFiles.contentType("a.webp").toString());
+        assertEquals("audio/mpeg", LocalFiles.contentType("a.mp3").toString());
+        assertEquals("audio/mp4", LocalFiles.contentType("a.m4a").toString());
+        assertEquals("application/octet-stream", LocalFiles.contentType("a.unknown").toString());
+    }
+
+    @Test
+    void rangeIsServedAsPartialContent() throws IOException {
+        Path file = Files.writeString(dir.resolve("song.mp3"), "0123456789");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/song.mp3");
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        LocalFiles.serve(file, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, response.getContentLengthLong());
+        assertEquals("audio/mpeg", response.getContentType());
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    void unsatisfiableRangeIsRejected() throws IOException {
+        Path file = Files.writeString(dir.resolve("photo.png"), "0123456789");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photo.png");
+        request.addHeader(HttpHeaders.RANGE, "bytes=20-30");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        LocalFiles.serve(file, request, response);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void bodyIsLeftToSendfileWhenTheConnectorSupportsIt() throws IOException {
+        Path file = Files.writeString(dir.resolve("photo.png"), "0123456789");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photo.png");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        LocalFiles.serve(file, request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(10, response.getContentLengthLong());
+        assertEquals(0L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(10L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void unchangedFileIsAnsweredWithNotModified() throws IOException {
+        Path file = Files.writeString(dir.resolve("photo_1751812459000.png"), "0123456789");
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        LocalFiles.serve(file, new MockHttpServletRequest("GET", "/photo.png"), first);
+        String eTag = first.getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+        assertEquals("max-age=31536000, public, immutable", first.getHeader(HttpHeaders.CACHE_CONTROL));
+
+        MockHttpServletRequest revalidation = new MockHttpServletRequest("GET", "/photo.png");
+        revalidation.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        LocalFiles.serve(file, revalidation, second);
+
+        assertEquals(304, second.getStatus());
+        assertEquals(0, second.getContentAsByteArray().length);
+    }
+
+    @Test
+    void rangeOfAnInMemoryCopyIsServedFromTheBuffer() throws IOException {
+        ByteBuffer content = ByteBuffer.allocateDirect(10).put("0123456789".getBytes(StandardCharsets.US_ASCII)).flip();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/song.mp3");
+        request.addHeader(HttpHeaders.RANGE, "bytes=6-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        LocalFiles.serve(content.asReadOnlyBuffer(), "song.mp3", MediaType.parseMediaType("audio/mpeg"), "\"abc\"", -1,
+                CachePolicy.forFile("song.mp3"), request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 6-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("\"abc\"", response.getHeader(HttpHeaders.ETAG));
+        assertEquals("6789", response.getContentAsString());
+        assertEquals(0, content.position());
+    }
+}
@@ -0,0 +1,312 @@
+package com.memorylane.controller;
+
+import com.memorylane.service.ImageVariants;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = "memorylane.cache.enabled=false")
+@AutoConfigureMockMvc
+class R2UploadControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private S3Client s3;
+
+    @MockitoBean
+    private S3AsyncClient s3Async;
+
+    @MockitoBean
+    private ImageVariants imageVariants;
+
+    @SuppressWarnings("unchecked")
+    private void respondWith(GetObjectResponse response, String body) {
+        when(s3Async.getObject(any(Consumer.class), any(AsyncResponseTransformer.class))).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(new ResponseInputStream<>(response,
+                        AbortableInputStream.create(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))))));
+    }
+
+    // Waits for the bucket's answer, then for the streamed body
+    private ResultActions fetch(MockHttpServletRequestBuilder get) throws Exception {
+        MvcResult result = mockMvc.perform(get)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult answered = mockMvc.perform(asyncDispatch(result)).andReturn();
+        return answered.getRequest().isAsyncStarted()
+                ? mockMvc.perform(asyncDispatch(answered))
+                : mockMvc.perform(asyncDispatch(result));
+    }
+
+    // What the controller asked the bucket for
+    @SuppressWarnings("unchecked")
+    private GetObjectRequest bucketRequest() {
+        Consumer<GetObjectRequest.Builder> request = (Consumer<GetObjectRequest.Builder>)
+                mockingDetails(s3Async).getInvocations().stream()
+                        .filter(invocation -> invocation.getMethod().getName().equals("getObject"))
+                        .findFirst().orElseThrow().getArgument(0);
+        GetObjectRequest.Builder builder = GetObjectRequest.builder();
+        request.accept(builder);
+        return builder.build();
+    }
+
+    @Test
+    void rangeIsPassedToTheBucketAndAnsweredWithPartialContent() throws Exception {
+        respondWith(GetObjectResponse.builder().contentLength(4L).contentRange("bytes 2-5/10").build(), "2345");
+
+        fetch(get("/api/images/song.mp3").header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                .andExpect(content().contentType("audio/mpeg"))
+                .andExpect(content().string("2345"));
+        assertEquals("bytes=2-5", bucketRequest().range());
+    }
+
+    @Test
+    void wholeFileIsStreamedWithoutRange() throws Exception {
+        respondWith(GetObjectResponse.builder().contentLength(10L).eTag("\"abc\"").build(), "0123456789");
+
+        fetch(get("/api/images/photo_1751812459000.png"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"))
+                .andExpect(content().string("0123456789"));
+        assertNull(bucketRequest().range());
+        assertEquals("images/photo_1751812459000.png", bucketRequest().key());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void unchangedObjectIsAnsweredWithNotModifiedByTheBucket() throws Exception {
+        when(s3Async.getObject(any(Consumer.class), any(AsyncResponseTransformer.class))).thenReturn(
+                CompletableFuture.failedFuture(S3Exception.builder()
+                        .statusCode(304)
+                        .awsErrorDetails(AwsErrorDetails.builder()
+                                .sdkHttpResponse(SdkHttpResponse.builder().statusCode(304).putHeader("ETag", "\"abc\"").build())
+                                .build())
+                        .build()));
+
+        fetch(get("/api/images/photo.png").header(HttpHeaders.IF_NONE_MATCH, "\"abc\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, public"))
+                .andExpect(content().bytes(new byte[0]));
+        assertEquals("\"abc\"", bucketRequest().ifNoneMatch());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void slowBucketDoesNotHoldTheRequestThread() throws Exception {
+        CompletableFuture<ResponseInputStream<GetObjectResponse>> pending = new CompletableFuture<>();
+        when(s3Async.getObject(any(Consumer.class), any(AsyncResponseTransformer.class))).thenReturn(pending);
+
+        // The handler has returned while the bucket has not answered yet
+        MvcResult result = mockMvc.perform(get("/api/images/song.mp3"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertFalse(pending.isDone());
+
+        pending.complete(new ResponseInputStream<>(GetObjectResponse.builder().contentLength(4L).build(),
+                AbortableInputStream.create(new ByteArrayInputStream("late".getBytes(StandardCharsets.UTF_8)))));
+        MvcResult answered = mockMvc.perform(asyncDispatch(result)).andReturn();
+        mockMvc.perform(asyncDispatch(answered))
+                .andExpect(status().isOk())
+                .andExpect(content().string("late"));
+    }
+
+    @Test
+    void localUploadIsServedOnTheRequestThreadWithValidators() throws Exception {
+        Path file = Files.createDirectories(Path.of("uploads")).resolve("local_1751812459000.mp3");
+        Files.writeString(file, "0123456789");
+        try {
+            MvcResult result = mockMvc.perform(get("/api/images/local_1751812459000.mp3").header(HttpHeaders.RANGE, "bytes=2-5"))
+                    .andExpect(request().asyncNotStarted())
+                    .andExpect(status().isPartialContent())
+                    .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"))
+                    .andExpect(content().string("2345"))
+                    .andReturn();
+
+            mockMvc.perform(get("/api/images/local_1751812459000.mp3")
+                            .header(HttpHeaders.IF_NONE_MATCH, result.getResponse().getHeader(HttpHeaders.ETAG)))
+                    .andExpect(status().isNotModified());
+            verifyNoInteractions(s3Async);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void onlyTheStreamedBodyWaitsLongerThanTheDefaultTimeout() throws Exception {
+        respondWith(GetObjectResponse.builder().contentLength(4L).build(), "song");
+
+        MvcResult result = mockMvc.perform(get("/api/images/song.mp3"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertNotEquals(Duration.ofMinutes(30).toMillis(), result.getRequest().getAsyncContext().getTimeout());
+        MvcResult answered = mockMvc.perform(asyncDispatch(result)).andReturn();
+        assertEquals(Duration.ofMinutes(30).toMillis(), answered.getRequest().getAsyncContext().getTimeout());
+    }
+
+    @Test
+    void widthServesTheMatchingVariant() throws Exception {
+        when(imageVariants.resolve("photo.png", "images/photo.png", 300))
+                .thenReturn(CompletableFuture.completedFuture("variants/800/photo.png"));
+        respondWith(GetObjectResponse.builder().contentLength(5L).contentType("image/jpeg").build(), "small");
+
+        fetch(get("/api/images/photo.png").param("w", "300"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(content().string("small"));
+        assertEquals("variants/800/photo.png", bucketRequest().key());
+    }
+
+    @Test
+    void variantBeingMadeDoesNotHoldTheRequestThread() throws Exception {
+        CompletableFuture<String> resizing = new CompletableFuture<>();
+        when(imageVariants.resolve("photo.png", "images/photo.png", 300)).thenReturn(resizing);
+
+        // The handler has returned before the bucket is asked for anything
+        MvcResult result = mockMvc.perform(get("/api/images/photo.png").param("w", "300"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(0, mockingDetails(s3Async).getInvocations().size());
+
+        respondWith(GetObjectResponse.builder().contentLength(5L).contentType("image/jpeg").build(), "small");
+        resizing.complete("variants/800/photo.png");
+        MvcResult answered = mockMvc.perform(asyncDispatch(result)).andReturn();
+        mockMvc.perform(asyncDispatch(answered))
+                .andExpect(status().isOk())
+                .andExpect(content().string("small"));
+        assertEquals("variants/800/photo.png", bucketRequest().key());
+    }
+
+    @Test
+    void originalStandingInForAFailedResizeIsRevalidated() throws Exception {
+        when(imageVariants.resolve("photo_1751812459000.png", "images/photo_1751812459000.png", 300))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("Too many photos waiting to be resized")));
+        respondWith(GetObjectResponse.builder().contentLength(8L).build(), "original");
+
+        fetch(get("/api/images/photo_1751812459000.png").param("w", "300"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, public"))
+                .andExpect(content().string("original"));
+        assertEquals("images/photo_1751812459000.png", bucketRequest().key());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchStoresEachPhotoAndReportsPerFileResultsInOrder() throws Exception {
+        mockMvc.perform(multipart("/api/upload/batch")
+                        .file(new MockMultipartFile("files", "My Photo.png", "image/png", "not really a png".getBytes(StandardCharsets.UTF_8)))
+                        .file(new MockMultipartFile("files", "notes.txt", "text/plain", "hello".getBytes(StandardCharsets.UTF_8)))
+                        .file(new MockMultipartFile("files", "beach.jpg", "image/jpeg", "not really a jpeg".getBytes(StandardCharsets.UTF_8))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].originalFileName").value("My Photo.png"))
+                .andExpect(jsonPath("$[0].fileName").value(matchesPattern("My_Photo_\\d+\\.png")))
+                .andExpect(jsonPath("$[1].fileName").doesNotExist())
+                .andExpect(jsonPath("$[1].message").value("Only image files are allowed for photo upload"))
+                .andExpect(jsonPath("$[2].fileName").value(matchesPattern("beach_\\d+\\.jpg")));
+        verify(s3, times(2)).putObject(any(Consumer.class), any(RequestBody.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sameNamedPhotosInOneBatchGetTheirOwnKeys() throws Exception {
+        MockMultipartFile photo = new MockMultipartFile("files", "image.jpg", "image/jpeg", "not really a jpeg".getBytes(StandardCharsets.UTF_8));
+        MvcResult result = mockMvc.perform(multipart("/api/upload/batch").file(photo).file(photo).file(photo).file(photo))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        List<String> fileNames = JsonPath.read(result.getResponse().getContentAsString(), "$[*].fileName");
+        assertEquals(4, new HashSet<>(fileNames).size());
+        ArgumentCaptor<Consumer<PutObjectRequest.Builder>> requests = ArgumentCaptor.forClass(Consumer.class);
+        verify(s3, times(4)).putObject(requests.capture(), any(RequestBody.class));
+        Set<String> keys = new HashSet<>();
+        for (Consumer<PutObjectRequest.Builder> request : requests.getAllValues()) {
+            PutObjectRequest.Builder builder = PutObjectRequest.builder();
+            request.accept(builder);
+            keys.add(builder.build().key());
+        }
+        assertEquals(4, keys.size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void bulkDeleteSendsOneRequestAndReportsEachPhoto() throws Exception {
+        when(s3.deleteObjects(any(Consumer.class))).thenReturn(DeleteObjectsResponse.builder()
+                .errors(S3Error.builder().key("images/locked.png").code("AccessDenied").message("Access Denied").build())
+                .build());
+
+        mockMvc.perform(post("/api/images/delete")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"fileNames\":[\"gone.png\",\"song.mp3\",\"locked.png\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].key").value("images/gone.png"))
+                .andExpect(jsonPath("$[0].deleted").value(true))
+                .andExpect(jsonPath("$[1].deleted").value(false))
+                .andExpect(jsonPath("$[1].message").value("Only image files can be deleted"))
+                .andExpect(jsonPath("$[2].deleted").value(false))
+                .andExpect(jsonPath("$[2].message").value("Delete failed: AccessDenied: Access Denied"));
+        verify(s3, times(1)).deleteObjects(any(Consumer.class));
+    }
+}
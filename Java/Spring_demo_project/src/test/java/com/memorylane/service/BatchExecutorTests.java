@@ -0,0 +1,77 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.UploadProperties;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchExecutorTests {
+
+    private static BatchExecutor executor(int concurrency) {
+        UploadProperties properties = new UploadProperties();
+        properties.setBatchConcurrency(concurrency);
+        return new BatchExecutor(properties);
+    }
+
+    @Test
+    void resultsComeBackInTaskOrder() throws InterruptedException {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int value = i;
+            tasks.add(() -> {
+                // Later tasks finish first
+                Thread.sleep(40 - 2L * value);
+                return value;
+            });
+        }
+
+        List<Integer> results = executor(8).runAll(tasks, (index, e) -> -1);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, results.get(i));
+        }
+    }
+
+    @Test
+    void tasksRunConcurrentlyUpToTheCap() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                    return 0;
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+        }
+
+        executor(4).runAll(tasks, (index, e) -> -1);
+
+        assertTrue(maxRunning.get() > 1);
+        assertTrue(maxRunning.get() <= 4);
+    }
+
+    @Test
+    void failedTaskIsMappedWithoutFailingTheOthers() throws InterruptedException {
+        List<Callable<String>> tasks = List.of(
+                () -> "first",
+                () -> {
+                    throw new IOException("Bucket unreachable");
+                },
+                () -> "third");
+
+        List<String> results = executor(2).runAll(tasks, (index, e) -> index + ": " + e.getMessage());
+
+        assertEquals(List.of("first", "1: Bucket unreachable", "third"), results);
+    }
+}
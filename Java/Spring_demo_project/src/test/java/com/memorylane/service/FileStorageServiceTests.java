@@ -0,0 +1,228 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.StorageProperties;
+import com.memorylane.model.Comment;
+import com.memorylane.model.Like;
+import com.memorylane.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileStorageServiceTests {
+
+    @TempDir
+    Path dataDir;
+
+    private FileStorageService open(boolean journal) {
+        return open(journal, StorageProperties.Format.JSON, false);
+    }
+
+    private FileStorageService open(boolean journal, StorageProperties.Format format, boolean compress) {
+        StorageProperties properties = new StorageProperties();
+        properties.setDataDir(dataDir.toString());
+        properties.getJournal().setEnabled(journal);
+        properties.setFormat(format);
+        properties.setCompress(compress);
+        return new FileStorageService(properties);
+    }
+
+    @Test
+    void journalReplaysMutationsAfterRestart() {
+        FileStorageService storage = open(true);
+        storage.saveComment(new Comment("a.png", "first", "riya"));
+        Comment second = storage.saveComment(new Comment("a.png", "second", "riya"));
+        storage.saveComment(new Comment("b.png", "other", "riya"));
+        storage.deleteComment(second.getId());
+        storage.saveLike(new Like("a.png", "riya"));
+        storage.saveLike(new Like("a.png", "abc"));
+        storage.deleteLike("a.png", "abc");
+        storage.toggleLike("b.png", "riya");
+        storage.toggleLike("b.png", "abc");
+        storage.toggleLike("b.png", "abc");
+        storage.saveUser(new User("riya", "riya@example.com", "secret", "Riya"));
+        storage.authenticateUser("riya", "secret");
+        storage.close();
+
+        FileStorageService reopened = open(true);
+        assertEquals(1, reopened.getCommentsByPhotoName("a.png").size());
+        assertEquals("first", reopened.getCommentsByPhotoName("a.png").get(0).getCommentText());
+        assertEquals(1, reopened.getCommentsByPhotoName("b.png").size());
+        assertTrue(reopened.hasUserLikedPhoto("a.png", "riya"));
+        assertFalse(reopened.hasUserLikedPhoto("a.png", "abc"));
+        assertEquals(1, reopened.getLikeCount("b.png"));
+        assertTrue(reopened.hasUserLikedPhoto("b.png", "riya"));
+        assertNotNull(reopened.getUserByUsername("riya").getLastLoginAt());
+        reopened.close();
+    }
+
+    @Test
+    void bulkDeleteClearsEveryPhotoWithOneJournalEntryPerDataset() throws IOException {
+        FileStorageService storage = open(true);
+        storage.saveComment(new Comment("a.png", "first", "riya"));
+        storage.saveComment(new Comment("a.png", "second", "abc"));
+        storage.saveComment(new Comment("b.png", "other", "riya"));
+        storage.saveComment(new Comment("c.png", "kept", "riya"));
+        storage.saveLike(new Like("a.png", "riya"));
+        storage.saveLike(new Like("b.png", "abc"));
+        storage.saveLike(new Like("c.png", "riya"));
+
+        storage.deleteByPhotoNames(List.of("a.png", "b.png", "missing.png"));
+        storage.close();
+
+        for (String dataset : List.of("comments", "likes")) {
+            try (Stream<Path> segments = Files.list(dataDir.resolve("journal/" + dataset))) {
+                long entries = segments.filter(path -> path.toString().endsWith(".log"))
+                        .flatMap(path -> {
+                            try {
+                                return Files.readAllLines(path).stream();
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                        })
+                        .filter(line -> line.contains("\"deleteByPhotos\""))
+                        .count();
+                assertEquals(1, entries, dataset);
+            }
+        }
+
+        FileStorageService reopened = open(true);
+        assertTrue(reopened.getCommentsByPhotoName("a.png").isEmpty());
+        assertTrue(reopened.getCommentsByPhotoName("b.png").isEmpty());
+        assertEquals(1, reopened.getCommentsByPhotoName("c.png").size());
+        assertEquals(0, reopened.getLikeCount("a.png"));
+        assertEquals(0, reopened.getLikeCount("b.png"));
+        assertEquals(1, reopened.getLikeCount("c.png"));
+        reopened.close();
+    }
+
+    @Test
+    void tornJournalTailIsIgnored() throws IOException {
+        FileStorageService storage = open(true);
+        storage.saveComment(new Comment("a.png", "kept", "riya"));
+        storage.close();
+
+        try (Stream<Path> segments = Files.list(dataDir.resolve("journal/comments"))) {
+            Path segment = segments.filter(path -> path.toString().endsWith(".log")).findFirst().orElseThrow();
+            Files.writeString(segment, "{\"op\":\"add\",\"rec", StandardOpenOption.APPEND);
+        }
+
+        FileStorageService reopened = open(true);
+        assertEquals(1, reopened.getAllComments().size());
+        reopened.close();
+    }
+
+    @Test
+    void disablingJournalFoldsItBackIntoJsonFiles() {
+        FileStorageService storage = open(true);
+        storage.saveComment(new Comment("a.png", "journaled", "riya"));
+        storage.close();
+
+        FileStorageService plain = open(false);
+        assertEquals(1, plain.getAllComments().size());
+        assertFalse(Files.exists(dataDir.resolve("journal")));
+
+        FileStorageService reopened = open(false);
+        assertEquals("journaled", reopened.getAllComments().get(0).getCommentText());
+    }
+
+    @Test
+    void duplicateIdsAreRenumberedOnLoad() throws IOException {
+        Files.writeString(dataDir.resolve("comments.json"), """
+                [{"id":2,"photoName":"a.png","commentText":"one","authorName":"riya"},
+                 {"id":2,"photoName":"a.png","commentText":"two","authorName":"riya"},
+                 {"id":1,"photoName":"b.png","commentText":"three","authorName":"riya"}]""");
+
+        FileStorageService storage = open(false);
+        List<Comment> loaded = storage.getAllComments();
+        assertEquals(3, loaded.stream().map(Comment::getId).distinct().count());
+        Comment renumbered = loaded.stream().filter(comment -> comment.getCommentText().equals("two")).findFirst().orElseThrow();
+        assertEquals(3L, renumbered.getId());
+
+        storage.deleteComment(renumbered.getId());
+        assertEquals(List.of("one"), storage.getCommentsByPhotoName("a.png").stream().map(Comment::getCommentText).toList());
+        storage.close();
+
+        FileStorageService reopened = open(false);
+        assertEquals(2, reopened.getAllComments().size());
+        reopened.close();
+    }
+
+    @Test
+    void failedWriteTurnsTheStoreReadOnly() throws IOException {
+        FileStorageService storage = open(false);
+        assertNotNull(storage.saveComment(new Comment("a.png", "first", "riya")));
+
+        // A non-empty directory where the data file goes makes the rewrite fail
+        Files.delete(dataDir.resolve("comments.json"));
+        Files.createDirectories(dataDir.resolve("comments.json").resolve("blocked"));
+        assertNull(storage.saveComment(new Comment("a.png", "second", "riya")));
+
+        assertThrows(IllegalStateException.class, () -> storage.saveComment(new Comment("a.png", "third", "riya")));
+        assertThrows(IllegalStateException.class, () -> storage.toggleLike("a.png", "riya"));
+        assertFalse(storage.hasUserLikedPhoto("a.png", "riya"));
+        assertEquals(2, storage.getCommentsByPhotoName("a.png").size());
+        storage.close();
+    }
+
+    @Test
+    void usersAreHandedOutAsCopies() {
+        FileStorageService storage = open(false);
+        storage.saveUser(new User("riya", "riya@example.com", "secret", "Riya"));
+
+        User fetched = storage.getUserByUsername("riya");
+        fetched.setFullName("changed");
+        User authenticated = storage.authenticateUser("riya", "secret");
+        authenticated.setPassword("changed");
+
+        User stored = storage.getUserByEmail("riya@example.com");
+        assertEquals("Riya", stored.getFullName());
+        assertEquals("secret", stored.getPassword());
+        assertNotNull(stored.getLastLoginAt());
+        assertNotSame(stored, storage.getUserByEmail("riya@example.com"));
+        storage.close();
+    }
+
+    @Test
+    void idsAreNotReusedAfterRestart() {
+        FileStorageService storage = open(true);
+        Comment first = storage.saveComment(new Comment("a.png", "first", "riya"));
+        Comment second = storage.saveComment(new Comment("a.png", "second", "riya"));
+        storage.deleteComment(second.getId());
+        storage.close();
+
+        FileStorageService reopened = open(true);
+        Comment third = reopened.saveComment(new Comment("a.png", "third", "riya"));
+        assertTrue(third.getId() > second.getId());
+        assertNotEquals(first.getId(), third.getId());
+        reopened.close();
+    }
+
+    @Test
+    void changingFormatConvertsExistingFiles() {
+        FileStorageService storage = open(false);
+        storage.saveComment(new Comment("a.png", "first", "riya"));
+        storage.saveUser(new User("riya", "riya@example.com", "secret", "Riya"));
+        storage.close();
+
+        FileStorageService smile = open(false, StorageProperties.Format.SMILE, true);
+        assertFalse(Files.exists(dataDir.resolve("comments.json")));
+        assertTrue(Files.exists(dataDir.resolve("comments.smile.gz")));
+        assertEquals("first", smile.getCommentsByPhotoName("a.png").get(0).getCommentText());
+        smile.saveComment(new Comment("a.png", "second", "riya"));
+        smile.close();
+
+        FileStorageService reopened = open(false);
+        assertTrue(Files.exists(dataDir.resolve("comments.json")));
+        assertEquals(2, reopened.getCommentsByPhotoName("a.png").size());
+        assertNotNull(reopened.getUserByUsername("riya").getCreatedAt());
+        reopened.close();
+    }
+}
@@ -0,0 +1,117 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.ObjectCacheProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotObjectCacheTests {
+
+    @TempDir
+    Path dir;
+
+    // Room for three 10 byte objects
+    private final HotObjectCache cache = open(30, 10);
+
+    private static HotObjectCache open(long maxBytes, long maxObjectBytes) {
+        ObjectCacheProperties properties = new ObjectCacheProperties();
+        properties.getMemory().setMaxSize(DataSize.ofBytes(maxBytes));
+        properties.getMemory().setMaxObjectSize(DataSize.ofBytes(maxObjectBytes));
+        return new HotObjectCache(properties);
+    }
+
+    // A disk cache entry holding its own key, padded to ten bytes
+    private ObjectCache.CachedObject onDisk(String key) throws IOException {
+        Path file = Files.writeString(dir.resolve(key + ".bin"), (key + "..........").substring(0, 10));
+        return new ObjectCache.CachedObject(file, "\"" + key + "\"", null, "image/png", 10);
+    }
+
+    private void request(String key, int times) throws IOException {
+        for (int i = 0; i < times; i++) {
+            if (cache.get(key) == null) {
+                cache.offer(key, onDisk(key)).join();
+            }
+        }
+    }
+
+    @Test
+    void offeredObjectIsServedFromAnOffHeapBuffer() throws IOException {
+        assertNull(cache.get("a.png"));
+        cache.offer("a.png", onDisk("a.png")).join();
+
+        HotObjectCache.HotObject hot = cache.get("a.png");
+
+        assertNotNull(hot);
+        assertTrue(hot.content().isDirect());
+        assertTrue(hot.content().isReadOnly());
+        assertEquals("a.png.....", StandardCharsets.US_ASCII.decode(hot.content()).toString());
+        // Each lookup gets its own position
+        assertEquals(10, cache.get("a.png").content().remaining());
+        assertEquals("\"a.png\"", hot.eTag());
+        HotObjectCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(10, stats.bytes());
+    }
+
+    @Test
+    void oneOffRequestsDoNotDisplacePopularObjects() throws IOException {
+        request("a.png", 3);
+        request("b.png", 3);
+        request("c.png", 3);
+
+        request("d.png", 1);
+        assertNotNull(cache.get("a.png"));
+        assertEquals(1, cache.stats().rejections());
+
+        // Once requested more often than the least recently used entry, it takes that place
+        request("d.png", 5);
+        assertNotNull(cache.get("d.png"));
+        assertNull(cache.get("b.png"));
+        HotObjectCache.Stats stats = cache.stats();
+        assertEquals(1, stats.evictions());
+        assertEquals(3, stats.entries());
+        assertEquals(30, stats.bytes());
+    }
+
+    @Test
+    void objectsOverTheSizeLimitAreNotCopied() throws IOException {
+        HotObjectCache small = open(30, 5);
+        small.offer("a.png", onDisk("a.png")).join();
+
+        assertNull(small.get("a.png"));
+        assertEquals(0, small.stats().entries());
+    }
+
+    @Test
+    void invalidateDropsTheCopy() throws IOException {
+        request("a.png", 1);
+
+        cache.invalidate("a.png");
+
+        assertNull(cache.get("a.png"));
+        assertEquals(0, cache.stats().bytes());
+    }
+
+    @Test
+    void sketchCountsSaturateAndAge() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("song.mp3");
+        }
+        assertEquals(15, sketch.frequency("song.mp3"));
+        assertEquals(0, sketch.frequency("never-seen.png"));
+
+        for (int i = 0; i < 160; i++) {
+            sketch.increment("photo-" + i + ".png");
+        }
+        assertTrue(sketch.frequency("song.mp3") < 15);
+    }
+}
@@ -0,0 +1,199 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.ImageOptimizationProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageOptimizerTests {
+
+    private final List<ImageOptimizer> optimizers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        optimizers.forEach(ImageOptimizer::close);
+    }
+
+    private ImageOptimizer open(boolean enabled, DataSize pngConversionThreshold) {
+        ImageOptimizationProperties properties = new ImageOptimizationProperties();
+        properties.setEnabled(enabled);
+        properties.setPngConversionThreshold(pngConversionThreshold);
+        ImageOptimizer optimizer = new ImageOptimizer(properties);
+        optimizers.add(optimizer);
+        return optimizer;
+    }
+
+    // A smooth, photo-like picture, encoded as the given format
+    private static byte[] picture(int type, String format) throws IOException {
+        BufferedImage image = new BufferedImage(640, 480, type);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.PINK, 640, 480, Color.BLUE));
+        graphics.fillRect(0, 0, 640, 480);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    // The same with a camera's metadata: an EXIF segment saying it is turned 90° and a large comment
+    private static byte[] cameraJpeg() throws IOException {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        ImageVariants.writeJpeg(image, 1.0f, jpeg);
+        byte[] pixels = jpeg.toByteArray();
+        byte[] exif = {
+                (byte) 0xFF, (byte) 0xE1, 0, 34, 'E', 'x', 'i', 'f', 0, 0,
+                'M', 'M', 0, 42, 0, 0, 0, 8,
+                0, 1,
+                0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 6, 0, 0,
+                0, 0, 0, 0
+        };
+        byte[] comment = new byte[60_000];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(pixels, 0, 2);
+        out.write(exif);
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xFE, (byte) ((comment.length + 2) >> 8), (byte) (comment.length + 2)});
+        out.write(comment);
+        out.write(pixels, 2, pixels.length - 2);
+        return out.toByteArray();
+    }
+
+    @Test
+    void jpegLosesItsMetadataButStaysUpright() throws IOException {
+        byte[] original = cameraJpeg();
+        ImageOptimizer optimizer = open(true, DataSize.ofMegabytes(1));
+
+        ImageOptimizer.Optimized optimized = optimizer.optimize("camera.jpg",
+                new MockMultipartFile("file", original), "image/jpeg", original.length);
+
+        assertNotNull(optimized);
+        try {
+            byte[] stored = Files.readAllBytes(optimized.file());
+            assertTrue(stored.length < original.length);
+            assertEquals(ExifOrientation.NORMAL, ExifOrientation.read(stored));
+            BufferedImage upright = ImageIO.read(optimized.file().toFile());
+            assertEquals(480, upright.getWidth());
+            assertEquals(640, upright.getHeight());
+            assertEquals("image/jpeg", optimized.contentType());
+        } finally {
+            optimized.delete();
+        }
+        ImageOptimizer.Stats stats = optimizer.stats();
+        assertEquals(1, stats.optimized());
+        assertEquals(original.length, stats.originalBytes());
+        assertEquals(optimized.size(), stats.storedBytes());
+    }
+
+    @Test
+    void jpegThatWouldNotShrinkIsStoredWithoutItsMetadata() throws IOException {
+        // Already compressed harder than the optimizer would, with an EXIF segment and a comment
+        BufferedImage image = ImageIO.read(new java.io.ByteArrayInputStream(picture(BufferedImage.TYPE_INT_RGB, "png")));
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageVariants.writeJpeg(image, 0.05f, jpeg);
+        byte[] pixels = jpeg.toByteArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(pixels, 0, 2);
+        out.write(ExifOrientation.segment(6));
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xFE, 0, 10, 'G', 'P', 'S', ' ', '5', '2', '.', '5'});
+        out.write(pixels, 2, pixels.length - 2);
+        byte[] original = out.toByteArray();
+        ImageOptimizer optimizer = open(true, DataSize.ofMegabytes(1));
+
+        ImageOptimizer.Optimized optimized = optimizer.optimize("shared.jpg",
+                new MockMultipartFile("file", original), "image/jpeg", original.length);
+
+        assertNotNull(optimized);
+        try {
+            byte[] stored = Files.readAllBytes(optimized.file());
+            assertEquals(original.length - 12, stored.length);
+            assertFalse(new String(stored, java.nio.charset.StandardCharsets.ISO_8859_1).contains("GPS"));
+            assertEquals(6, ExifOrientation.read(stored));
+            assertEquals("image/jpeg", optimized.contentType());
+            assertEquals(640, ImageIO.read(optimized.file().toFile()).getWidth());
+        } finally {
+            optimized.delete();
+        }
+    }
+
+    @Test
+    void uploadOverThePixelLimitIsOnlyStripped() throws IOException {
+        byte[] original = cameraJpeg();
+        ImageOptimizationProperties properties = new ImageOptimizationProperties();
+        properties.setEnabled(true);
+        properties.setMaxPixels(640 * 480 - 1);
+        ImageOptimizer optimizer = new ImageOptimizer(properties);
+        optimizers.add(optimizer);
+
+        ImageOptimizer.Optimized optimized = optimizer.optimize("panorama.jpg",
+                new MockMultipartFile("file", original), "image/jpeg", original.length);
+
+        assertNotNull(optimized);
+        try {
+            // The 60 KB comment is gone, the pixels are not turned
+            assertTrue(optimized.size() < original.length - 60_000);
+            assertEquals(6, ExifOrientation.read(Files.readAllBytes(optimized.file())));
+            assertEquals(640, ImageIO.read(optimized.file().toFile()).getWidth());
+        } finally {
+            optimized.delete();
+        }
+    }
+
+    @Test
+    void largeOpaquePngBecomesJpeg() throws IOException {
+        byte[] screenshot = picture(BufferedImage.TYPE_INT_ARGB, "png");
+        ImageOptimizer optimizer = open(true, DataSize.ofBytes(1));
+
+        ImageOptimizer.Optimized optimized = optimizer.optimize("screenshot.png",
+                new MockMultipartFile("file", screenshot), "image/png", screenshot.length);
+
+        assertNotNull(optimized);
+        optimized.delete();
+        assertEquals("image/jpeg", optimized.contentType());
+    }
+
+    @Test
+    void transparentPngStaysPng() throws IOException {
+        byte[] logo = picture(BufferedImage.TYPE_INT_ARGB, "png");
+        BufferedImage image = ImageIO.read(new java.io.ByteArrayInputStream(logo));
+        image.setRGB(0, 0, 0x00000000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        byte[] transparent = out.toByteArray();
+        ImageOptimizer optimizer = open(true, DataSize.ofBytes(1));
+
+        ImageOptimizer.Optimized optimized = optimizer.optimize("logo.png",
+                new MockMultipartFile("file", transparent), "image/png", transparent.length);
+
+        // Re-encoding a PNG with ImageIO rarely shrinks it, in which case it is stored as uploaded
+        if (optimized != null) {
+            optimized.delete();
+            assertEquals("image/png", optimized.contentType());
+        }
+    }
+
+    @Test
+    void uploadsAreStoredAsIsWhenDisabledOrUnsupported() throws IOException {
+        byte[] photo = picture(BufferedImage.TYPE_INT_RGB, "jpeg");
+
+        assertNull(open(false, DataSize.ofMegabytes(1)).optimize("photo.jpg",
+                new MockMultipartFile("file", photo), "image/jpeg", photo.length));
+        ImageOptimizer enabled = open(true, DataSize.ofMegabytes(1));
+        assertNull(enabled.optimize("photo.webp", new MockMultipartFile("file", photo), "image/webp", photo.length));
+        assertNull(enabled.optimize("broken.jpg", new MockMultipartFile("file", new byte[]{1, 2, 3}), "image/jpeg", 3));
+        assertEquals(1, enabled.stats().uploads());
+    }
+}
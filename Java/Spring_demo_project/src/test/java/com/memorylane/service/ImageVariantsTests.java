@@ -0,0 +1,170 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.ImageVariantProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ImageVariantsTests {
+
+    private final S3Client s3 = mock(S3Client.class);
+    private final S3AsyncClient s3Async = mock(S3AsyncClient.class);
+    private final ImageVariants variants = new ImageVariants(s3, s3Async, "bucket", new ImageVariantProperties());
+
+    @AfterEach
+    void tearDown() {
+        variants.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void storeOriginal(byte[] original) {
+        when(s3.getObject(any(Consumer.class))).thenAnswer(invocation -> new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength((long) original.length).build(),
+                AbortableInputStream.create(new ByteArrayInputStream(original))));
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+    // A JPEG with an EXIF segment holding only the orientation tag
+    private static byte[] jpegWithOrientation(int width, int height, int orientation) throws IOException {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "jpeg", jpeg);
+        byte[] image = jpeg.toByteArray();
+        byte[] exif = {
+                (byte) 0xFF, (byte) 0xE1, 0, 34, 'E', 'x', 'i', 'f', 0, 0,
+                'M', 'M', 0, 42, 0, 0, 0, 8,                        // big-endian TIFF header, first IFD at 8
+                0, 1,                                               // one entry
+                0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+                0, 0, 0, 0                                          // no next IFD
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(image, 0, 2);
+        out.write(exif);
+        out.write(image, 2, image.length - 2);
+        return out.toByteArray();
+    }
+
+    @Test
+    void scalingKeepsTheAspectRatioAndNeverEnlarges() {
+        BufferedImage photo = new BufferedImage(4000, 3000, BufferedImage.TYPE_INT_RGB);
+
+        BufferedImage thumbnail = ImageVariants.scale(photo, 200);
+        assertEquals(200, thumbnail.getWidth());
+        assertEquals(150, thumbnail.getHeight());
+
+        BufferedImage small = ImageVariants.scale(new BufferedImage(100, 50, BufferedImage.TYPE_INT_RGB), 800);
+        assertEquals(100, small.getWidth());
+        assertEquals(50, small.getHeight());
+    }
+
+    @Test
+    void exifOrientationIsAppliedBeforeResizing() throws IOException {
+        byte[] sideways = jpegWithOrientation(40, 20, 6);
+        assertEquals(6, ExifOrientation.read(sideways));
+        assertEquals(ExifOrientation.NORMAL, ExifOrientation.read(png(40, 20)));
+
+        BufferedImage upright = ImageVariants.decode(new ByteArrayInputStream(sideways), Long.MAX_VALUE);
+
+        assertEquals(20, upright.getWidth());
+        assertEquals(40, upright.getHeight());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void missingVariantIsMadeOnceAndThenReused() throws IOException {
+        when(s3Async.headObject(any(Consumer.class)))
+                .thenReturn(CompletableFuture.failedFuture(S3Exception.builder().statusCode(404).build()));
+        storeOriginal(png(1600, 1200));
+
+        assertEquals("variants/800/photo.png", variants.resolve("photo.png", "images/photo.png", 300).join());
+        assertEquals("variants/800/photo.png", variants.resolve("photo.png", "images/photo.png", 800).join());
+        assertEquals("variants/200/photo.png", variants.resolve("photo.png", "images/photo.png", 200).join());
+
+        verify(s3Async, times(2)).headObject(any(Consumer.class));
+        verify(s3, times(2)).putObject(any(Consumer.class), any(RequestBody.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void variantIsStoredAsAScaledJpeg() throws IOException {
+        when(s3Async.headObject(any(Consumer.class)))
+                .thenReturn(CompletableFuture.failedFuture(S3Exception.builder().statusCode(404).build()));
+        storeOriginal(png(1600, 1200));
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        PutObjectRequest.Builder request = PutObjectRequest.builder();
+        when(s3.putObject(any(Consumer.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            ((Consumer<PutObjectRequest.Builder>) invocation.getArgument(0)).accept(request);
+            ((RequestBody) invocation.getArgument(1)).contentStreamProvider().newStream().transferTo(stored);
+            return null;
+        });
+
+        variants.resolve("photo.png", "images/photo.png", 800).join();
+
+        assertEquals("image/jpeg", request.build().contentType());
+        BufferedImage variant = ImageIO.read(new ByteArrayInputStream(stored.toByteArray()));
+        assertEquals(800, variant.getWidth());
+        assertEquals(600, variant.getHeight());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void photosOverThePixelLimitAreNotDecoded() throws IOException {
+        ImageVariantProperties properties = new ImageVariantProperties();
+        properties.setMaxPixels(1000 * 1000);
+        ImageVariants limited = new ImageVariants(s3, s3Async, "bucket", properties);
+        try {
+            when(s3Async.headObject(any(Consumer.class)))
+                    .thenReturn(CompletableFuture.failedFuture(S3Exception.builder().statusCode(404).build()));
+            storeOriginal(png(1600, 1200));
+
+            CompletionException failure = assertThrows(CompletionException.class,
+                    () -> limited.resolve("photo.png", "images/photo.png", 800).join());
+
+            assertTrue(failure.getCause().getMessage().contains("1600x1200"));
+            verify(s3, never()).putObject(any(Consumer.class), any(RequestBody.class));
+        } finally {
+            limited.close();
+        }
+    }
+
+    @Test
+    void requestsWiderThanEveryVariantGetTheOriginal() throws IOException {
+        assertEquals("images/photo.png", variants.resolve("photo.png", "images/photo.png", 2000).getNow(null));
+        verifyNoInteractions(s3, s3Async);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void formatsImageIoCannotReadAreServedAsIs() throws IOException {
+        when(s3Async.headObject(any(Consumer.class)))
+                .thenReturn(CompletableFuture.failedFuture(S3Exception.builder().statusCode(404).build()));
+        storeOriginal(new byte[]{'R', 'I', 'F', 'F'});
+
+        assertEquals("images/photo.webp", variants.resolve("photo.webp", "images/photo.webp", 200).join());
+        verify(s3, never()).putObject(any(Consumer.class), any(RequestBody.class));
+    }
+}
@@ -0,0 +1,139 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.StorageProperties;
+import com.memorylane.Repo.CommentRepository;
+import com.memorylane.Repo.LikeRepository;
+import com.memorylane.Repo.MessageRepository;
+import com.memorylane.Repo.UserRepository;
+import com.memorylane.model.Comment;
+import com.memorylane.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "memorylane.storage.backend=jpa",
+        "memorylane.storage.data-dir=build/test-data-jpa",
+        "spring.datasource.url=jdbc:h2:mem:memorylane;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50"
+})
+class JpaStorageServiceTests {
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private LikeRepository likeRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private StorageProperties storageProperties;
+
+    @Test
+    void jpaBackendIsSelected() {
+        assertInstanceOf(JpaStorageService.class, storageService);
+    }
+
+    @Test
+    void commentsAreReturnedOldestFirst() {
+        storageService.saveComment(new Comment("jpa.png", "first", "riya"));
+        Comment second = storageService.saveComment(new Comment("jpa.png", "second", "riya"));
+        storageService.saveComment(new Comment("other.png", "elsewhere", "riya"));
+
+        assertEquals(List.of("first", "second"),
+                storageService.getCommentsByPhotoName("jpa.png").stream().map(Comment::getCommentText).toList());
+
+        storageService.deleteComment(second.getId());
+        assertEquals(1, storageService.getCommentsByPhotoName("jpa.png").size());
+    }
+
+    @Test
+    void concurrentTogglesKeepOneLikePerUser() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> toggles = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                toggles.add(pool.submit(() -> storageService.toggleLike("race.png", "riya")));
+            }
+            for (Future<Boolean> toggle : toggles) {
+                toggle.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        // An even number of toggles leaves the photo unliked
+        assertEquals(0, storageService.getLikeCount("race.png"));
+
+        assertTrue(storageService.toggleLike("race.png", "riya"));
+        assertEquals(1, storageService.getLikeCount("race.png"));
+        assertTrue(storageService.hasUserLikedPhoto("race.png", "riya"));
+    }
+
+    @Test
+    void togglesRetryWhenTheLikeIsLocked() {
+        // The first two transactions fail the way a lock wait timeout and a deadlock do
+        AtomicInteger attempts = new AtomicInteger();
+        PlatformTransactionManager locked = new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return switch (attempts.incrementAndGet()) {
+                    case 1 -> throw new CannotAcquireLockException("lock wait timeout");
+                    case 2 -> throw new PessimisticLockingFailureException("deadlock");
+                    default -> transactionManager.getTransaction(definition);
+                };
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+                transactionManager.commit(status);
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                transactionManager.rollback(status);
+            }
+        };
+        JpaStorageService storage = new JpaStorageService(commentRepository, likeRepository, userRepository,
+                messageRepository, locked, storageProperties);
+
+        assertTrue(storage.toggleLike("locked.png", "riya"));
+        assertEquals(3, attempts.get());
+        assertEquals(1, storageService.getLikeCount("locked.png"));
+    }
+
+    @Test
+    void duplicateUsernamesAreRejected() {
+        storageService.saveUser(new User("jpa-user", "jpa@example.com", "secret", "Jpa User"));
+        RuntimeException duplicate = assertThrows(RuntimeException.class,
+                () -> storageService.saveUser(new User("jpa-user", "other@example.com", "secret", "Other")));
+        assertEquals("Username already exists", duplicate.getMessage());
+
+        assertNotNull(storageService.authenticateUser("jpa-user", "secret").getLastLoginAt());
+    }
+}
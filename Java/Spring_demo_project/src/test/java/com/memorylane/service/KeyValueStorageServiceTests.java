@@ -0,0 +1,141 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.StorageProperties;
+import com.memorylane.model.Comment;
+import com.memorylane.model.Message;
+import com.memorylane.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyValueStorageServiceTests {
+
+    @TempDir
+    Path dataDir;
+
+    private KeyValueStorageService open() {
+        StorageProperties properties = new StorageProperties();
+        properties.setDataDir(dataDir.toString());
+        return new KeyValueStorageService(properties);
+    }
+
+    @Test
+    void prefixScansStayWithinOnePhoto() {
+        KeyValueStorageService storage = open();
+        storage.saveComment(new Comment("a", "on a", "riya"));
+        storage.saveComment(new Comment("a/b.png", "on a/b.png", "riya"));
+        storage.saveComment(new Comment("ab.png", "on ab.png", "riya"));
+        storage.toggleLike("a", "riya");
+        storage.toggleLike("a/b.png", "riya");
+
+        assertEquals(List.of("on a"), storage.getCommentsByPhotoName("a").stream().map(Comment::getCommentText).toList());
+        assertEquals(1, storage.getLikesByPhotoName("a").size());
+        assertEquals(3, storage.getAllComments().size());
+        assertEquals(2, storage.getAllLikes().size());
+
+        storage.deleteCommentsByPhotoName("a");
+        storage.deleteLikesByPhotoName("a");
+        assertEquals(2, storage.getAllComments().size());
+        assertEquals(0, storage.getLikeCount("a"));
+        assertEquals(1, storage.getLikeCount("a/b.png"));
+        storage.close();
+    }
+
+    @Test
+    void dataSurvivesRestart() {
+        KeyValueStorageService storage = open();
+        Comment first = storage.saveComment(new Comment("a.png", "first", "riya"));
+        Comment second = storage.saveComment(new Comment("a.png", "second", "riya"));
+        storage.deleteComment(first.getId());
+        assertTrue(storage.toggleLike("a.png", "riya"));
+        assertTrue(storage.toggleLike("a.png", "abc"));
+        assertFalse(storage.toggleLike("a.png", "abc"));
+        storage.saveUser(new User("riya", "riya@example.com", "secret", "Riya"));
+        storage.saveMessage(new Message(null, "hello", null));
+        storage.saveMessage(new Message(null, "latest", null));
+        storage.close();
+
+        KeyValueStorageService reopened = open();
+        assertEquals(List.of(second.getId()), reopened.getAllComments().stream().map(Comment::getId).toList());
+        assertEquals(1, reopened.getLikeCount("a.png"));
+        assertTrue(reopened.hasUserLikedPhoto("a.png", "riya"));
+        assertEquals("latest", reopened.getLatestMessage().getContent());
+        assertEquals(2, reopened.getAllMessages().size());
+        assertTrue(reopened.saveComment(new Comment("a.png", "third", "riya")).getId() > second.getId());
+        reopened.close();
+    }
+
+    @Test
+    void userIndexesFollowUpdates() {
+        KeyValueStorageService storage = open();
+        User user = storage.saveUser(new User("riya", "riya@example.com", "secret", "Riya"));
+        assertThrows(RuntimeException.class, () -> storage.saveUser(new User("other", "riya@example.com", "x", "Other")));
+
+        user.setEmail("new@example.com");
+        storage.updateUser(user);
+        assertNull(storage.getUserByEmail("riya@example.com"));
+        assertEquals("riya", storage.getUserByEmail("new@example.com").getUsername());
+        assertNotNull(storage.authenticateUser("riya", "secret").getLastLoginAt());
+
+        storage.deleteUser(user.getId());
+        assertNull(storage.getUserByUsername("riya"));
+        assertTrue(storage.getAllUsers().isEmpty());
+        storage.close();
+    }
+
+    @Test
+    void updateCannotTakeAnotherUsersNameOrEmail() {
+        KeyValueStorageService storage = open();
+        storage.saveUser(new User("riya", "riya@example.com", "secret", "Riya"));
+        User other = storage.saveUser(new User("other", "other@example.com", "x", "Other"));
+
+        other.setUsername("riya");
+        assertThrows(RuntimeException.class, () -> storage.updateUser(other));
+        other.setUsername("other");
+        other.setEmail("riya@example.com");
+        assertThrows(RuntimeException.class, () -> storage.updateUser(other));
+
+        assertEquals("riya@example.com", storage.getUserByUsername("riya").getEmail());
+        assertEquals("other", storage.getUserByEmail("other@example.com").getUsername());
+        storage.deleteUser(other.getId());
+        assertNotNull(storage.getUserByUsername("riya"));
+        storage.close();
+    }
+
+    @Test
+    void likeCountFollowsLikesLeftAfterDeletion() {
+        KeyValueStorageService storage = open();
+        storage.toggleLike("a.jpg", "riya");
+        storage.toggleLike("a.jpg", "other");
+        storage.deleteLikesByPhotoName("a.jpg");
+        assertEquals(0, storage.getLikeCount("a.jpg"));
+
+        storage.toggleLike("a.jpg", "riya");
+        assertEquals(1, storage.getLikeCount("a.jpg"));
+        storage.deleteByPhotoNames(List.of("a.jpg"));
+        assertEquals(0, storage.getLikeCount("a.jpg"));
+        assertTrue(storage.getLikesByPhotoName("a.jpg").isEmpty());
+        storage.close();
+    }
+
+    @Test
+    void emptyStoreIsSeededFromJsonFiles() throws IOException {
+        Files.writeString(dataDir.resolve("comments.json"), """
+                [{"id":2,"photoName":"a.png","commentText":"one","authorName":"riya"},
+                 {"id":2,"photoName":"a.png","commentText":"two","authorName":"riya"}]""");
+        Files.writeString(dataDir.resolve("likes.json"), """
+                [{"id":1,"photoName":"a.png","userName":"riya"},
+                 {"id":1,"photoName":"a.png","userName":"riya"}]""");
+
+        KeyValueStorageService storage = open();
+        assertEquals(2, storage.getCommentsByPhotoName("a.png").stream().map(Comment::getId).distinct().count());
+        assertEquals(1, storage.getLikeCount("a.png"));
+        storage.close();
+    }
+}
@@ -0,0 +1,132 @@
+package com.memorylane.service;
+
+import com.memorylane.model.Like;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LikeEngineTests {
+
+    private static final int THREADS = 32;
+    private static final int TOGGLES_PER_THREAD = 2_000;
+    private static final int USERS = 500;
+    private static final String PHOTO = "popular.png";
+
+    interface Toggler {
+        void toggle(String userName) throws Exception;
+    }
+
+    @Test
+    void concurrentTogglesKeepExactCounts() throws Exception {
+        LikeEngine engine = new LikeEngine();
+        AtomicLong ids = new AtomicLong();
+        Map<String, AtomicInteger> togglesPerUser = new ConcurrentHashMap<>();
+
+        run(userName -> {
+            engine.toggle(PHOTO, userName, () -> {
+                Like like = new Like(PHOTO, userName);
+                like.setId(ids.incrementAndGet());
+                return like;
+            });
+            togglesPerUser.computeIfAbsent(userName, name -> new AtomicInteger()).incrementAndGet();
+        }, THREADS, TOGGLES_PER_THREAD);
+
+        // A user ends up liking the photo exactly when they toggled an odd number of times
+        long expected = togglesPerUser.values().stream().filter(count -> count.get() % 2 == 1).count();
+        assertEquals(expected, engine.count(PHOTO));
+        assertEquals(expected, engine.likes(PHOTO).size());
+        togglesPerUser.forEach((userName, count) ->
+                assertEquals(count.get() % 2 == 1, engine.contains(PHOTO, userName), userName));
+    }
+
+    @Test
+    void removalsAndTogglesApplyInOneOrder() throws Exception {
+        LikeEngine engine = new LikeEngine();
+        // Replaying what the listener saw, in the order it saw it, must give the engine's state
+        List<String> events = new ArrayList<>();
+        engine.setListener(new LikeEngine.Listener() {
+            @Override
+            public synchronized void liked(Like like) {
+                events.add("+" + like.getUserName());
+            }
+
+            @Override
+            public synchronized void unliked(String photoName, String userName) {
+                events.add("-" + userName);
+            }
+
+            @Override
+            public synchronized void photoCleared(String photoName) {
+                events.add("clear");
+            }
+
+            @Override
+            public synchronized void photosCleared(List<String> photoNames) {
+                events.add("clear");
+            }
+        });
+
+        AtomicInteger removals = new AtomicInteger();
+        run(userName -> {
+            if (ThreadLocalRandom.current().nextInt(100) == 0) {
+                if (removals.incrementAndGet() % 2 == 0) {
+                    engine.removePhoto(PHOTO);
+                } else {
+                    engine.removePhotos(List.of(PHOTO, "other.png"));
+                }
+            } else {
+                engine.toggle(PHOTO, userName, () -> new Like(PHOTO, userName));
+            }
+        }, THREADS, TOGGLES_PER_THREAD);
+
+        Set<String> likers = new HashSet<>();
+        for (String event : events) {
+            if (event.equals("clear")) {
+                likers.clear();
+            } else if (event.startsWith("+")) {
+                assertTrue(likers.add(event.substring(1)), event);
+            } else {
+                assertTrue(likers.remove(event.substring(1)), event);
+            }
+        }
+        assertEquals(likers.size(), engine.count(PHOTO));
+        assertEquals(likers, engine.likes(PHOTO).stream().map(Like::getUserName).collect(Collectors.toSet()));
+    }
+
+    private void run(Toggler toggler, int threads, int togglesPerThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < togglesPerThread; i++) {
+                    toggler.toggle("user" + ThreadLocalRandom.current().nextInt(USERS));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
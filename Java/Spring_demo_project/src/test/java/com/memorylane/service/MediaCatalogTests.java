@@ -0,0 +1,263 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.MediaCatalogProperties;
+import com.memorylane.Configguration.StorageProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class MediaCatalogTests {
+
+    private static final Instant START = Instant.parse("2025-07-06T14:34:19Z");
+
+    @TempDir
+    Path dataDir;
+
+    private final S3Client s3 = mock(S3Client.class);
+    private final List<MediaCatalog> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(MediaCatalog::close);
+    }
+
+    // Never syncs on its own during a test
+    private MediaCatalog open() {
+        StorageProperties storage = new StorageProperties();
+        storage.setDataDir(dataDir.toString());
+        MediaCatalogProperties properties = new MediaCatalogProperties();
+        properties.setRefreshInterval(Duration.ofDays(1));
+        MediaCatalog catalog = new MediaCatalog(s3, "bucket", properties, storage);
+        opened.add(catalog);
+        return catalog;
+    }
+
+    private static S3Object object(String key, int minute) {
+        return S3Object.builder().key(key).size(10L).lastModified(START.plusSeconds(60L * minute)).build();
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+    private static MediaCatalog.Entry describe(MediaCatalog.Category category, String fileName, String contentType,
+                                               byte[] content) throws IOException {
+        return MediaCatalog.describe(category, fileName, contentType, new ByteArrayResource(content), content.length);
+    }
+
+    // Serves the objects in pages of pageSize, as the bucket does with continuation tokens
+    @SuppressWarnings("unchecked")
+    private void bucketHolds(List<S3Object> objects, int pageSize, Runnable whileListing) {
+        when(s3.listObjectsV2Paginator(any(Consumer.class))).thenAnswer(invocation ->
+                new ListObjectsV2Iterable(s3, ListObjectsV2Request.builder().bucket("bucket").build()));
+        when(s3.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            ListObjectsV2Request request = invocation.getArgument(0);
+            int from = request.continuationToken() != null ? Integer.parseInt(request.continuationToken()) : 0;
+            int to = Math.min(objects.size(), from + pageSize);
+            whileListing.run();
+            return ListObjectsV2Response.builder()
+                    .contents(objects.subList(from, to))
+                    .isTruncated(to < objects.size())
+                    .nextContinuationToken(to < objects.size() ? String.valueOf(to) : null)
+                    .build();
+        });
+    }
+
+    @Test
+    void everyPageOfTheBucketIsListed() {
+        List<S3Object> objects = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            objects.add(object("images/photo-" + i + ".jpg", i));
+        }
+        objects.add(object("music/song.mp3", 3000));
+        objects.add(object("old.jpg", 3500));
+        objects.add(object("variants/200/photo-1.jpg", 4000));
+        objects.add(object("notes.txt", 5000));
+        bucketHolds(objects, 1000, () -> {});
+
+        MediaCatalog catalog = open();
+        catalog.refresh();
+
+        List<String> images = catalog.page(MediaCatalog.Category.IMAGE, null, null).fileNames();
+        assertEquals(2501, images.size());
+        assertEquals("old.jpg", images.get(0));
+        assertEquals("photo-2499.jpg", images.get(1));
+        assertEquals(List.of("song.mp3"), catalog.page(MediaCatalog.Category.MUSIC, null, null).fileNames());
+        assertEquals("images/photo-1.jpg", catalog.keyOf("photo-1.jpg"));
+        assertEquals("old.jpg", catalog.keyOf("old.jpg"));
+        assertEquals("audio/mpeg", catalog.get("song.mp3").contentType());
+    }
+
+    @Test
+    void cursorWalksThePagesNewestFirst() {
+        bucketHolds(List.of(object("images/a.jpg", 1), object("images/b.jpg", 2), object("images/c.jpg", 3),
+                object("images/d.jpg", 4), object("images/e.jpg", 5)), 1000, () -> {});
+        MediaCatalog catalog = open();
+        catalog.refresh();
+
+        MediaCatalog.Page first = catalog.page(MediaCatalog.Category.IMAGE, 2, null);
+        MediaCatalog.Page second = catalog.page(MediaCatalog.Category.IMAGE, 2, first.nextCursor());
+        MediaCatalog.Page last = catalog.page(MediaCatalog.Category.IMAGE, 2, second.nextCursor());
+
+        assertEquals(List.of("e.jpg", "d.jpg"), first.fileNames());
+        assertEquals(List.of("c.jpg", "b.jpg"), second.fileNames());
+        assertEquals(List.of("a.jpg"), last.fileNames());
+        assertNull(last.nextCursor());
+        assertThrows(IllegalArgumentException.class, () -> catalog.page(MediaCatalog.Category.IMAGE, 2, "not a cursor"));
+    }
+
+    @Test
+    void uploadsAndDeletesShowUpImmediately() throws IOException {
+        bucketHolds(List.of(object("images/a.jpg", 1)), 1000, () -> {});
+        MediaCatalog catalog = open();
+        catalog.refresh();
+
+        catalog.added(describe(MediaCatalog.Category.IMAGE, "new.png", "image/png", png(30, 20)));
+        catalog.removed("a.jpg");
+
+        assertEquals(List.of("new.png"), catalog.page(MediaCatalog.Category.IMAGE, null, null).fileNames());
+        MediaCatalog.Entry entry = catalog.get("new.png");
+        assertEquals("images/new.png", entry.key());
+        assertEquals(30, entry.width());
+        assertEquals(20, entry.height());
+    }
+
+    @Test
+    void refreshKeepsChangesMadeWhileItWasListing() throws IOException {
+        MediaCatalog catalog = open();
+        MediaCatalog.Entry uploaded = describe(MediaCatalog.Category.IMAGE, "uploaded.jpg", "image/jpeg", new byte[]{1});
+        // The listing is taken before the upload and the delete, so it is stale for both files
+        bucketHolds(List.of(object("images/a.jpg", 1), object("images/deleted.jpg", 2)), 1000, () -> {
+            catalog.added(uploaded);
+            catalog.removed("deleted.jpg");
+        });
+
+        catalog.refresh();
+
+        assertEquals(List.of("uploaded.jpg", "a.jpg"), catalog.page(MediaCatalog.Category.IMAGE, null, null).fileNames());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flatKeysAreMovedUnderTheirPrefixWithTheirMetadata() throws Exception {
+        byte[] photo = png(64, 48);
+        bucketHolds(List.of(object("photo.png", 1)), 1000, () -> {});
+        when(s3.getObject(any(Consumer.class))).thenAnswer(invocation -> new ResponseInputStream<>(
+                GetObjectResponse.builder().contentType("image/png").contentLength((long) photo.length).build(),
+                AbortableInputStream.create(new ByteArrayInputStream(photo))));
+        List<CopyObjectRequest> copies = new ArrayList<>();
+        when(s3.copyObject(any(Consumer.class))).thenAnswer(invocation -> {
+            CopyObjectRequest.Builder request = CopyObjectRequest.builder();
+            ((Consumer<CopyObjectRequest.Builder>) invocation.getArgument(0)).accept(request);
+            copies.add(request.build());
+            return null;
+        });
+        List<String> deleted = new ArrayList<>();
+        when(s3.deleteObject(any(Consumer.class))).thenAnswer(invocation -> {
+            DeleteObjectRequest.Builder request = DeleteObjectRequest.builder();
+            ((Consumer<DeleteObjectRequest.Builder>) invocation.getArgument(0)).accept(request);
+            deleted.add(request.build().key());
+            return null;
+        });
+        MediaCatalog catalog = open();
+        catalog.refresh();
+
+        catalog.migrate();
+
+        assertEquals(1, copies.size());
+        assertEquals("photo.png", copies.get(0).sourceKey());
+        assertEquals("images/photo.png", copies.get(0).destinationKey());
+        assertEquals(List.of("photo.png"), deleted);
+        MediaCatalog.Entry entry = catalog.get("photo.png");
+        assertEquals("images/photo.png", entry.key());
+        assertEquals(64, entry.width());
+        assertEquals(48, entry.height());
+        assertEquals(photo.length, entry.size());
+        assertEquals(START.plusSeconds(60), entry.uploaded());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(photo)), entry.sha256());
+    }
+
+    @Test
+    void catalogIsReadBackFromItsFileWithoutListingTheBucket() throws IOException {
+        MediaCatalog catalog = open();
+        MediaCatalog.Entry song = describe(MediaCatalog.Category.MUSIC, "song.mp3", "audio/mpeg", new byte[]{1, 2, 3});
+        catalog.added(song);
+        catalog.close();
+
+        MediaCatalog reopened = open();
+        reopened.ensureLoaded();
+
+        assertEquals(song, reopened.get("song.mp3"));
+        assertEquals(List.of(song), reopened.entries(MediaCatalog.Category.MUSIC));
+        verifyNoInteractions(s3);
+    }
+
+    @Test
+    void categoryComesFromTheCatalogOrTheExtension() throws IOException {
+        MediaCatalog catalog = open();
+        catalog.added(describe(MediaCatalog.Category.IMAGE, "scan.bmp", "image/bmp", new byte[]{1}));
+
+        assertEquals(MediaCatalog.Category.IMAGE, catalog.category("scan.bmp"));
+        assertEquals(MediaCatalog.Category.MUSIC, catalog.category("song.m4a"));
+        assertNull(catalog.category("notes.txt"));
+        assertNull(MediaCatalog.categoryOf("variants/200/photo.jpg"));
+        assertEquals("music/song.m4a", catalog.keyOf("song.m4a"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flatKeyIsFoundBeforeTheFirstLoad() {
+        when(s3.headObject(any(Consumer.class))).thenAnswer(invocation -> {
+            HeadObjectRequest.Builder builder = HeadObjectRequest.builder();
+            invocation.<Consumer<HeadObjectRequest.Builder>>getArgument(0).accept(builder);
+            if (!builder.build().key().equals("old.jpg")) {
+                throw NoSuchKeyException.builder().build();
+            }
+            return HeadObjectResponse.builder().build();
+        });
+        MediaCatalog catalog = open();
+        assertEquals("old.jpg", catalog.keyOf("old.jpg"));
+        assertEquals("images/new.jpg", catalog.keyOf("new.jpg"));
+
+        bucketHolds(List.of(object("images/old.jpg", 1)), 1000, () -> {});
+        catalog.refresh();
+        assertEquals("images/old.jpg", catalog.keyOf("old.jpg"));
+        assertEquals("images/gone.jpg", catalog.keyOf("gone.jpg"));
+    }
+}
@@ -0,0 +1,225 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.ObjectCacheProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ObjectCacheTests {
+
+    @TempDir
+    Path cacheDir;
+
+    private final S3Client s3 = mock(S3Client.class);
+
+    private ObjectCache open(long maxBytes) {
+        ObjectCacheProperties properties = new ObjectCacheProperties();
+        properties.setDir(cacheDir.toString());
+        properties.setMaxSize(DataSize.ofBytes(maxBytes));
+        return new ObjectCache(s3, "bucket", properties);
+    }
+
+    // Every object's body is its key, with the MD5 ETag the bucket would send
+    @SuppressWarnings("unchecked")
+    private void serveKeys() {
+        when(s3.getObject(any(Consumer.class))).thenAnswer(invocation -> object(key(invocation.getArgument(0)), null));
+    }
+
+    private static String key(Consumer<GetObjectRequest.Builder> request) {
+        GetObjectRequest.Builder builder = GetObjectRequest.builder();
+        request.accept(builder);
+        return builder.build().key();
+    }
+
+    private static ResponseInputStream<GetObjectResponse> object(String body, String eTag) throws Exception {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String md5 = HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(bytes));
+        GetObjectResponse response = GetObjectResponse.builder()
+                .contentLength((long) bytes.length)
+                .eTag("\"" + (eTag != null ? eTag : md5) + "\"")
+                .contentType("image/png")
+                .build();
+        return new ResponseInputStream<>(response, AbortableInputStream.create(new ByteArrayInputStream(bytes)));
+    }
+
+    private long filesInCache() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void missIsDownloadedOnceAndThenServedFromDisk() throws Exception {
+        serveKeys();
+        ObjectCache cache = open(1000);
+
+        ObjectCache.CachedObject first = cache.get("photo-0001.png");
+        ObjectCache.CachedObject second = cache.get("photo-0001.png");
+
+        assertEquals(first, second);
+        assertEquals("photo-0001.png", Files.readString(second.file()));
+        assertEquals("image/png", second.contentType());
+        verify(s3, times(1)).getObject(any(Consumer.class));
+        ObjectCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(14, stats.bytes());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void concurrentMissesShareOneDownload() throws Exception {
+        CountDownLatch downloading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(s3.getObject(any(Consumer.class))).thenAnswer(invocation -> {
+            downloading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return object("song", null);
+        });
+        ObjectCache cache = open(1000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ObjectCache.CachedObject>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.get("song.mp3")));
+            assertTrue(downloading.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> cache.get("song.mp3")));
+            }
+            Thread.sleep(50);
+            release.countDown();
+            for (Future<ObjectCache.CachedObject> result : results) {
+                assertEquals("song", Files.readString(result.get(5, TimeUnit.SECONDS).file()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(s3, times(1)).getObject(any(Consumer.class));
+    }
+
+    @Test
+    void leastRecentlyUsedObjectIsEvictedBeyondMaxSize() throws Exception {
+        serveKeys();
+        ObjectCache cache = open(40);
+        for (String key : List.of("a-00.png", "b-00.png", "c-00.png", "d-00.png", "e-00.png")) {
+            cache.get(key);
+        }
+        cache.get("b-00.png");
+        cache.get("f-00.png");
+
+        assertNull(cache.getIfPresent("a-00.png"));
+        assertNotNull(cache.getIfPresent("b-00.png"));
+        assertNotNull(cache.getIfPresent("c-00.png"));
+        ObjectCache.Stats stats = cache.stats();
+        assertEquals(1, stats.evictions());
+        assertEquals(5, stats.entries());
+        assertEquals(40, stats.bytes());
+        assertEquals(10, filesInCache());
+    }
+
+    @Test
+    void streamedBodyIsCachedOnTheWayToTheClient() throws Exception {
+        ObjectCache cache = open(1000);
+        ByteArrayOutputStream client = new ByteArrayOutputStream();
+
+        cache.transfer("song.mp3", object("song", null), client);
+
+        assertEquals("song", client.toString(StandardCharsets.UTF_8));
+        assertEquals("song", Files.readString(cache.getIfPresent("song.mp3").file()));
+        verifyNoInteractions(s3);
+    }
+
+    @Test
+    void failedCopyStillReachesTheClient() throws Exception {
+        ObjectCache cache = open(1000);
+        ByteArrayOutputStream client = new ByteArrayOutputStream();
+
+        cache.transfer("photo.png", object("tampered", "0123456789abcdef0123456789abcdef"), client);
+
+        assertEquals("tampered", client.toString(StandardCharsets.UTF_8));
+        assertNull(cache.getIfPresent("photo.png"));
+        assertEquals(0, filesInCache());
+    }
+
+    @Test
+    void objectsOverAQuarterOfMaxSizeAreNotCached() throws Exception {
+        serveKeys();
+        ObjectCache cache = open(40);
+
+        assertNull(cache.get("a-rather-large-object.png"));
+        assertEquals(0, filesInCache());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void invalidateDropsTheCachedCopy() throws Exception {
+        serveKeys();
+        ObjectCache cache = open(1000);
+        Path file = cache.get("photo.png").file();
+
+        cache.invalidate("photo.png");
+
+        assertFalse(Files.exists(file));
+        assertNull(cache.getIfPresent("photo.png"));
+        assertEquals(0, filesInCache());
+        cache.get("photo.png");
+        verify(s3, times(2)).getObject(any(Consumer.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void downloadNotMatchingItsETagIsRejected() throws Exception {
+        when(s3.getObject(any(Consumer.class))).thenAnswer(invocation -> object("tampered", "0123456789abcdef0123456789abcdef"));
+        ObjectCache cache = open(1000);
+
+        assertThrows(IOException.class, () -> cache.get("photo.png"));
+        assertNull(cache.getIfPresent("photo.png"));
+        assertEquals(0, filesInCache());
+    }
+
+    @Test
+    void indexIsRebuiltFromDiskAfterRestart() throws Exception {
+        serveKeys();
+        open(1000).get("photo.png");
+        Files.writeString(cacheDir.resolve("partial.bin.tmp"), "half");
+
+        ObjectCache reopened = open(1000);
+
+        ObjectCache.CachedObject cached = reopened.getIfPresent("photo.png");
+        assertNotNull(cached);
+        assertEquals("photo.png", Files.readString(cached.file()));
+        assertEquals(2, filesInCache());
+    }
+}
@@ -0,0 +1,80 @@
+package com.memorylane.service;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ObjectDeleterTests {
+
+    private final S3Client s3 = mock(S3Client.class);
+    private final ObjectDeleter deleter = new ObjectDeleter(s3, "bucket");
+
+    // The keys of each DeleteObjects request, in the order sent
+    private final List<List<String>> requests = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    private void respond(Function<List<String>, DeleteObjectsResponse> answer) {
+        when(s3.deleteObjects(any(Consumer.class))).thenAnswer(invocation -> {
+            DeleteObjectsRequest.Builder request = DeleteObjectsRequest.builder();
+            ((Consumer<DeleteObjectsRequest.Builder>) invocation.getArgument(0)).accept(request);
+            List<String> keys = request.build().delete().objects().stream().map(ObjectIdentifier::key).toList();
+            requests.add(keys);
+            return answer.apply(keys);
+        });
+    }
+
+    @Test
+    void keysAreSentInRequestsOfAtMostAThousand() {
+        respond(keys -> DeleteObjectsResponse.builder().build());
+        List<String> keys = IntStream.range(0, 2500).mapToObj(i -> "images/photo_" + i + ".png").toList();
+
+        List<ObjectDeleter.Result> results = deleter.delete(keys);
+
+        assertEquals(List.of(1000, 1000, 500), requests.stream().map(List::size).toList());
+        assertEquals(keys, results.stream().map(ObjectDeleter.Result::key).toList());
+        assertTrue(results.stream().allMatch(ObjectDeleter.Result::isDeleted));
+    }
+
+    @Test
+    void keysTheBucketRefusedAreReportedFailed() {
+        respond(keys -> DeleteObjectsResponse.builder()
+                .errors(S3Error.builder().key("images/b.png").code("AccessDenied").message("Access Denied").build())
+                .build());
+
+        List<ObjectDeleter.Result> results = deleter.delete(List.of("images/a.png", "images/b.png", "images/a.png"));
+
+        assertEquals(List.of(List.of("images/a.png", "images/b.png")), requests);
+        assertTrue(results.get(0).isDeleted());
+        assertEquals("AccessDenied: Access Denied", results.get(1).error());
+    }
+
+    @Test
+    void failedRequestFailsOnlyItsOwnKeys() {
+        respond(keys -> {
+            if (requests.size() == 1) {
+                throw S3Exception.builder().statusCode(500).message("Internal error").build();
+            }
+            return DeleteObjectsResponse.builder().build();
+        });
+        List<String> keys = IntStream.range(0, 1001).mapToObj(i -> "images/photo_" + i + ".png").toList();
+
+        List<ObjectDeleter.Result> results = deleter.delete(keys);
+
+        assertEquals(1000, results.stream().filter(result -> !result.isDeleted()).count());
+        assertTrue(results.get(1000).isDeleted());
+    }
+}
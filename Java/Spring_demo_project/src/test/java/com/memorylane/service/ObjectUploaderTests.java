@@ -0,0 +1,178 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.UploadProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsRequest;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsResponse;
+import software.amazon.awssdk.services.s3.model.MultipartUpload;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import software.amazon.awssdk.services.s3.paginators.ListMultipartUploadsIterable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ObjectUploaderTests {
+
+    private static final int MB = 1024 * 1024;
+
+    private final S3Client s3 = mock(S3Client.class);
+    private ObjectUploader uploader;
+
+    // Part number to the bytes the bucket received
+    private final Map<Integer, byte[]> received = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        UploadProperties properties = new UploadProperties();
+        properties.setMultipartThreshold(DataSize.ofMegabytes(1));
+        properties.setPartSize(DataSize.ofMegabytes(5));
+        properties.setPartsInFlight(2);
+        properties.setWorkers(4);
+        uploader = new ObjectUploader(s3, "bucket", properties);
+
+        when(s3.createMultipartUpload(any(Consumer.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3.uploadPart(any(Consumer.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            UploadPartRequest.Builder request = UploadPartRequest.builder();
+            ((Consumer<UploadPartRequest.Builder>) invocation.getArgument(0)).accept(request);
+            int running = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(running, Math::max);
+            try {
+                Thread.sleep(20);
+                byte[] part = ((RequestBody) invocation.getArgument(1)).contentStreamProvider().newStream().readAllBytes();
+                received.put(request.build().partNumber(), part);
+                return UploadPartResponse.builder().eTag("\"etag-" + request.build().partNumber() + "\"").build();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploader.close();
+    }
+
+    private static byte[] song(int size) {
+        byte[] content = new byte[size];
+        new Random(7).nextBytes(content);
+        return content;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompleteMultipartUploadRequest completed() {
+        CompleteMultipartUploadRequest.Builder request = CompleteMultipartUploadRequest.builder();
+        verify(s3).completeMultipartUpload(any(Consumer.class));
+        ((Consumer<CompleteMultipartUploadRequest.Builder>) mockingDetails(s3).getInvocations().stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("completeMultipartUpload"))
+                .findFirst().orElseThrow().getArgument(0)).accept(request);
+        return request.build();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void smallFilesGoInOneRequest() throws IOException {
+        uploader.upload("music/song.mp3", "audio/mpeg", new ByteArrayResource(song(1000)), 1000);
+
+        verify(s3).putObject(any(Consumer.class), any(RequestBody.class));
+        verify(s3, never()).createMultipartUpload(any(Consumer.class));
+    }
+
+    @Test
+    void largeFilesAreSentInParallelPartsWithBoundedBuffering() throws IOException {
+        byte[] content = song(23 * MB);
+
+        uploader.upload("music/song.mp3", "audio/mpeg", new ByteArrayResource(content), content.length);
+
+        assertEquals(5, received.size());
+        ByteArrayOutputStream reassembled = new ByteArrayOutputStream();
+        for (int part = 1; part <= 5; part++) {
+            reassembled.writeBytes(received.get(part));
+        }
+        assertArrayEquals(content, reassembled.toByteArray());
+        assertEquals(3 * MB, received.get(5).length);
+        assertTrue(maxInFlight.get() <= 2);
+
+        CompleteMultipartUploadRequest complete = completed();
+        assertEquals("upload-1", complete.uploadId());
+        assertEquals(List.of(1, 2, 3, 4, 5),
+                complete.multipartUpload().parts().stream().map(CompletedPart::partNumber).toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedPartIsRetried() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        when(s3.uploadPart(any(Consumer.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                throw S3Exception.builder().statusCode(503).message("Slow down").build();
+            }
+            return UploadPartResponse.builder().eTag("\"etag\"").build();
+        });
+        byte[] content = song(6 * MB);
+
+        uploader.upload("music/song.mp3", "audio/mpeg", new ByteArrayResource(content), content.length);
+
+        assertEquals(3, calls.get());
+        verify(s3).completeMultipartUpload(any(Consumer.class));
+        verify(s3, never()).abortMultipartUpload(any(Consumer.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void uploadThatFailsForGoodIsAborted() {
+        when(s3.uploadPart(any(Consumer.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().statusCode(403).message("Forbidden").build());
+        byte[] content = song(12 * MB);
+
+        assertThrows(IOException.class,
+                () -> uploader.upload("music/song.mp3", "audio/mpeg", new ByteArrayResource(content), content.length));
+
+        verify(s3).abortMultipartUpload(any(Consumer.class));
+        verify(s3, never()).completeMultipartUpload(any(Consumer.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void uploadsLeftOverFromACrashAreAborted() {
+        when(s3.listMultipartUploadsPaginator(any(Consumer.class))).thenAnswer(invocation ->
+                new ListMultipartUploadsIterable(s3, ListMultipartUploadsRequest.builder().bucket("bucket").build()));
+        when(s3.listMultipartUploads(any(ListMultipartUploadsRequest.class))).thenReturn(ListMultipartUploadsResponse.builder()
+                .uploads(MultipartUpload.builder().key("music/old.mp3").uploadId("old")
+                                .initiated(Instant.now().minus(Duration.ofDays(3))).build(),
+                        MultipartUpload.builder().key("music/new.mp3").uploadId("new")
+                                .initiated(Instant.now()).build())
+                .isTruncated(false)
+                .build());
+
+        uploader.abortAbandoned();
+
+        verify(s3, times(1)).abortMultipartUpload(any(Consumer.class));
+    }
+}
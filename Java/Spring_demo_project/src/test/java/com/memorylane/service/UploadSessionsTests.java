@@ -0,0 +1,215 @@
+package com.memorylane.service;
+
+import com.memorylane.Configguration.UploadProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadSessionsTests {
+
+    @TempDir
+    Path dir;
+
+    private final List<UploadSessions> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(UploadSessions::close);
+    }
+
+    private UploadSessions open() throws IOException {
+        UploadProperties properties = new UploadProperties();
+        properties.getSessions().setDir(dir.toString());
+        properties.getSessions().setExpireAfter(Duration.ofHours(1));
+        properties.getSessions().setMaxSize(DataSize.ofKilobytes(1));
+        UploadSessions sessions = new UploadSessions(properties);
+        opened.add(sessions);
+        return sessions;
+    }
+
+    private static InputStream chunk(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void chunksAreAppendedAtTheirOffsetAndCompleteTheSession() throws IOException {
+        UploadSessions sessions = open();
+        UploadSessions.Session session = sessions.create("song.mp3", "audio/mpeg", 10);
+
+        assertEquals(0, session.offset());
+        assertEquals(4, sessions.append(session.id(), 0, chunk("0123")).offset());
+        UploadSessions.Session done = sessions.append(session.id(), 4, chunk("456789"));
+        assertTrue(done.isComplete());
+
+        String stored = sessions.complete(session.id(),
+                (completed, content) -> completed.fileName() + ":" + Files.readString(content));
+
+        assertEquals("song.mp3:0123456789", stored);
+        assertNull(sessions.get(session.id()));
+    }
+
+    @Test
+    void chunkAtTheWrongOffsetIsRefused() throws IOException {
+        UploadSessions sessions = open();
+        String id = sessions.create("song.mp3", "audio/mpeg", 10).id();
+        sessions.append(id, 0, chunk("0123"));
+
+        assertThrows(IllegalStateException.class, () -> sessions.append(id, 2, chunk("23")));
+        assertEquals(4, sessions.get(id).offset());
+    }
+
+    @Test
+    void bytesBeforeADroppedConnectionAreKept() throws IOException {
+        UploadSessions sessions = open();
+        String id = sessions.create("song.mp3", "audio/mpeg", 10).id();
+        InputStream dropped = new InputStream() {
+            private int sent;
+
+            @Override
+            public int read() throws IOException {
+                if (sent == 3) {
+                    throw new IOException("Connection reset");
+                }
+                return '0' + sent++;
+            }
+        };
+
+        assertThrows(IOException.class, () -> sessions.append(id, 0, dropped));
+
+        // The client resumes from the offset it is told
+        assertEquals(3, sessions.get(id).offset());
+        assertEquals(10, sessions.append(id, 3, chunk("3456789")).offset());
+    }
+
+    @Test
+    void sessionCannotBeCompletedWhileBytesAreMissing() throws IOException {
+        UploadSessions sessions = open();
+        String id = sessions.create("song.mp3", "audio/mpeg", 10).id();
+        sessions.append(id, 0, chunk("0123"));
+
+        assertThrows(IllegalStateException.class, () -> sessions.complete(id, (session, content) -> "stored"));
+        assertNotNull(sessions.get(id));
+    }
+
+    @Test
+    void failedCompletionKeepsTheSessionForARetry() throws IOException {
+        UploadSessions sessions = open();
+        String id = sessions.create("song.mp3", "audio/mpeg", 2).id();
+        sessions.append(id, 0, chunk("01"));
+
+        assertThrows(IOException.class, () -> sessions.complete(id, (session, content) -> {
+            throw new IOException("Bucket unreachable");
+        }));
+
+        assertEquals("stored", sessions.complete(id, (session, content) -> "stored"));
+    }
+
+    @Test
+    void eachByteIsAcceptedOnceWhileCompletionsFail() throws Exception {
+        UploadSessions sessions = open();
+        int size = 200;
+        String id = sessions.create("song.mp3", "audio/mpeg", size).id();
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicBoolean done = new AtomicBoolean();
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                workers.add(executor.submit(() -> {
+                    while (!done.get()) {
+                        try {
+                            long offset = sessions.get(id).offset();
+                            if (offset == size) {
+                                done.set(true);
+                            } else if (sessions.append(id, offset, chunk("x")) != null) {
+                                accepted.incrementAndGet();
+                            }
+                        } catch (IllegalStateException e) {
+                            // another request got there first
+                        }
+                    }
+                    return null;
+                }));
+            }
+            // Failed completions release the session's lock over and over
+            for (int i = 0; i < 4; i++) {
+                workers.add(executor.submit(() -> {
+                    while (!done.get()) {
+                        try {
+                            sessions.complete(id, (session, content) -> {
+                                throw new IOException("Bucket unreachable");
+                            });
+                        } catch (IllegalStateException | IOException e) {
+                            // incomplete, busy or failed
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(size, accepted.get());
+        assertEquals(size, sessions.get(id).offset());
+    }
+
+    @Test
+    void chunkPastTheSizeAndOversizedSessionsAreRefused() throws IOException {
+        UploadSessions sessions = open();
+        String id = sessions.create("song.mp3", "audio/mpeg", 4).id();
+
+        assertThrows(IllegalArgumentException.class, () -> sessions.append(id, 0, chunk("012345")));
+        assertEquals(4, sessions.get(id).offset());
+        assertThrows(IllegalArgumentException.class, () -> sessions.create("long.mp3", "audio/mpeg", 4096));
+    }
+
+    @Test
+    void sessionsSurviveARestartAndExpireWhenIdle() throws IOException {
+        String id = open().create("song.mp3", "audio/mpeg", 10).id();
+        UploadSessions restarted = open();
+        restarted.append(id, 0, chunk("01"));
+        String idle = restarted.create("idle.mp3", "audio/mpeg", 10).id();
+        Files.setLastModifiedTime(dir.resolve(idle + ".part"), FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+
+        restarted.expire();
+
+        assertEquals(2, restarted.get(id).offset());
+        assertNull(restarted.get(idle));
+        assertFalse(Files.exists(dir.resolve(idle + ".part")));
+    }
+
+    @Test
+    void unknownSessionsAreNotFound() throws IOException {
+        UploadSessions sessions = open();
+
+        assertNull(sessions.get("../../etc/passwd"));
+        assertNull(sessions.append("00000000-0000-0000-0000-000000000000", 0, chunk("0")));
+        assertFalse(sessions.cancel("00000000-0000-0000-0000-000000000000"));
+    }
+}
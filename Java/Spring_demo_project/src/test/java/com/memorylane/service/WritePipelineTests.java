@@ -0,0 +1,96 @@
+package com.memorylane.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WritePipelineTests {
+
+    @Test
+    void itemsQueuedDuringAWriteShareTheNextBatch() throws Exception {
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        WritePipeline<Integer> pipeline = new WritePipeline<>("test-writer", batch -> {
+            batches.add(List.copyOf(batch));
+            if (batches.size() == 1) {
+                firstWriteStarted.countDown();
+                try {
+                    releaseFirstWrite.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        }, 256, 0);
+
+        CompletableFuture<Void> first = pipeline.submit(0);
+        assertTrue(firstWriteStarted.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<Void>> rest = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            rest.add(pipeline.submit(i));
+        }
+        releaseFirstWrite.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        CompletableFuture.allOf(rest.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        pipeline.close();
+
+        assertEquals(2, batches.size());
+        assertEquals(100, batches.get(1).size());
+    }
+
+    @Test
+    void failedWriteFailsEveryFutureInTheBatch() throws Exception {
+        WritePipeline<String> pipeline = new WritePipeline<>("test-writer", batch -> {
+            throw new IOException("disk full");
+        }, 16, 0);
+
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> pipeline.submit("a").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, failure.getCause());
+        pipeline.close();
+
+        assertTrue(pipeline.submit("b").isCompletedExceptionally());
+    }
+
+    @Test
+    void itemsSubmittedWhileClosingAreWrittenOrFailed() throws Exception {
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        WritePipeline<Integer> pipeline = new WritePipeline<>("test-writer", written::addAll, 16, 0);
+
+        List<CompletableFuture<Void>> futures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> submitters = new ArrayList<>();
+        CountDownLatch submitting = new CountDownLatch(4);
+        for (int t = 0; t < 4; t++) {
+            int base = t * 100_000;
+            submitters.add(Thread.ofPlatform().start(() -> {
+                submitting.countDown();
+                for (int i = 0; i < 100_000; i++) {
+                    futures.add(pipeline.submit(base + i));
+                }
+            }));
+        }
+        submitting.await();
+        pipeline.close();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        // Every future is settled; the ones that completed normally really were written
+        for (int i = 0; i < futures.size(); i++) {
+            assertTrue(futures.get(i).isDone(), "future " + i + " was never completed");
+        }
+        long acknowledged = futures.stream().filter(future -> !future.isCompletedExceptionally()).count();
+        assertEquals(acknowledged, written.size());
+    }
+}